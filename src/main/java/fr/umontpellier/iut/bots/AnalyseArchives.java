@@ -0,0 +1,369 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.Archive;
+import fr.umontpellier.iut.rails.Destination;
+import fr.umontpellier.iut.rails.GrapheVilles;
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.Plateau;
+import fr.umontpellier.iut.rails.Rejeu;
+import fr.umontpellier.iut.rails.Route;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Statistiques d'équilibrage calculées sur des archives de parties (voir
+ * {@link Archive}) : taux de prise de chaque route, taux de réalisation de
+ * chaque destination, et proportion de victoires selon la place dans l'ordre
+ * du tour et selon la couleur du joueur.
+ * <p>
+ * Chaque partie est rejouée jusqu'à sa fin (voir {@link Rejeu}). Les parties
+ * sont lues par lots par le thread appelant et déposées dans une file bornée,
+ * vidée par un pool de threads ; chaque thread cumule ses parties dans son
+ * propre {@link Agregat}, et les agrégats sont additionnés à la fin. La
+ * mémoire utilisée ne dépend donc que du nombre de threads, pas du nombre de
+ * parties analysées.
+ * <p>
+ * Comme dans {@link Tournoi}, le gagnant d'une partie est le premier joueur
+ * (dans l'ordre du tour) qui a le meilleur score.
+ */
+public class AnalyseArchives {
+    /**
+     * Nombre de parties d'un lot transmis aux threads
+     */
+    private static final int TAILLE_LOT = 64;
+    /**
+     * Lot vide qui indique aux threads la fin des archives
+     */
+    private static final List<Archive.Partie> FIN = List.of();
+    /**
+     * Délai (en ms) après lequel un dépôt dans une file pleine vérifie que les
+     * threads qui rejouent les parties sont toujours actifs
+     */
+    private static final long DELAI_DEPOT = 100;
+
+    /**
+     * Routes du plateau (les routes d'une partie rejouée sont dans le même ordre)
+     */
+    private static final List<Route> ROUTES = Plateau.makePlateauEurope().getRoutes();
+    /**
+     * Noms des destinations (courtes puis longues), et indice de chacune
+     */
+    private static final List<String> DESTINATIONS = new ArrayList<>();
+    private static final Map<String, Integer> INDICES_DESTINATIONS = new HashMap<>();
+
+    static {
+        List<Destination> destinations = Destination.makeDestinationsEurope();
+        destinations.addAll(Destination.makeDestinationsLonguesEurope());
+        for (Destination d : destinations) {
+            if (INDICES_DESTINATIONS.putIfAbsent(d.getNom(), DESTINATIONS.size()) == null) {
+                DESTINATIONS.add(d.getNom());
+            }
+        }
+    }
+
+    /**
+     * Compteurs cumulés sur un ensemble de parties
+     */
+    public static final class Agregat {
+        private static final int NB_COULEURS = Joueur.Couleur.values().length;
+
+        private long nbParties;
+        private long nbIncompletes;
+        private final long[] routesPrises = new long[ROUTES.size()];
+        private final long[] destinationsDistribuees = new long[DESTINATIONS.size()];
+        private final long[] destinationsRealisees = new long[DESTINATIONS.size()];
+        private final long[] partiesParPlace = new long[NB_COULEURS];
+        private final long[] victoiresParPlace = new long[NB_COULEURS];
+        private final long[] partiesParCouleur = new long[NB_COULEURS];
+        private final long[] victoiresParCouleur = new long[NB_COULEURS];
+
+        /**
+         * Rejoue une partie et ajoute ses résultats aux compteurs (une partie
+         * qui ne va pas jusqu'à sa fin est seulement comptée comme incomplète)
+         */
+        void ajouter(Archive.Partie partie) {
+            Rejeu rejeu;
+            try {
+                rejeu = partie.rejeu().rejouer();
+            } catch (RuntimeException e) {
+                // entrées qui mènent à un état invalide
+                nbIncompletes++;
+                return;
+            }
+            if (!rejeu.estTerminee()) {
+                nbIncompletes++;
+                return;
+            }
+            nbParties++;
+            List<Route> routes = rejeu.getRoutes();
+            for (int r = 0; r < routes.size(); r++) {
+                if (routes.get(r).getProprietaire() != null) {
+                    routesPrises[r]++;
+                }
+            }
+            GrapheVilles graphe = GrapheVilles.de(rejeu);
+            List<Joueur> joueurs = rejeu.getJoueurs();
+            int gagnant = 0;
+            for (int place = 0; place < joueurs.size(); place++) {
+                Joueur joueur = joueurs.get(place);
+                for (Destination d : joueur.getDestinations()) {
+                    Integer i = INDICES_DESTINATIONS.get(d.getNom());
+                    if (i != null) {
+                        destinationsDistribuees[i]++;
+                        if (graphe.estRealisee(joueur, d)) {
+                            destinationsRealisees[i]++;
+                        }
+                    }
+                }
+                partiesParPlace[place]++;
+                partiesParCouleur[joueur.getCouleur().ordinal()]++;
+                if (joueur.getScore() > joueurs.get(gagnant).getScore()) {
+                    gagnant = place;
+                }
+            }
+            victoiresParPlace[gagnant]++;
+            victoiresParCouleur[joueurs.get(gagnant).getCouleur().ordinal()]++;
+        }
+
+        /**
+         * Ajoute les compteurs d'un autre agrégat à celui-ci
+         */
+        void fusionner(Agregat autre) {
+            nbParties += autre.nbParties;
+            nbIncompletes += autre.nbIncompletes;
+            ajouter(routesPrises, autre.routesPrises);
+            ajouter(destinationsDistribuees, autre.destinationsDistribuees);
+            ajouter(destinationsRealisees, autre.destinationsRealisees);
+            ajouter(partiesParPlace, autre.partiesParPlace);
+            ajouter(victoiresParPlace, autre.victoiresParPlace);
+            ajouter(partiesParCouleur, autre.partiesParCouleur);
+            ajouter(victoiresParCouleur, autre.victoiresParCouleur);
+        }
+
+        private static void ajouter(long[] total, long[] valeurs) {
+            for (int i = 0; i < total.length; i++) {
+                total[i] += valeurs[i];
+            }
+        }
+
+        /**
+         * @return le nombre de parties analysées (terminées)
+         */
+        public long getNbParties() {
+            return nbParties;
+        }
+
+        /**
+         * @return le nombre de parties ignorées parce que leur rejeu ne va pas jusqu'à la fin
+         */
+        public long getNbIncompletes() {
+            return nbIncompletes;
+        }
+
+        /**
+         * @param route indice de la route dans les routes du plateau
+         * @return le nombre de parties où la route a été prise
+         */
+        public long getNbPrises(int route) {
+            return routesPrises[route];
+        }
+
+        /**
+         * @return le nombre de fois où la destination a été gardée par un joueur
+         */
+        public long getNbDistribuees(String destination) {
+            Integer i = INDICES_DESTINATIONS.get(destination);
+            return i == null ? 0 : destinationsDistribuees[i];
+        }
+
+        /**
+         * @return le nombre de fois où la destination a été réalisée par le joueur qui l'a gardée
+         */
+        public long getNbRealisees(String destination) {
+            Integer i = INDICES_DESTINATIONS.get(destination);
+            return i == null ? 0 : destinationsRealisees[i];
+        }
+
+        /**
+         * @param place place dans l'ordre du tour (à partir de 0)
+         */
+        public long getNbVictoiresPlace(int place) {
+            return victoiresParPlace[place];
+        }
+
+        public long getNbVictoiresCouleur(Joueur.Couleur couleur) {
+            return victoiresParCouleur[couleur.ordinal()];
+        }
+
+        public long getNbPartiesCouleur(Joueur.Couleur couleur) {
+            return partiesParCouleur[couleur.ordinal()];
+        }
+    }
+
+    private final int nbThreads;
+
+    /**
+     * @param nbThreads nombre de threads qui rejouent les parties
+     */
+    public AnalyseArchives(int nbThreads) {
+        if (nbThreads < 1) {
+            throw new IllegalArgumentException("Il faut au moins un thread");
+        }
+        this.nbThreads = nbThreads;
+    }
+
+    /**
+     * Analyse toutes les parties d'une liste d'archives
+     *
+     * @return les compteurs cumulés sur toutes les parties
+     */
+    public Agregat analyser(List<Path> archives) throws IOException, InterruptedException {
+        BlockingQueue<List<Archive.Partie>> file = new ArrayBlockingQueue<>(2 * nbThreads);
+        ExecutorService executeur = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<Agregat>> agregats = new ArrayList<>();
+            for (int i = 0; i < nbThreads; i++) {
+                agregats.add(executeur.submit(() -> {
+                    Agregat agregat = new Agregat();
+                    for (List<Archive.Partie> lot = file.take(); lot != FIN; lot = file.take()) {
+                        for (Archive.Partie partie : lot) {
+                            ajouter(agregat, partie);
+                        }
+                    }
+                    return agregat;
+                }));
+            }
+            for (Path fichier : archives) {
+                List<Archive.Partie> lot = new ArrayList<>(TAILLE_LOT);
+                for (Archive.Partie partie : new Archive(fichier)) {
+                    lot.add(partie);
+                    if (lot.size() == TAILLE_LOT) {
+                        deposer(file, lot, agregats);
+                        lot = new ArrayList<>(TAILLE_LOT);
+                    }
+                }
+                if (!lot.isEmpty()) {
+                    deposer(file, lot, agregats);
+                }
+            }
+            for (int i = 0; i < nbThreads; i++) {
+                deposer(file, FIN, agregats);
+            }
+            Agregat total = new Agregat();
+            for (Future<Agregat> f : agregats) {
+                total.fusionner(resultat(f));
+            }
+            return total;
+        } finally {
+            executeur.shutdownNow();
+        }
+    }
+
+    /**
+     * Ajoute une partie à l'agrégat d'un thread
+     */
+    void ajouter(Agregat agregat, Archive.Partie partie) {
+        agregat.ajouter(partie);
+    }
+
+    /**
+     * Dépose un lot dans la file des threads. Tant que la file est pleine, les
+     * threads sont vérifiés : un thread arrêté par une erreur ne retire plus de
+     * lots, et son erreur est renvoyée au lieu d'attendre indéfiniment.
+     *
+     * @throws IllegalStateException si un thread s'est arrêté sur une erreur
+     */
+    private static void deposer(BlockingQueue<List<Archive.Partie>> file, List<Archive.Partie> lot,
+                                List<Future<Agregat>> agregats) throws InterruptedException {
+        while (!file.offer(lot, DELAI_DEPOT, TimeUnit.MILLISECONDS)) {
+            for (Future<Agregat> f : agregats) {
+                // un thread ne se termine normalement qu'après avoir reçu FIN
+                if (f.isDone()) {
+                    resultat(f);
+                    throw new IllegalStateException("Thread d'analyse arrêté avant la fin des archives");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return l'agrégat d'un thread terminé
+     * @throws IllegalStateException si le thread s'est arrêté sur une erreur
+     */
+    private static Agregat resultat(Future<Agregat> f) throws InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Affiche les statistiques d'un agrégat sur la sortie standard
+     */
+    public static void afficher(Agregat a) {
+        double n = Math.max(1, a.nbParties);
+        System.out.println("Victoires par place :");
+        for (int place = 0; place < Agregat.NB_COULEURS; place++) {
+            if (a.partiesParPlace[place] > 0) {
+                System.out.printf("  %d %6.1f%% (%d parties)%n", place + 1,
+                        100.0 * a.victoiresParPlace[place] / a.partiesParPlace[place], a.partiesParPlace[place]);
+            }
+        }
+        System.out.println("Victoires par couleur :");
+        for (Joueur.Couleur couleur : Joueur.Couleur.values()) {
+            long parties = a.partiesParCouleur[couleur.ordinal()];
+            if (parties > 0) {
+                System.out.printf("  %-6s %6.1f%% (%d parties)%n", couleur,
+                        100.0 * a.victoiresParCouleur[couleur.ordinal()] / parties, parties);
+            }
+        }
+        System.out.println("Routes (proportion des parties où la route est prise) :");
+        IntStream.range(0, ROUTES.size()).boxed()
+                .sorted(Comparator.comparingLong((Integer r) -> -a.routesPrises[r]))
+                .forEach(r -> System.out.printf("  %-40s %6.1f%%%n",
+                        ROUTES.get(r).getNom() + " (" + ROUTES.get(r).getCouleur() + ")",
+                        100.0 * a.routesPrises[r] / n));
+        System.out.println("Destinations (proportion des destinations gardées qui sont réalisées) :");
+        IntStream.range(0, DESTINATIONS.size()).boxed()
+                .filter(d -> a.destinationsDistribuees[d] > 0)
+                .sorted(Comparator.comparingDouble(
+                        (Integer d) -> -(double) a.destinationsRealisees[d] / a.destinationsDistribuees[d]))
+                .forEach(d -> System.out.printf("  %-40s %6.1f%% (%d fois)%n", DESTINATIONS.get(d),
+                        100.0 * a.destinationsRealisees[d] / a.destinationsDistribuees[d],
+                        a.destinationsDistribuees[d]));
+    }
+
+    /**
+     * Analyse des archives de parties (écrites par exemple par {@link Tournoi}).
+     * <p>
+     * Arguments : les fichiers d'archive. Le nombre de threads est le nombre
+     * de processeurs.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<Path> archives = new ArrayList<>();
+        for (String fichier : args) {
+            archives.add(Path.of(fichier));
+        }
+        long debut = System.nanoTime();
+        Agregat agregat = new AnalyseArchives(Runtime.getRuntime().availableProcessors()).analyser(archives);
+        double duree = (System.nanoTime() - debut) / 1e9;
+        System.out.printf("%d parties analysées en %.1f s (%.0f parties/s, %d incomplètes)%n",
+                agregat.nbParties, duree, agregat.nbParties / duree, agregat.nbIncompletes);
+        afficher(agregat);
+    }
+}
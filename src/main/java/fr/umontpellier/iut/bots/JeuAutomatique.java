@@ -0,0 +1,107 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.Joueur;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Partie sans interface où chaque joueur est contrôlé par une stratégie.
+ * <p>
+ * La partie n'affiche rien et n'envoie rien au serveur : plusieurs parties
+ * peuvent donc être exécutées en parallèle dans la même JVM. Tous les tirages
+ * aléatoires (mélanges et stratégies) dépendent de la graine de la partie.
+ */
+public class JeuAutomatique extends Jeu {
+    /**
+     * Nombre maximum de décisions avant d'interrompre une partie qui ne se
+     * termine pas
+     */
+    public static final int NB_DECISIONS_MAX = 20_000;
+
+    /**
+     * Exception levée lorsqu'une partie dépasse {@link #NB_DECISIONS_MAX} décisions
+     */
+    public static final class PartieInterrompue extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        private PartieInterrompue() {
+            super("Partie interrompue après " + NB_DECISIONS_MAX + " décisions");
+        }
+    }
+
+    /**
+     * Stratégie de chaque joueur (dans l'ordre de {@code getJoueurs()})
+     */
+    private final List<Strategie> strategies;
+    private final Random random;
+    private int nbDecisions;
+    /**
+     * Choix faits par les stratégies, dans l'ordre (les entrées de la partie, voir {@link fr.umontpellier.iut.rails.Rejeu})
+     */
+    private final List<String> entrees = new ArrayList<>();
+    /**
+     * Nombre de choix faits avant le début de chaque tour
+     */
+    private final List<Integer> debutsTours = new ArrayList<>();
+
+    public JeuAutomatique(String[] nomJoueurs, List<Strategie> strategies, long graine) {
+        super(nomJoueurs, graine);
+        if (strategies.size() != nomJoueurs.length) {
+            throw new IllegalArgumentException("Il faut une stratégie par joueur");
+        }
+        this.strategies = strategies;
+        // graine différente de celle des mélanges de la partie
+        this.random = new Random(~graine);
+    }
+
+    public int getNbDecisions() {
+        return nbDecisions;
+    }
+
+    /**
+     * @return les choix faits par les stratégies, dans l'ordre
+     */
+    public List<String> getEntrees() {
+        return entrees;
+    }
+
+    /**
+     * @return pour chaque tour commencé, le nombre de choix faits avant son début
+     */
+    public int[] getDebutsTours() {
+        return debutsTours.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Override
+    protected void commencerTour(int tour) {
+        debutsTours.add(entrees.size());
+    }
+
+    /**
+     * @throws PartieInterrompue si la partie a déjà demandé {@link #NB_DECISIONS_MAX} décisions
+     */
+    @Override
+    public String lireChoix(String instruction, Set<String> choix, Collection<String> boutons, boolean peutPasser) {
+        if (++nbDecisions > NB_DECISIONS_MAX) {
+            throw new PartieInterrompue();
+        }
+        Joueur joueur = getJoueurCourant();
+        List<String> choixTries = new ArrayList<>(choix);
+        Collections.sort(choixTries);
+        String entree = strategies.get(getJoueurs().indexOf(joueur)).choisir(joueur, instruction, choixTries,
+                peutPasser, random);
+        entrees.add(entree);
+        return entree;
+    }
+
+    @Override
+    public void prompt(String instruction, Collection<String> boutons, boolean peutPasser) {
+        // partie sans interface
+    }
+}
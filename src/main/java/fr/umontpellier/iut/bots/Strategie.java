@@ -0,0 +1,33 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.Joueur;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stratégie de jeu d'un bot.
+ * <p>
+ * Une stratégie est appelée à chaque fois que le joueur qu'elle contrôle doit
+ * faire un choix (voir {@code Joueur.choisir}). Elle ne doit pas conserver
+ * d'état : une même instance est partagée par toutes les parties d'un tournoi,
+ * exécutées en parallèle.
+ */
+public interface Strategie {
+    /**
+     * @return le nom de la stratégie (utilisé dans les classements)
+     */
+    String getNom();
+
+    /**
+     * Choisit une entrée pour le joueur.
+     *
+     * @param joueur      le joueur qui doit faire un choix
+     * @param instruction l'instruction donnée au joueur
+     * @param choix       les choix valides, triés par ordre alphabétique
+     * @param peutPasser  indique si le joueur peut passer (en renvoyant "")
+     * @param random      générateur aléatoire de la partie
+     * @return l'entrée choisie
+     */
+    String choisir(Joueur joueur, String instruction, List<String> choix, boolean peutPasser, Random random);
+}
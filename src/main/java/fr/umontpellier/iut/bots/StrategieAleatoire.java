@@ -0,0 +1,25 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.Joueur;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stratégie qui choisit uniformément au hasard parmi les choix valides (elle ne
+ * passe que lorsqu'il n'y a aucun choix)
+ */
+public class StrategieAleatoire implements Strategie {
+    @Override
+    public String getNom() {
+        return "aleatoire";
+    }
+
+    @Override
+    public String choisir(Joueur joueur, String instruction, List<String> choix, boolean peutPasser, Random random) {
+        if (choix.isEmpty()) {
+            return "";
+        }
+        return choix.get(random.nextInt(choix.size()));
+    }
+}
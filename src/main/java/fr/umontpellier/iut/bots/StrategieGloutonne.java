@@ -0,0 +1,158 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.CouleurWagon;
+import fr.umontpellier.iut.rails.Destination;
+import fr.umontpellier.iut.rails.EvaluateurDestinations;
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.Route;
+import fr.umontpellier.iut.rails.TableDestinations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stratégie gloutonne simple :
+ * - capture la plus longue route possible ;
+ * - sinon prend la carte visible de la couleur qu'il possède le plus, ou pioche
+ * une carte face cachée ;
+ * - paie les routes avec des cartes de leur couleur puis des locomotives ;
+ * - garde les destinations conseillées par {@link EvaluateurDestinations}, avec
+ * la table des destinations chargée au démarrage si elle est présente (voir
+ * {@link TableDestinations#chargerDepuisProprietes()}).
+ * <p>
+ * Les autres choix sont faits au hasard.
+ */
+public class StrategieGloutonne implements Strategie {
+    /**
+     * Forme du nom d'une destination ("Ville1 - Ville2 (valeur)")
+     */
+    private static final Pattern DESTINATION = Pattern.compile("(.+) - (.+) \\((\\d+)\\)");
+    /**
+     * Table des destinations ({@code null} si le fichier est absent : les
+     * destinations sont alors évaluées sur le seul plateau)
+     */
+    private static final TableDestinations TABLE = TableDestinations.chargerDepuisProprietes();
+
+    @Override
+    public String getNom() {
+        return "glouton";
+    }
+
+    @Override
+    public String choisir(Joueur joueur, String instruction, List<String> choix, boolean peutPasser, Random random) {
+        if (choix.isEmpty()) {
+            return "";
+        }
+
+        // choix des destinations à défausser
+        List<Destination> proposees = new ArrayList<>();
+        for (String c : choix) {
+            Matcher m = DESTINATION.matcher(c);
+            if (!m.matches()) {
+                break;
+            }
+            proposees.add(new Destination(m.group(1), m.group(2), Integer.parseInt(m.group(3))));
+        }
+        if (proposees.size() == choix.size()) {
+            return choisirDestinationADefausser(joueur, proposees, peutPasser, random);
+        }
+
+        // paiement d'une route : l'instruction se termine par le nom de la route
+        for (Route r : joueur.getJeu().getRoutes()) {
+            if (instruction.endsWith(" " + r.getNom())) {
+                return choisirCartePaiement(joueur, r, choix, random);
+            }
+        }
+
+        // capture de la plus longue route possible
+        Route meilleureRoute = null;
+        for (Route r : joueur.getJeu().getRoutes()) {
+            if (r.getProprietaire() == null && choix.contains(r.getNom())
+                    && (meilleureRoute == null || r.getLongueur() > meilleureRoute.getLongueur())) {
+                meilleureRoute = r;
+            }
+        }
+        if (meilleureRoute != null) {
+            return meilleureRoute.getNom();
+        }
+
+        // pioche de cartes wagon
+        String carte = choisirCarteVisible(joueur, choix);
+        if (carte != null) {
+            return carte;
+        }
+        if (choix.contains("GRIS")) {
+            return "GRIS";
+        }
+
+        return choix.get(random.nextInt(choix.size()));
+    }
+
+    private String choisirDestinationADefausser(Joueur joueur, List<Destination> proposees, boolean peutPasser, Random random) {
+        int nbMinimum = proposees.size() >= 4 ? 2 : 1;
+        List<Destination> gardees = new EvaluateurDestinations(joueur.getJeu(), TABLE)
+                .meilleurChoix(joueur, proposees, nbMinimum);
+        for (Destination d : proposees) {
+            if (!gardees.contains(d)) {
+                return d.getNom();
+            }
+        }
+        return peutPasser ? "" : proposees.get(random.nextInt(proposees.size())).getNom();
+    }
+
+    /**
+     * Choisit une carte pour payer une route : une carte de la couleur de la route
+     * (ou, pour une route grise, de la couleur déjà posée ou la plus présente dans
+     * la main), puis une locomotive
+     */
+    private String choisirCartePaiement(Joueur joueur, Route route, List<String> choix, Random random) {
+        CouleurWagon couleur = route.getCouleur();
+        // une route grise se paie avec la couleur des cartes déjà posées
+        for (CouleurWagon c : joueur.getCartesWagonPosees()) {
+            if (couleur == CouleurWagon.GRIS && c != CouleurWagon.LOCOMOTIVE) {
+                couleur = c;
+            }
+        }
+        if (couleur == CouleurWagon.GRIS) {
+            int nbMax = 0;
+            for (CouleurWagon c : CouleurWagon.getCouleursSimples()) {
+                int nb = Collections.frequency(joueur.getCartesWagon(), c);
+                if (nb > nbMax) {
+                    nbMax = nb;
+                    couleur = c;
+                }
+            }
+        }
+        if (choix.contains(couleur.name())) {
+            return couleur.name();
+        }
+        if (choix.contains(CouleurWagon.LOCOMOTIVE.name())) {
+            return CouleurWagon.LOCOMOTIVE.name();
+        }
+        return choix.get(random.nextInt(choix.size()));
+    }
+
+    /**
+     * @return la carte visible (parmi les choix) de la couleur la plus présente
+     * dans la main du joueur, ou {@code null} si aucune carte visible ne fait partie
+     * des choix
+     */
+    private String choisirCarteVisible(Joueur joueur, List<String> choix) {
+        String meilleure = null;
+        int nbMax = -1;
+        for (CouleurWagon c : CouleurWagon.getCouleursSimples()) {
+            if (choix.contains(c.name()) && joueur.getJeu().getCartesWagonVisibles().contains(c)) {
+                int nb = Collections.frequency(joueur.getCartesWagon(), c);
+                if (nb > nbMax) {
+                    nbMax = nb;
+                    meilleure = c.name();
+                }
+            }
+        }
+        return meilleure;
+    }
+}
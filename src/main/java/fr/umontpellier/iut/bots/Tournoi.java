@@ -0,0 +1,359 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.Archive;
+import fr.umontpellier.iut.rails.Joueur;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tournoi entre stratégies : exécute en parallèle un grand nombre de parties
+ * automatiques (voir {@link JeuAutomatique}) et calcule un classement Elo des
+ * stratégies.
+ * <p>
+ * La partie d'indice i utilise la graine {@code graine + i} et les places sont
+ * attribuées aux stratégies à tour de rôle, si bien qu'un tournoi est
+ * entièrement reproductible quel que soit le nombre de threads.
+ * <p>
+ * Chaque partie à n joueurs est comptée comme n(n-1)/2 confrontations entre
+ * deux joueurs (le meilleur score gagne). Le classement donne pour chaque
+ * stratégie :
+ * - son Elo, calculé en appliquant les confrontations dans l'ordre des parties,
+ * avec son intervalle de confiance à 95% obtenu par bootstrap (l'Elo est
+ * recalculé sur {@value #NB_BOOTSTRAP} tirages avec remise des parties) ;
+ * - la proportion de confrontations gagnées, avec son intervalle de confiance à
+ * 95% (intervalle de Wilson) ;
+ * - son score moyen.
+ * <p>
+ * Seules les parties interrompues par {@link JeuAutomatique} (trop de
+ * décisions) sont écartées du classement ; toute autre exception levée par une
+ * partie arrête le tournoi.
+ */
+public class Tournoi {
+    /**
+     * Coefficient K du classement Elo
+     */
+    private static final double K_ELO = 16;
+    private static final double ELO_INITIAL = 1500;
+    /**
+     * Quantile de la loi normale pour un intervalle de confiance à 95%
+     */
+    private static final double Z = 1.96;
+    /**
+     * Nombre de tirages pour l'intervalle de confiance de l'Elo
+     */
+    private static final int NB_BOOTSTRAP = 200;
+
+    /**
+     * Résultat d'une partie
+     */
+    private static class Resultat {
+        private final Strategie[] strategies;
+        private final int[] scores;
+        private final Joueur.Couleur[] couleurs;
+        private final boolean interrompue;
+
+        private Resultat(Strategie[] strategies, int[] scores, Joueur.Couleur[] couleurs, boolean interrompue) {
+            this.strategies = strategies;
+            this.scores = scores;
+            this.couleurs = couleurs;
+            this.interrompue = interrompue;
+        }
+    }
+
+    /**
+     * Statistiques d'une stratégie
+     */
+    private static class Statistiques {
+        private double elo = ELO_INITIAL;
+        private double eloMin;
+        private double eloMax;
+        private int nbConfrontations;
+        private double nbVictoires;
+        private long sommeScores;
+        private long sommeCarresScores;
+        private int nbPlaces;
+    }
+
+    private final List<Strategie> strategies;
+    private final int nbJoueurs;
+    private final int nbThreads;
+    /**
+     * Archive dans laquelle les parties terminées sont ajoutées (ou {@code null})
+     */
+    private Archive.Ecrivain archive;
+
+    /**
+     * @param strategies les stratégies qui s'affrontent
+     * @param nbJoueurs  nombre de joueurs par partie (entre 2 et le nombre de
+     *                   couleurs de joueur)
+     * @param nbThreads  nombre de parties exécutées simultanément
+     */
+    public Tournoi(List<Strategie> strategies, int nbJoueurs, int nbThreads) {
+        if (nbJoueurs < 2 || nbJoueurs > Joueur.Couleur.values().length) {
+            throw new IllegalArgumentException(
+                    "Le nombre de joueurs doit être compris entre 2 et " + Joueur.Couleur.values().length);
+        }
+        if (strategies.isEmpty()) {
+            throw new IllegalArgumentException("Il faut au moins une stratégie");
+        }
+        this.strategies = strategies;
+        this.nbJoueurs = nbJoueurs;
+        this.nbThreads = nbThreads;
+    }
+
+    /**
+     * Ajoute les parties terminées du tournoi à une archive (voir {@link Archive})
+     */
+    public void setArchive(Archive.Ecrivain archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Exécute le tournoi et affiche le classement sur la sortie standard
+     *
+     * @param nbParties nombre de parties à jouer
+     * @param graine    graine de la première partie
+     */
+    public void executer(int nbParties, long graine) throws InterruptedException {
+        long debut = System.nanoTime();
+        List<Resultat> resultats = jouerParties(nbParties, graine);
+        double duree = (System.nanoTime() - debut) / 1e9;
+
+        Map<Strategie, Statistiques> statistiques = new LinkedHashMap<>();
+        for (Strategie s : strategies) {
+            statistiques.put(s, new Statistiques());
+        }
+        Map<Joueur.Couleur, Integer> victoiresParCouleur = new EnumMap<>(Joueur.Couleur.class);
+        List<Resultat> terminees = new ArrayList<>();
+        for (Resultat r : resultats) {
+            if (r.interrompue) {
+                continue;
+            }
+            terminees.add(r);
+            mettreAJour(r, statistiques);
+            int gagnant = 0;
+            for (int i = 1; i < r.scores.length; i++) {
+                if (r.scores[i] > r.scores[gagnant]) {
+                    gagnant = i;
+                }
+            }
+            victoiresParCouleur.merge(r.couleurs[gagnant], 1, Integer::sum);
+        }
+        int nbInterrompues = resultats.size() - terminees.size();
+        Map<Strategie, Double> elos = calculerElo(terminees);
+        elos.forEach((strategie, elo) -> statistiques.get(strategie).elo = elo);
+        estimerIntervallesElo(terminees, statistiques, new Random(graine));
+
+        System.out.printf("%d parties à %d joueurs en %.1f s (%.1f parties/s, %d interrompues)%n",
+                nbParties, nbJoueurs, duree, nbParties / duree, nbInterrompues);
+        System.out.printf("%-12s %18s %22s %16s%n", "Stratégie", "Elo (IC 95%)", "Victoires (IC 95%)",
+                "Score moyen");
+        statistiques.entrySet().stream()
+                .sorted((a, b) -> Double.compare(b.getValue().elo, a.getValue().elo))
+                .forEach(e -> afficher(e.getKey(), e.getValue()));
+        System.out.println("Victoires par couleur : " + victoiresParCouleur);
+    }
+
+    private List<Resultat> jouerParties(int nbParties, long graine) throws InterruptedException {
+        ExecutorService executeur = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<Resultat>> futures = new ArrayList<>();
+            for (int i = 0; i < nbParties; i++) {
+                final int partie = i;
+                futures.add(executeur.submit(() -> jouerPartie(partie, graine + partie)));
+            }
+            List<Resultat> resultats = new ArrayList<>();
+            for (Future<Resultat> f : futures) {
+                try {
+                    resultats.add(f.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return resultats;
+        } finally {
+            executeur.shutdownNow();
+        }
+    }
+
+    private Resultat jouerPartie(int partie, long graine) {
+        Strategie[] places = new Strategie[nbJoueurs];
+        String[] noms = new String[nbJoueurs];
+        for (int i = 0; i < nbJoueurs; i++) {
+            places[i] = strategies.get((partie + i) % strategies.size());
+            noms[i] = places[i].getNom() + "-" + (i + 1);
+        }
+        JeuAutomatique jeu = new JeuAutomatique(noms, List.of(places), graine);
+        boolean interrompue = false;
+        try {
+            jeu.run();
+        } catch (JeuAutomatique.PartieInterrompue e) {
+            interrompue = true;
+        } catch (RuntimeException e) {
+            // erreur du moteur ou d'une stratégie : le tournoi s'arrête sur la partie qui la reproduit
+            throw new IllegalStateException("Erreur dans la partie " + partie + " (graine " + graine + ")", e);
+        }
+        if (archive != null && !interrompue) {
+            try {
+                archive.ajouter(jeu, jeu.getEntrees(), jeu.getDebutsTours());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int[] scores = new int[nbJoueurs];
+        Joueur.Couleur[] couleurs = new Joueur.Couleur[nbJoueurs];
+        for (int i = 0; i < nbJoueurs; i++) {
+            scores[i] = jeu.getJoueurs().get(i).getScore();
+            couleurs[i] = jeu.getJoueurs().get(i).getCouleur();
+        }
+        return new Resultat(places, scores, couleurs, interrompue);
+    }
+
+    /**
+     * Met à jour les statistiques (hors Elo) à partir des confrontations deux à
+     * deux d'une partie
+     */
+    private void mettreAJour(Resultat r, Map<Strategie, Statistiques> statistiques) {
+        for (int i = 0; i < r.scores.length; i++) {
+            Statistiques s = statistiques.get(r.strategies[i]);
+            s.sommeScores += r.scores[i];
+            s.sommeCarresScores += (long) r.scores[i] * r.scores[i];
+            s.nbPlaces++;
+        }
+        for (int i = 0; i < r.scores.length; i++) {
+            for (int j = i + 1; j < r.scores.length; j++) {
+                if (r.strategies[i] == r.strategies[j]) {
+                    continue;
+                }
+                Statistiques a = statistiques.get(r.strategies[i]);
+                Statistiques b = statistiques.get(r.strategies[j]);
+                double resultatA = resultat(r, i, j);
+                a.nbConfrontations++;
+                b.nbConfrontations++;
+                a.nbVictoires += resultatA;
+                b.nbVictoires += 1 - resultatA;
+            }
+        }
+    }
+
+    /**
+     * @return 1 si le joueur i bat le joueur j, 0.5 en cas d'égalité, 0 sinon
+     */
+    private static double resultat(Resultat r, int i, int j) {
+        return r.scores[i] > r.scores[j] ? 1 : r.scores[i] == r.scores[j] ? 0.5 : 0;
+    }
+
+    /**
+     * Calcule l'Elo de chaque stratégie en appliquant les confrontations des
+     * parties dans l'ordre
+     */
+    private Map<Strategie, Double> calculerElo(List<Resultat> resultats) {
+        Map<Strategie, Double> elos = new LinkedHashMap<>();
+        for (Strategie s : strategies) {
+            elos.put(s, ELO_INITIAL);
+        }
+        for (Resultat r : resultats) {
+            for (int i = 0; i < r.scores.length; i++) {
+                for (int j = i + 1; j < r.scores.length; j++) {
+                    if (r.strategies[i] == r.strategies[j]) {
+                        continue;
+                    }
+                    double eloA = elos.get(r.strategies[i]);
+                    double eloB = elos.get(r.strategies[j]);
+                    double attenduA = 1 / (1 + Math.pow(10, (eloB - eloA) / 400));
+                    double delta = K_ELO * (resultat(r, i, j) - attenduA);
+                    elos.put(r.strategies[i], eloA + delta);
+                    elos.put(r.strategies[j], eloB - delta);
+                }
+            }
+        }
+        return elos;
+    }
+
+    /**
+     * Estime l'intervalle de confiance à 95% de l'Elo de chaque stratégie par
+     * bootstrap : l'Elo est recalculé sur des tirages avec remise des parties,
+     * et l'intervalle est formé des quantiles 2,5% et 97,5% des valeurs obtenues
+     */
+    private void estimerIntervallesElo(List<Resultat> resultats, Map<Strategie, Statistiques> statistiques,
+                                       Random random) {
+        Map<Strategie, double[]> tirages = new LinkedHashMap<>();
+        for (Strategie s : strategies) {
+            tirages.put(s, new double[NB_BOOTSTRAP]);
+        }
+        List<Resultat> echantillon = new ArrayList<>(resultats.size());
+        for (int b = 0; b < NB_BOOTSTRAP; b++) {
+            echantillon.clear();
+            for (int i = 0; i < resultats.size(); i++) {
+                echantillon.add(resultats.get(random.nextInt(resultats.size())));
+            }
+            final int tirage = b;
+            calculerElo(echantillon).forEach((strategie, elo) -> tirages.get(strategie)[tirage] = elo);
+        }
+        tirages.forEach((strategie, elos) -> {
+            Arrays.sort(elos);
+            Statistiques s = statistiques.get(strategie);
+            s.eloMin = elos[(int) (0.025 * (NB_BOOTSTRAP - 1))];
+            s.eloMax = elos[(int) Math.ceil(0.975 * (NB_BOOTSTRAP - 1))];
+        });
+    }
+
+    private void afficher(Strategie strategie, Statistiques s) {
+        String victoires = "-";
+        if (s.nbConfrontations > 0) {
+            double n = s.nbConfrontations;
+            double p = s.nbVictoires / n;
+            // intervalle de Wilson
+            double centre = (p + Z * Z / (2 * n)) / (1 + Z * Z / n);
+            double marge = Z * Math.sqrt(p * (1 - p) / n + Z * Z / (4 * n * n)) / (1 + Z * Z / n);
+            victoires = String.format("%.1f%% [%.1f, %.1f]", 100 * p, 100 * (centre - marge), 100 * (centre + marge));
+        }
+        String score = "-";
+        if (s.nbPlaces > 0) {
+            double moyenne = (double) s.sommeScores / s.nbPlaces;
+            double variance = Math.max(0, (double) s.sommeCarresScores / s.nbPlaces - moyenne * moyenne);
+            score = String.format("%.1f ± %.1f", moyenne, Z * Math.sqrt(variance / s.nbPlaces));
+        }
+        String elo = String.format("%.0f [%.0f, %.0f]", s.elo, s.eloMin, s.eloMax);
+        System.out.printf("%-12s %18s %22s %16s%n", strategie.getNom(), elo, victoires, score);
+    }
+
+    /**
+     * Lance un tournoi entre toutes les stratégies disponibles.
+     * <p>
+     * Arguments : nombre de parties (par défaut 1000), nombre de joueurs par
+     * partie (par défaut 2), nombre de threads (par défaut le nombre de
+     * processeurs), graine (par défaut 0) et fichier d'archive dans lequel
+     * ajouter les parties terminées (par défaut aucun).
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        int nbParties = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int nbJoueurs = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int nbThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long graine = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        List<Strategie> strategies = List.of(new StrategieAleatoire(), new StrategieGloutonne());
+        Tournoi tournoi = new Tournoi(strategies, nbJoueurs, nbThreads);
+        if (args.length > 4) {
+            try (Archive.Ecrivain archive = new Archive.Ecrivain(Path.of(args[4]))) {
+                tournoi.setArchive(archive);
+                tournoi.executer(nbParties, graine);
+            }
+        } else {
+            tournoi.executer(nbParties, graine);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package fr.umontpellier.iut.gui;
+
+import com.google.gson.stream.JsonWriter;
+
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Client connecté à une salle, avec sa file d'envoi.
+ * <p>
+ * Les messages sont envoyés de façon asynchrone : le thread de la partie ne
+ * fait que déposer le nouvel état dans la file du client et n'attend jamais le
+ * réseau. La file ne contient qu'un seul message en attente : si un nouvel état
+ * arrive alors que le précédent n'est pas encore parti, il le remplace (seul le
+ * dernier état compte). Un client lent ne reçoit donc pas tous les états
+ * intermédiaires, mais ne retarde ni la partie ni les autres clients.
+ * <p>
+ * Un client peut demander à recevoir des mises à jour différentielles (voir
+ * {@code SuiviEtat}) ou des trames binaires (voir {@code EtatBinaire}) :
+ * l'état complet ne lui est alors envoyé qu'à la connexion, lorsqu'il le
+ * redemande ou lorsqu'une différence a été perdue. Ces clients reçoivent
+ * d'abord la description du plateau, à laquelle font référence les messages
+ * suivants.
+ * <p>
+ * La latence des envois et le nombre de messages remplacés avant d'être
+ * envoyés sont mesurés pour chaque client, et le serveur les examine
+ * régulièrement (voir {@link #surveiller(long)}). Un client dont la latence
+ * moyenne dépasse {@link #SEUIL_DEGRADATION} est dégradé : il ne reçoit plus
+ * qu'un état complet toutes les {@link #PERIODE_INSTANTANES}, jusqu'à ce que
+ * sa latence redevienne normale. Un client dont un envoi est bloqué depuis
+ * plus de {@link #DELAI_EVICTION} est déconnecté. Dans tous les cas, un client
+ * n'occupe jamais plus d'un message en attente et d'un message en cours
+ * d'envoi (plus un éventuel message d'erreur, voir {@link #envoyerErreur(String)}).
+ */
+public class Client {
+    /**
+     * Latence moyenne d'envoi au-delà de laquelle un client est dégradé
+     */
+    public static final long SEUIL_DEGRADATION = TimeUnit.MILLISECONDS.toNanos(500);
+    /**
+     * Durée entre deux états envoyés à un client dégradé
+     */
+    public static final long PERIODE_INSTANTANES = TimeUnit.SECONDS.toNanos(2);
+    /**
+     * Durée au-delà de laquelle un client dont l'envoi en cours n'est pas terminé est déconnecté
+     */
+    public static final long DELAI_EVICTION = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Format des messages envoyés au client
+     */
+    public enum Mode {
+        /**
+         * État complet au format JSON à chaque mise à jour (format historique)
+         */
+        COMPLET,
+        /**
+         * Différences au format JSON compact
+         */
+        DIFFERENTIEL,
+        /**
+         * Trames binaires (état complet, avec les seules nouvelles lignes du log)
+         */
+        BINAIRE;
+
+        /**
+         * @param nom valeur du paramètre "mode" de l'URL de connexion
+         * @return le mode correspondant ({@code COMPLET} par défaut)
+         */
+        public static Mode depuis(String nom) {
+            if ("delta".equals(nom)) {
+                return DIFFERENTIEL;
+            }
+            if ("binaire".equals(nom)) {
+                return BINAIRE;
+            }
+            return COMPLET;
+        }
+    }
+
+    /**
+     * Session websocket du client
+     */
+    private final Session session;
+    /**
+     * Prochain message à envoyer, texte ou binaire (ou {@code null} si aucun message n'est en attente)
+     */
+    private final AtomicReference<Object> enAttente = new AtomicReference<>();
+    /**
+     * Message d'erreur en attente, envoyé avant le prochain état sans le remplacer (ou {@code null})
+     */
+    private final AtomicReference<String> erreur = new AtomicReference<>();
+    /**
+     * Indique si un envoi est en cours sur la session
+     */
+    private final AtomicBoolean envoiEnCours = new AtomicBoolean();
+    /**
+     * Format des messages envoyés au client
+     */
+    private final Mode mode;
+    /**
+     * Vue du client : indice du joueur qu'il incarne, {@code SuiviEtat.SPECTATEUR}
+     * ou {@code SuiviEtat.OMNISCIENT}
+     */
+    private final int vue;
+    /**
+     * Date de début de l'envoi en cours (en nanosecondes, 0 si aucun envoi n'est en cours)
+     */
+    private volatile long debutEnvoi;
+    /**
+     * Moyenne glissante de la durée des envois (en nanosecondes)
+     */
+    private volatile long latenceMoyenne;
+    /**
+     * Nombre de messages remplacés dans la file avant d'avoir pu être envoyés
+     */
+    private final AtomicLong nbRemplaces = new AtomicLong();
+    /**
+     * Indique si le client ne reçoit plus que des états périodiques
+     */
+    private volatile boolean degrade;
+    /**
+     * Verrou qui protège le changement de mode du client (normal ou dégradé) et
+     * l'état différé : un état ne peut pas être différé pendant que le client est
+     * rétabli, il ne serait alors jamais envoyé. Le thread de la partie ne le
+     * dispute qu'au thread de surveillance, et seulement le temps de déposer un
+     * message dans la file.
+     */
+    private final Object verrouMode = new Object();
+    /**
+     * Dernier état reçu alors que le client est dégradé, pas encore envoyé
+     * (ou {@code null}, protégé par {@link #verrouMode})
+     */
+    private MiseAJour etatDiffere;
+    /**
+     * Date d'envoi du dernier état périodique (utilisé uniquement par le thread de surveillance)
+     */
+    private long dernierInstantane;
+
+    /**
+     * @param session la session du client
+     * @param mode    format des messages envoyés au client
+     * @param vue     vue du client (voir {@code SuiviEtat})
+     * @param entete  premier message envoyé au client, avant tout autre (ou {@code null})
+     */
+    public Client(Session session, Mode mode, int vue, String entete) {
+        this.session = session;
+        this.mode = mode;
+        this.vue = vue;
+        if (entete != null) {
+            // le client n'est pas encore visible des autres threads : l'en-tête part immédiatement
+            // et ne peut pas être remplacé, les messages suivants attendront la fin de son envoi
+            envoyer(entete);
+        }
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getVue() {
+        return vue;
+    }
+
+    /**
+     * @return la durée moyenne des envois au client, en nanosecondes
+     */
+    public long getLatenceMoyenne() {
+        return latenceMoyenne;
+    }
+
+    /**
+     * @return le nombre de messages remplacés avant d'avoir pu être envoyés au client
+     */
+    public long getNbRemplaces() {
+        return nbRemplaces.get();
+    }
+
+    public boolean estDegrade() {
+        return degrade;
+    }
+
+    /**
+     * Dépose un message dans la file du client (en remplaçant le message en
+     * attente s'il y en a un) et démarre l'envoi si aucun envoi n'est en cours.
+     * Cette méthode ne bloque pas.
+     *
+     * @param message le message à envoyer ({@code String} ou {@code ByteBuffer})
+     */
+    public void envoyer(Object message) {
+        if (enAttente.getAndSet(message) != null) {
+            nbRemplaces.incrementAndGet();
+        }
+        envoyerSuivant();
+    }
+
+    /**
+     * Dépose un nouvel état de la partie dans la file du client, dans le format du client.
+     * <p>
+     * Un client en mode différentiel reçoit la différence avec l'état précédent,
+     * et un client binaire l'état avec les seules nouvelles lignes du log, sauf
+     * si un message précédent est encore en attente : sa différence ou ses
+     * lignes seraient perdues, l'état complet est donc envoyé à la place.
+     * <p>
+     * Si le client est dégradé, l'état est seulement conservé jusqu'au prochain
+     * envoi périodique.
+     *
+     * @param miseAJour le nouvel état de la partie
+     */
+    public void envoyerEtat(MiseAJour miseAJour) {
+        synchronized (verrouMode) {
+            if (degrade) {
+                etatDiffere = miseAJour;
+                return;
+            }
+            // l'état complet n'est demandé que si une différence est perdue : dans le cas
+            // courant, seule la différence est assemblée (une fois pour tous les clients de la vue)
+            if (enAttente.getAndUpdate(precedent -> precedent == null
+                    ? miseAJour.getDelta(mode, vue) : miseAJour.getEtat(mode, vue)) != null) {
+                nbRemplaces.incrementAndGet();
+            }
+        }
+        envoyerSuivant();
+    }
+
+    /**
+     * Signale au client qu'une de ses instructions a été refusée. Le message
+     * d'erreur ne remplace pas l'état en attente, mais remplace une erreur
+     * précédente qui n'est pas encore partie.
+     * <p>
+     * Les clients au format historique, qui ne reçoivent que des états
+     * complets, ne reçoivent pas d'erreur : l'instruction est simplement ignorée.
+     *
+     * @param message la raison du refus
+     */
+    public void envoyerErreur(String message) {
+        if (mode == Mode.COMPLET) {
+            return;
+        }
+        StringWriter texte = new StringWriter();
+        try (JsonWriter json = new JsonWriter(texte)) {
+            json.beginObject();
+            json.name("type").value("erreur");
+            json.name("message").value(message);
+            json.endObject();
+        } catch (IOException e) {
+            // impossible : l'écriture se fait en mémoire
+            throw new UncheckedIOException(e);
+        }
+        erreur.set(texte.toString());
+        envoyerSuivant();
+    }
+
+    /**
+     * Examine l'état des envois au client : dégrade le client si sa latence est
+     * trop élevée, le rétablit si elle est redevenue normale, et lui envoie
+     * l'état périodique s'il est dégradé.
+     * <p>
+     * Cette méthode est appelée régulièrement par un seul thread de surveillance.
+     *
+     * @param maintenant date actuelle (en nanosecondes, voir {@link System#nanoTime()})
+     * @return {@code true} si le client est bloqué et doit être déconnecté
+     */
+    public boolean surveiller(long maintenant) {
+        long debut = debutEnvoi;
+        long enCours = debut == 0 ? 0 : maintenant - debut;
+        if (enCours > DELAI_EVICTION) {
+            return true;
+        }
+        long latence = Math.max(latenceMoyenne, enCours);
+        synchronized (verrouMode) {
+            if (!degrade && latence > SEUIL_DEGRADATION) {
+                degrade = true;
+                dernierInstantane = maintenant;
+            } else if (degrade && latence < SEUIL_DEGRADATION / 2) {
+                degrade = false;
+                // les mises à jour reprennent à partir d'un état complet, déposé avant
+                // que le thread de la partie puisse déposer la différence suivante
+                deposerEtatDiffere();
+            } else if (degrade && maintenant - dernierInstantane >= PERIODE_INSTANTANES) {
+                dernierInstantane = maintenant;
+                deposerEtatDiffere();
+            }
+        }
+        envoyerSuivant();
+        return false;
+    }
+
+    /**
+     * Dépose l'état différé (complet) dans la file du client (à appeler avec {@link #verrouMode})
+     */
+    private void deposerEtatDiffere() {
+        MiseAJour etat = etatDiffere;
+        etatDiffere = null;
+        if (etat != null && enAttente.getAndSet(etat.getEtat(mode, vue)) != null) {
+            nbRemplaces.incrementAndGet();
+        }
+    }
+
+    /**
+     * Envoie le message en attente si aucun envoi n'est en cours
+     */
+    private void envoyerSuivant() {
+        while (envoiEnCours.compareAndSet(false, true)) {
+            Object message = erreur.getAndSet(null);
+            if (message == null) {
+                message = enAttente.getAndSet(null);
+            }
+            if (message != null) {
+                try {
+                    debutEnvoi = System.nanoTime();
+                    if (message instanceof ByteBuffer) {
+                        // la trame est partagée entre les clients : chacun l'envoie depuis sa propre vue
+                        session.getAsyncRemote().sendBinary(((ByteBuffer) message).duplicate(), this::envoiTermine);
+                    } else {
+                        session.getAsyncRemote().sendText((String) message, this::envoiTermine);
+                    }
+                    return;
+                } catch (RuntimeException e) {
+                    // session fermée entre-temps : le client sera retiré par onClose
+                    System.err.println("Envoi impossible au client " + session.getId() + " : " + e.getMessage());
+                    debutEnvoi = 0;
+                }
+            }
+            envoiEnCours.set(false);
+            // un message a pu être déposé entre la lecture de la file et la fin de l'envoi
+            if (enAttente.get() == null && erreur.get() == null) {
+                return;
+            }
+        }
+    }
+
+    private void envoiTermine(SendResult resultat) {
+        if (!resultat.isOK()) {
+            System.err.println("Erreur d'envoi au client " + session.getId() + " : " + resultat.getException());
+        }
+        long latence = System.nanoTime() - debutEnvoi;
+        long moyenne = latenceMoyenne;
+        latenceMoyenne = moyenne == 0 ? latence : (7 * moyenne + latence) / 8;
+        debutEnvoi = 0;
+        envoiEnCours.set(false);
+        envoyerSuivant();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s, vue %d) : latence %.1f ms, %d remplacés%s", session.getId(), mode, vue,
+                latenceMoyenne / 1e6, nbRemplaces.get(), degrade ? ", dégradé" : "");
+    }
+}
@@ -0,0 +1,116 @@
+package fr.umontpellier.iut.gui;
+
+/**
+ * Paramètres du transport réseau du serveur (Grizzly) et des sessions
+ * websocket (Tyrus), lus dans les propriétés système :
+ * <ul>
+ * <li>{@value #PROPRIETE_HOTE} : adresse d'écoute ({@code localhost} par défaut) ;</li>
+ * <li>{@value #PROPRIETE_PORT} : port d'écoute (3232 par défaut) ;</li>
+ * <li>{@value #PROPRIETE_SELECTEURS} : nombre de threads sélecteurs, qui
+ * surveillent les connexions ;</li>
+ * <li>{@value #PROPRIETE_TRAVAILLEURS} : nombre de threads du pool de
+ * travailleurs, qui traitent les messages reçus de toutes les salles ;</li>
+ * <li>{@value #PROPRIETE_TAMPON_LECTURE} et {@value #PROPRIETE_TAMPON_ECRITURE} :
+ * taille des tampons de socket (en octets) ;</li>
+ * <li>{@value #PROPRIETE_TAILLE_MAX_MESSAGE} : taille maximale d'un message
+ * reçu d'un client (en caractères, 8192 par défaut : un client n'envoie que
+ * des choix courts) ; un client qui la dépasse est déconnecté ;</li>
+ * <li>{@value #PROPRIETE_STATIQUE} : répertoire de l'interface graphique
+ * compilée, servie par le même serveur ({@code svelte/public} par défaut,
+ * rien n'est servi si le répertoire n'existe pas, voir {@link RessourcesStatiques}).</li>
+ * </ul>
+ * Une valeur nulle (ou absente, sauf pour l'adresse, le port et la taille
+ * des messages) laisse la valeur par défaut de Grizzly.
+ */
+public class ConfigurationServeur {
+    public static final String PROPRIETE_HOTE = "rails.serveur.hote";
+    public static final String PROPRIETE_PORT = "rails.serveur.port";
+    public static final String PROPRIETE_SELECTEURS = "rails.serveur.selecteurs";
+    public static final String PROPRIETE_TRAVAILLEURS = "rails.serveur.travailleurs";
+    public static final String PROPRIETE_TAMPON_LECTURE = "rails.serveur.tampon.lecture";
+    public static final String PROPRIETE_TAMPON_ECRITURE = "rails.serveur.tampon.ecriture";
+    public static final String PROPRIETE_TAILLE_MAX_MESSAGE = "rails.serveur.message.max";
+    public static final String PROPRIETE_STATIQUE = "rails.serveur.statique";
+
+    private final String hote;
+    private final int port;
+    private final int nbSelecteurs;
+    private final int nbTravailleurs;
+    private final int tailleTamponLecture;
+    private final int tailleTamponEcriture;
+    private final int tailleMaxMessage;
+    private final String repertoireStatique;
+
+    public ConfigurationServeur(String hote, int port, int nbSelecteurs, int nbTravailleurs,
+                                int tailleTamponLecture, int tailleTamponEcriture, int tailleMaxMessage,
+                                String repertoireStatique) {
+        if (port < 0 || nbSelecteurs < 0 || nbTravailleurs < 0 || tailleTamponLecture < 0
+                || tailleTamponEcriture < 0 || tailleMaxMessage <= 0) {
+            throw new IllegalArgumentException("Configuration du serveur invalide");
+        }
+        this.hote = hote;
+        this.port = port;
+        this.nbSelecteurs = nbSelecteurs;
+        this.nbTravailleurs = nbTravailleurs;
+        this.tailleTamponLecture = tailleTamponLecture;
+        this.tailleTamponEcriture = tailleTamponEcriture;
+        this.tailleMaxMessage = tailleMaxMessage;
+        this.repertoireStatique = repertoireStatique;
+    }
+
+    /**
+     * @return la configuration décrite par les propriétés système
+     */
+    public static ConfigurationServeur depuisProprietes() {
+        return new ConfigurationServeur(
+                System.getProperty(PROPRIETE_HOTE, "localhost"),
+                Integer.getInteger(PROPRIETE_PORT, 3232),
+                Integer.getInteger(PROPRIETE_SELECTEURS, 0),
+                Integer.getInteger(PROPRIETE_TRAVAILLEURS, 0),
+                Integer.getInteger(PROPRIETE_TAMPON_LECTURE, 0),
+                Integer.getInteger(PROPRIETE_TAMPON_ECRITURE, 0),
+                Integer.getInteger(PROPRIETE_TAILLE_MAX_MESSAGE, 8 * 1024),
+                System.getProperty(PROPRIETE_STATIQUE, "svelte/public"));
+    }
+
+    public String getHote() {
+        return hote;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getNbSelecteurs() {
+        return nbSelecteurs;
+    }
+
+    public int getNbTravailleurs() {
+        return nbTravailleurs;
+    }
+
+    public int getTailleTamponLecture() {
+        return tailleTamponLecture;
+    }
+
+    public int getTailleTamponEcriture() {
+        return tailleTamponEcriture;
+    }
+
+    public int getTailleMaxMessage() {
+        return tailleMaxMessage;
+    }
+
+    /**
+     * @return le répertoire de l'interface graphique servie, ou {@code null} si aucune interface n'est servie
+     */
+    public String getRepertoireStatique() {
+        return repertoireStatique;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%d (sélecteurs %d, travailleurs %d, tampons %d/%d, messages max %d)", hote, port,
+                nbSelecteurs, nbTravailleurs, tailleTamponLecture, tailleTamponEcriture, tailleMaxMessage);
+    }
+}
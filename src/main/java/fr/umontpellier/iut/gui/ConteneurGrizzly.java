@@ -0,0 +1,138 @@
+package fr.umontpellier.iut.gui;
+
+import org.glassfish.grizzly.http.server.AddOn;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransportBuilder;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.glassfish.tyrus.container.grizzly.GrizzlyEngine;
+import org.glassfish.tyrus.core.TyrusEndpoint;
+import org.glassfish.tyrus.spi.SPIEndpoint;
+import org.glassfish.tyrus.spi.SPIHandshakeListener;
+import org.glassfish.tyrus.spi.SPIRegisteredEndpoint;
+import org.glassfish.tyrus.spi.TyrusClientSocket;
+import org.glassfish.tyrus.spi.TyrusContainer;
+import org.glassfish.tyrus.spi.TyrusServer;
+import org.glassfish.tyrus.websockets.WebSocketEngine;
+
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.DeploymentException;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Conteneur Tyrus qui crée un serveur Grizzly configuré (voir
+ * {@link ConfigurationServeur}).
+ * <p>
+ * Le conteneur fourni par Tyrus 1.1 ({@code GrizzlyEngine}) crée un serveur
+ * avec les réglages par défaut de Grizzly, écoute sur toutes les interfaces et
+ * ne permet aucun réglage du transport. Ce conteneur construit lui-même
+ * l'écouteur et son transport, puis y installe le module websocket de Tyrus
+ * et, sur le même port, le service de l'interface graphique.
+ * Un seul transport, avec un seul pool de travailleurs, sert toutes les
+ * salles : la salle d'un client n'est qu'un paramètre de son URL de connexion.
+ * <p>
+ * Tyrus instancie le conteneur à partir du nom de sa classe : la
+ * configuration est donc lue dans les propriétés système. Elle ne concerne que
+ * le serveur : les connexions sortantes (si le conteneur sert de client
+ * websocket) sont ouvertes par le conteneur Grizzly de Tyrus.
+ */
+public class ConteneurGrizzly implements TyrusContainer {
+    /**
+     * Nom de la classe (non publique) du module websocket de Tyrus pour Grizzly
+     */
+    private static final String MODULE_WEBSOCKET = "org.glassfish.tyrus.container.grizzly.WebSocketAddOn";
+
+    private final ConfigurationServeur configuration;
+
+    public ConteneurGrizzly() {
+        this(ConfigurationServeur.depuisProprietes());
+    }
+
+    public ConteneurGrizzly(ConfigurationServeur configuration) {
+        this.configuration = configuration;
+    }
+
+    @Override
+    public TyrusServer createServer(String rootPath, int port) {
+        HttpServer serveur = new HttpServer();
+        NetworkListener ecouteur = new NetworkListener("rails", configuration.getHote(), port);
+        ecouteur.setTransport(creerTransport());
+        ecouteur.registerAddOn(creerModuleWebSocket());
+        serveur.addListener(ecouteur);
+        // les requêtes HTTP ordinaires (hors ouverture de websocket) reçoivent l'interface graphique
+        if (configuration.getRepertoireStatique() != null
+                && Files.isDirectory(Path.of(configuration.getRepertoireStatique()))) {
+            serveur.getServerConfiguration().addHttpHandler(
+                    new RessourcesStatiques(Path.of(configuration.getRepertoireStatique())), "/");
+        }
+        WebSocketEngine moteur = WebSocketEngine.getEngine();
+
+        return new TyrusServer() {
+            @Override
+            public void start() throws IOException {
+                serveur.start();
+            }
+
+            @Override
+            public void stop() {
+                serveur.stop();
+            }
+
+            @Override
+            public SPIRegisteredEndpoint register(SPIEndpoint endpoint) throws DeploymentException {
+                TyrusEndpoint application = new TyrusEndpoint(endpoint);
+                moteur.register(application);
+                return application;
+            }
+
+            @Override
+            public void unregister(SPIRegisteredEndpoint endpoint) {
+                moteur.unregister((TyrusEndpoint) endpoint);
+            }
+        };
+    }
+
+    /**
+     * Crée le transport de l'écouteur, avec le nombre de threads et la taille des tampons configurés
+     */
+    TCPNIOTransport creerTransport() {
+        TCPNIOTransport transport = TCPNIOTransportBuilder.newInstance().build();
+        if (configuration.getNbSelecteurs() > 0) {
+            transport.setSelectorRunnersCount(configuration.getNbSelecteurs());
+        }
+        if (configuration.getNbTravailleurs() > 0) {
+            transport.setWorkerThreadPoolConfig(ThreadPoolConfig.defaultConfig().copy()
+                    .setPoolName("rails-travailleur")
+                    .setCorePoolSize(configuration.getNbTravailleurs())
+                    .setMaxPoolSize(configuration.getNbTravailleurs()));
+        }
+        if (configuration.getTailleTamponLecture() > 0) {
+            transport.setReadBufferSize(configuration.getTailleTamponLecture());
+        }
+        if (configuration.getTailleTamponEcriture() > 0) {
+            transport.setWriteBufferSize(configuration.getTailleTamponEcriture());
+        }
+        return transport;
+    }
+
+    private static AddOn creerModuleWebSocket() {
+        try {
+            Constructor<?> constructeur = Class.forName(MODULE_WEBSOCKET).getDeclaredConstructor();
+            constructeur.setAccessible(true);
+            return (AddOn) constructeur.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Module websocket de Tyrus introuvable", e);
+        }
+    }
+
+    @Override
+    public TyrusClientSocket openClientSocket(String url, ClientEndpointConfig configuration, SPIEndpoint endpoint,
+                                              SPIHandshakeListener listener, Map<String, Object> proprietes) {
+        return new GrizzlyEngine().openClientSocket(url, configuration, endpoint, listener, proprietes);
+    }
+}
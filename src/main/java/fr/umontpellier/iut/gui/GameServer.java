@@ -1,43 +1,123 @@
 package fr.umontpellier.iut.gui;
 
 import fr.umontpellier.iut.rails.Jeu;
-import org.glassfish.tyrus.server.Server;
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.Journal;
+import org.glassfish.tyrus.server.ServerContainerFactory;
+import org.glassfish.tyrus.server.TyrusServerContainer;
 
+import javax.websocket.CloseReason;
 import javax.websocket.DeploymentException;
 import javax.websocket.Session;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GameServer {
     /**
-     * Liste des clients connectés au serveur
+     * Identifiant de la salle utilisée par les clients qui n'en précisent pas
      */
-    private static ArrayList<Session> clients = new ArrayList<>();
+    public static final String SALLE_PAR_DEFAUT = "defaut";
     /**
-     * Description de l'état du jeu, envoyé aux clients pour la mise à jour de l'interface graphique
+     * Nom du paramètre de l'URL de connexion qui indique la salle à rejoindre
      */
-    private static String etatJeu = "";
+    public static final String PARAMETRE_SALLE = "salle";
     /**
-     * Instance de jeu exécutée par le serveur
+     * Nom du paramètre de l'URL de connexion qui indique le format des mises à jour
+     * ("delta" pour des différences JSON, "binaire" pour des trames binaires, voir {@link Client.Mode})
      */
-    private static Jeu jeu;
+    public static final String PARAMETRE_MODE = "mode";
+    /**
+     * Nom du paramètre de l'URL de connexion qui indique le joueur incarné par le client
+     * (le client ne voit alors pas les mains des autres joueurs)
+     */
+    public static final String PARAMETRE_JOUEUR = "joueur";
+    /**
+     * Nom du paramètre de l'URL de connexion qui indique que le client est spectateur
+     * (il ne voit la main d'aucun joueur, même dans une salle où les joueurs partagent un écran)
+     */
+    public static final String PARAMETRE_SPECTATEUR = "spectateur";
+    /**
+     * Nom de la propriété système qui indique si les joueurs des salles créées par
+     * le serveur partagent un même écran (« true » par défaut) : un client qui ne
+     * précise ni joueur ni mode spectateur, comme l'interface graphique fournie,
+     * voit alors la main de tous les joueurs et joue pour eux. Avec « false », un
+     * tel client est spectateur et chaque joueur doit se connecter avec
+     * {@link #PARAMETRE_JOUEUR}.
+     */
+    public static final String PROPRIETE_ECRAN_PARTAGE = "rails.salle.ecranPartage";
+    /**
+     * Message envoyé par un client pour redemander l'état complet de la partie
+     */
+    public static final String MESSAGE_RESYNCHRONISATION = "/resync";
+    /**
+     * Salles hébergées par le serveur, indexées par leur identifiant
+     */
+    private static final Map<String, Salle> salles = new ConcurrentHashMap<>();
+    /**
+     * Taille de la pile des threads de partie lorsque les threads virtuels ne
+     * sont pas disponibles (une partie bloquée en attente d'une entrée n'utilise
+     * qu'une pile peu profonde)
+     */
+    private static final long TAILLE_PILE_PARTIE = 256 * 1024;
+    /**
+     * Exécuteur partagé par toutes les salles pour faire tourner les parties
+     */
+    private static final ExecutorService executeurParties = creerExecuteurParties();
+    /**
+     * Intervalle entre deux examens des envois aux clients (en millisecondes)
+     */
+    private static final long PERIODE_SURVEILLANCE = 500;
+    /**
+     * Taille maximale d'un message reçu d'un client, en caractères (voir {@link ConfigurationServeur})
+     */
+    private static volatile int tailleMaxMessage = ConfigurationServeur.depuisProprietes().getTailleMaxMessage();
+    /**
+     * Journal des parties, qui permet de les reconstruire au redémarrage du serveur
+     * (ou {@code null} si les parties ne sont pas journalisées, voir {@link Journal})
+     */
+    private static volatile Journal journal;
 
     public static void main(String[] args) {
-        // Lancement de la partie
-        jeu = new Jeu(new String[]{"J1", "J2"});
+        // Reconstruction des parties journalisées, puis lancement de la partie
+        Path fichierJournal = Journal.fichierDepuisProprietes();
+        if (fichierJournal != null) {
+            ouvrirJournal(fichierJournal);
+        }
+        creerSalle(SALLE_PAR_DEFAUT, new Jeu(new String[]{"J1", "J2"}));
 
-        // Prépare le serveur websocket
-        Server server = new Server("localhost", 3232, "/", WebSocketClient.class);
+        // Prépare le serveur websocket (voir ConfigurationServeur pour les réglages du transport)
+        ConfigurationServeur configuration = ConfigurationServeur.depuisProprietes();
+        tailleMaxMessage = configuration.getTailleMaxMessage();
+        TyrusServerContainer server = ServerContainerFactory.create(ConteneurGrizzly.class.getName(), "/",
+                configuration.getPort(), Set.of(WebSocketClient.class));
+        // Tyrus 1.1 ne borne ainsi que les messages fragmentés, les messages entiers sont vérifiés à la réception
+        server.setDefaultMaxTextMessageBufferSize(configuration.getTailleMaxMessage());
+        server.setDefaultMaxBinaryMessageBufferSize(configuration.getTailleMaxMessage());
+        demarrerSurveillance();
 
         try (Scanner scanner = new Scanner(System.in)) {
             server.start();             // lance le serveur
-            new Thread(jeu).start();    // démarre le jeu (exécute la méthode Jeu.run() dans un nouveau thread)
+            System.out.println("Serveur démarré sur " + configuration);
 
             while (true) {
-                jeu.addInput(scanner.nextLine());
+                executerCommande(scanner.nextLine());
             }
-        } catch (DeploymentException e) {
+        } catch (DeploymentException | IOException e) {
             throw new RuntimeException(e);
         } finally {
             server.stop();
@@ -45,54 +125,283 @@ public class GameServer {
     }
 
     /**
-     * Ajoute une nouvelle instruction à la file d'instructions
-     * (cette méthode est appelée lorsqu'un message est reçue sur la websocket)
-     * 
-     * @param message l'instruction à ajouter
+     * Exécute une ligne lue sur l'entrée standard du serveur :
+     * - "/creer id J1 J2 ..." crée une salle et y lance une partie ;
+     * - "/retirer id" ferme une salle ;
+     * - "/salles" affiche la liste des salles ;
+     * - "/clients" affiche les clients de chaque salle et leurs statistiques d'envoi ;
+     * - toute autre ligne est une instruction pour la salle par défaut.
      */
-    public static void addInput(String message) {
-        jeu.addInput(message);
+    private static void executerCommande(String ligne) {
+        List<String> mots = Arrays.asList(ligne.trim().split("\\s+"));
+        if (ligne.startsWith("/creer ") && mots.size() >= 4) {
+            String[] noms = mots.subList(2, mots.size()).toArray(new String[0]);
+            if (creerSalle(mots.get(1), new Jeu(noms)) == null) {
+                System.out.println("La salle " + mots.get(1) + " existe déjà");
+            }
+        } else if (ligne.startsWith("/retirer ") && mots.size() == 2) {
+            retirerSalle(mots.get(1));
+        } else if (ligne.equals("/salles")) {
+            System.out.println(salles.keySet());
+        } else if (ligne.equals("/clients")) {
+            for (Salle salle : salles.values()) {
+                System.out.println(salle.getId() + " :");
+                for (Client client : salle.getClients()) {
+                    System.out.println("  " + client);
+                }
+            }
+        } else {
+            addInput(SALLE_PAR_DEFAUT, ligne);
+        }
     }
 
     /**
-     * Met à jour l'état de la partie, et envoie le nouvel état à tous les clients connectés
-     * 
-     * @param etatJeu l'état de la partie
+     * Crée l'exécuteur des parties.
+     * <p>
+     * Une partie passe l'essentiel de son temps bloquée dans {@code Jeu.lireLigne()}.
+     * Si la JVM fournit des threads virtuels (Java 21 ou plus), chaque partie
+     * s'exécute dans un thread virtuel, qui ne coûte que quelques Ko lorsqu'il est
+     * bloqué. Sinon, chaque partie utilise un thread démon avec une pile réduite.
+     */
+    private static ExecutorService creerExecuteurParties() {
+        try {
+            Method virtuels = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtuels.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger compteur = new AtomicInteger();
+            return Executors.newCachedThreadPool(tache -> {
+                Thread thread = new Thread(null, tache, "partie-" + compteur.incrementAndGet(), TAILLE_PILE_PARTIE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Ouvre le journal des parties et reconstruit les salles des parties qui
+     * n'étaient pas terminées : chaque partie est recréée avec sa graine, et
+     * relit les entrées journalisées avant d'attendre de nouvelles entrées.
+     * Le journal est d'abord compacté (les parties terminées en sont retirées).
      */
-    public static void setEtatJeu(String etatJeu) {
-        GameServer.etatJeu = etatJeu;
-        // Envoie l'état de la partie à tous les clients
+    private static void ouvrirJournal(Path fichier) {
         try {
-            for (Session session : clients) {
-                session.getBasicRemote().sendText(etatJeu);
+            Map<String, Journal.Partie> parties = Journal.compacter(fichier);
+            journal = new Journal(fichier);
+            for (Journal.Partie partie : parties.values()) {
+                Jeu jeu = new Jeu(partie.getNomJoueurs(), partie.getGraine());
+                jeu.setJournal(journal, partie.getEntrees());
+                Salle salle = nouvelleSalle(partie.getSalle(), jeu);
+                if (salles.putIfAbsent(partie.getSalle(), salle) == null) {
+                    demarrer(salle);
+                }
             }
+            System.out.println(parties.size() + " partie(s) reconstruite(s) depuis " + fichier);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Lance la surveillance périodique des envois aux clients de toutes les salles
+     * (dégradation et déconnexion des clients trop lents, voir {@link Client#surveiller(long)})
+     */
+    private static void demarrerSurveillance() {
+        ScheduledExecutorService surveillance = Executors.newSingleThreadScheduledExecutor(tache -> {
+            Thread thread = new Thread(tache, "surveillance-clients");
+            thread.setDaemon(true);
+            return thread;
+        });
+        surveillance.scheduleAtFixedRate(() -> {
+            long maintenant = System.nanoTime();
+            for (Salle salle : salles.values()) {
+                try {
+                    salle.surveillerClients(maintenant);
+                } catch (RuntimeException e) {
+                    // une erreur ne doit pas interrompre la surveillance des autres salles
+                    e.printStackTrace();
+                }
+            }
+        }, PERIODE_SURVEILLANCE, PERIODE_SURVEILLANCE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return l'exécuteur partagé dans lequel s'exécutent les parties de toutes les salles
+     */
+    public static ExecutorService getExecuteurParties() {
+        return executeurParties;
+    }
+
+    /**
+     * Crée une salle et démarre sa partie
+     *
+     * @param id  identifiant de la salle
+     * @param jeu la partie à exécuter dans la salle
+     * @return la salle créée, ou {@code null} si une salle avec cet identifiant existe déjà
+     */
+    public static Salle creerSalle(String id, Jeu jeu) {
+        Salle salle = nouvelleSalle(id, jeu);
+        if (salles.putIfAbsent(id, salle) != null) {
+            return null;
+        }
+        if (journal != null) {
+            journal.enregistrerCreation(id, jeu.getGraine(),
+                    jeu.getJoueurs().stream().map(Joueur::getNom).toArray(String[]::new));
+            jeu.setJournal(journal, List.of());
         }
+        demarrer(salle);
+        return salle;
     }
 
     /**
-     * Ajoute un nouveau client à la liste, et lui transmet l'état actuel de la partie
+     * Démarre la partie d'une salle : une partie terminée est enregistrée comme
+     * telle dans le journal, qui ne la reconstruira pas au prochain démarrage
+     */
+    private static void demarrer(Salle salle) {
+        Journal journalSalle = journal;
+        salle.demarrer(executeurParties, journalSalle == null ? () -> { }
+                : () -> journalSalle.enregistrerFin(salle.getId()));
+    }
+
+    /**
+     * @return une salle (pas encore enregistrée ni démarrée), réglée selon les propriétés système
+     */
+    private static Salle nouvelleSalle(String id, Jeu jeu) {
+        Salle salle = new Salle(id, jeu);
+        salle.setEcranPartage(Boolean.parseBoolean(System.getProperty(PROPRIETE_ECRAN_PARTAGE, "true")));
+        return salle;
+    }
+
+    /**
+     * @return la salle ayant cet identifiant, ou {@code null} si elle n'existe pas
+     */
+    public static Salle getSalle(String id) {
+        return id == null ? null : salles.get(id);
+    }
+
+    /**
+     * Ferme une salle et la retire du serveur
+     */
+    public static void retirerSalle(String id) {
+        Salle salle = salles.remove(id);
+        if (salle != null) {
+            if (journal != null) {
+                journal.enregistrerFin(id);
+            }
+            salle.fermer();
+        }
+    }
+
+    /**
+     * Renvoie la valeur d'un paramètre de l'URL de connexion d'un client
+     * (Tyrus 1.1 ne remplit pas {@code Session.getRequestParameterMap()}, la
+     * chaîne de requête est donc analysée ici)
+     *
+     * @param session la session du client
+     * @param nom     nom du paramètre
+     * @return la valeur du paramètre, la chaîne vide s'il n'a pas de valeur, ou
+     * {@code null} s'il est absent
+     */
+    public static String getParametre(Session session, String nom) {
+        String requete = session.getQueryString();
+        if (requete == null) {
+            return null;
+        }
+        for (String parametre : requete.split("&")) {
+            int egal = parametre.indexOf('=');
+            String cle = egal < 0 ? parametre : parametre.substring(0, egal);
+            if (URLDecoder.decode(cle, StandardCharsets.UTF_8).equals(nom)) {
+                return egal < 0 ? "" : URLDecoder.decode(parametre.substring(egal + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Renvoie l'identifiant de la salle associée à une session
+     */
+    private static String getIdSalle(Session session) {
+        Object id = session.getUserProperties().get(PARAMETRE_SALLE);
+        return id == null ? SALLE_PAR_DEFAUT : id.toString();
+    }
+
+    /**
+     * Ajoute une nouvelle instruction à la file d'instructions d'une salle
+     * (cette méthode est appelée lorsqu'une ligne est lue sur l'entrée standard,
+     * qui peut jouer pour tous les joueurs)
+     * 
+     * @param idSalle identifiant de la salle
+     * @param message l'instruction à ajouter
+     */
+    public static void addInput(String idSalle, String message) {
+        Salle salle = getSalle(idSalle);
+        if (salle != null) {
+            String erreur = salle.addInput(message, Jeu.TOUS_LES_JOUEURS);
+            if (erreur != null) {
+                System.out.println(erreur);
+            }
+        }
+    }
+
+    /**
+     * Traite un message reçu d'un client : une demande de resynchronisation, ou
+     * une instruction pour la partie de sa salle (refusée si elle ne fait pas
+     * partie des choix attendus ou si ce n'est pas au joueur du client de jouer).
+     * Un client qui envoie un message trop long est déconnecté.
+     *
+     * @param session la session du client
+     * @param message le message reçu
+     */
+    public static void recevoir(Session session, String message) {
+        if (message.length() > tailleMaxMessage) {
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.TOO_BIG, "Message trop long"));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        Salle salle = getSalle(getIdSalle(session));
+        if (salle == null) {
+            return;
+        }
+        if (MESSAGE_RESYNCHRONISATION.equals(message)) {
+            salle.resynchroniser(session);
+        } else {
+            salle.recevoir(session, message);
+        }
+    }
+
+    /**
+     * Ajoute un nouveau client à la salle qu'il a demandée, et lui transmet l'état actuel de la partie
      * (cette méthode est appelée lorsqu'une nouvelle connexion est établie)
      * 
      * @param session la session du nouveau client
      */
     public static void addClient(Session session) {
-        GameServer.clients.add(session);
-        try {
-            session.getBasicRemote().sendText(etatJeu);
-        } catch (IOException e) {
-            e.printStackTrace();
+        String id = getParametre(session, PARAMETRE_SALLE);
+        if (id == null || id.isEmpty()) {
+            id = SALLE_PAR_DEFAUT;
+        }
+        session.getUserProperties().put(PARAMETRE_SALLE, id);
+        Salle salle = getSalle(id);
+        if (salle != null) {
+            int vue = salle.getVue(getParametre(session, PARAMETRE_JOUEUR),
+                    getParametre(session, PARAMETRE_SPECTATEUR) != null);
+            session.getUserProperties().put(PARAMETRE_JOUEUR, vue);
+            salle.addClient(session, Client.Mode.depuis(getParametre(session, PARAMETRE_MODE)), vue);
         }
     }
 
     /**
-     * Retire un client de la liste
+     * Retire un client de sa salle
      * (cette méthode est appelée lorsqu'une connexion est fermée)
      * 
      * @param session la session du client à retirer
      */
     public static void removeClient(Session session) {
-        GameServer.clients.remove(session);
+        Salle salle = getSalle(getIdSalle(session));
+        if (salle != null) {
+            salle.removeClient(session);
+        }
     }
 }
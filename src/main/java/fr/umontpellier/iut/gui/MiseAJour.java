@@ -0,0 +1,148 @@
+package fr.umontpellier.iut.gui;
+
+import fr.umontpellier.iut.rails.EtatBinaire;
+import fr.umontpellier.iut.rails.SuiviEtat;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Nouvel état d'une partie, à partir duquel sont produits les messages envoyés
+ * aux clients dans chaque format (voir {@link Client.Mode}) et pour chaque vue
+ * (un joueur, un spectateur ou la vue omnisciente, voir {@link SuiviEtat}).
+ * <p>
+ * Un message n'est assemblé qu'au premier client qui en a besoin, puis il est
+ * conservé et partagé par tous les clients qui ont le même format et la même
+ * vue : les centaines de spectateurs d'une partie reçoivent la même chaîne ou
+ * la même trame, sans copie ni nouvel encodage par destinataire. Seul le
+ * découpage en trame websocket reste fait par Tyrus à chaque envoi (son API
+ * ne permet pas d'envoyer une trame déjà formée) ; pour les trames binaires,
+ * il ne demande pas d'encodage UTF-8 du contenu.
+ * <p>
+ * La partie n'encode son état que dans les formats attendus par les clients de
+ * sa salle (voir {@code Jeu.prompt}) : une mise à jour peut donc n'avoir que
+ * l'état JSON, ou aucun état si la salle n'a pas de client. Un client qui se
+ * connecte dans un format absent demande à la partie de compléter l'état
+ * courant (voir {@link Salle#addClient}).
+ */
+public class MiseAJour {
+    /**
+     * Nombre de messages différents pour une vue : état complet historique,
+     * état compact, différence JSON, trame binaire avec les dernières lignes du
+     * log et trame binaire avec les nouvelles lignes du log
+     */
+    private static final int NB_MESSAGES = 5;
+
+    /**
+     * État au format JSON (ou {@code null} s'il n'a pas été encodé)
+     */
+    private final SuiviEtat.Instantane etatJson;
+    /**
+     * État au format binaire (ou {@code null} s'il n'a pas été encodé)
+     */
+    private final EtatBinaire.Instantane etatBinaire;
+    /**
+     * Messages déjà assemblés, indexés par vue puis par type de message
+     */
+    private final AtomicReferenceArray<Object> messages;
+
+    /**
+     * @param nbJoueurs   nombre de joueurs de la partie
+     * @param etatJson    état au format JSON (ou {@code null})
+     * @param etatBinaire état au format binaire (ou {@code null})
+     */
+    public MiseAJour(int nbJoueurs, SuiviEtat.Instantane etatJson, EtatBinaire.Instantane etatBinaire) {
+        this.etatJson = etatJson;
+        this.etatBinaire = etatBinaire;
+        // vues : spectateur, omnisciente, puis chaque joueur
+        messages = new AtomicReferenceArray<>((nbJoueurs + 2) * NB_MESSAGES);
+    }
+
+    public SuiviEtat.Instantane getEtatJson() {
+        return etatJson;
+    }
+
+    public EtatBinaire.Instantane getEtatBinaire() {
+        return etatBinaire;
+    }
+
+    /**
+     * @return vrai si l'état a été encodé dans le format d'un client
+     */
+    public boolean estEncode(Client.Mode mode) {
+        return source(mode) != null;
+    }
+
+    /**
+     * @return vrai si l'état dans le format d'un client est différent de celui
+     * d'une mise à jour précédente (ou {@code null}) : un client de ce format n'a
+     * encore rien reçu de cette mise à jour
+     */
+    public boolean estNouveau(Client.Mode mode, MiseAJour precedente) {
+        Object source = source(mode);
+        return source != null && (precedente == null || precedente.source(mode) != source);
+    }
+
+    private Object source(Client.Mode mode) {
+        return mode == Client.Mode.BINAIRE ? etatBinaire : etatJson;
+    }
+
+    /**
+     * @param mode format du client (l'état doit être encodé dans ce format, voir {@link #estEncode(Client.Mode)})
+     * @param vue  vue du client
+     * @return le message complet à envoyer à un client
+     */
+    public Object getEtat(Client.Mode mode, int vue) {
+        switch (mode) {
+            case DIFFERENTIEL:
+                return message(vue, 1);
+            case BINAIRE:
+                return message(vue, 3);
+            default:
+                return message(vue, 0);
+        }
+    }
+
+    /**
+     * @param mode format du client (l'état doit être encodé dans ce format, voir {@link #estEncode(Client.Mode)})
+     * @param vue  vue du client
+     * @return le message à envoyer à un client qui a reçu l'état précédent
+     */
+    public Object getDelta(Client.Mode mode, int vue) {
+        switch (mode) {
+            case DIFFERENTIEL:
+                return message(vue, 2);
+            case BINAIRE:
+                return message(vue, 4);
+            default:
+                return message(vue, 0);
+        }
+    }
+
+    private Object message(int vue, int type) {
+        int indice = (vue - SuiviEtat.SPECTATEUR) * NB_MESSAGES + type;
+        Object message = messages.get(indice);
+        if (message == null) {
+            message = assembler(vue, type);
+            // si deux threads assemblent le même message, le premier est conservé
+            if (!messages.compareAndSet(indice, null, message)) {
+                message = messages.get(indice);
+            }
+        }
+        return message;
+    }
+
+    private Object assembler(int vue, int type) {
+        switch (type) {
+            case 0:
+                return etatJson.etatComplet(vue);
+            case 1:
+                return etatJson.etatCompact(vue);
+            case 2:
+                return etatJson.delta(vue);
+            case 3:
+                return etatBinaire.trame(vue, true);
+            default:
+                return etatBinaire.trame(vue, false);
+        }
+    }
+}
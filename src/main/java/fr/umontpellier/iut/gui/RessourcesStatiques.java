@@ -0,0 +1,256 @@
+package fr.umontpellier.iut.gui;
+
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sert l'interface graphique compilée ({@code svelte/public} : page,
+ * {@code bundle.js}, {@code bundle.css}, images) depuis le processus du
+ * serveur de jeu.
+ * <p>
+ * Chaque fichier est lu une seule fois puis conservé en mémoire (il est relu
+ * s'il est modifié sur le disque). Les fichiers texte sont servis compressés
+ * aux navigateurs qui acceptent gzip : la variante {@code fichier.gz} est
+ * utilisée si elle existe (compressée à la construction de l'interface),
+ * sinon le fichier est compressé au premier chargement. Chaque variante a une
+ * étiquette (ETag) forte calculée sur son contenu : un navigateur qui
+ * revalide un fichier inchangé reçoit une réponse 304 sans contenu.
+ */
+public class RessourcesStatiques extends HttpHandler {
+    /**
+     * Contenu d'un fichier servi, dans ses deux variantes
+     */
+    static final class Ressource {
+        private final byte[] contenu;
+        private final byte[] contenuGzip;
+        private final String etag;
+        private final String etagGzip;
+        private final String type;
+        private final long dateModification;
+        private final long taille;
+
+        private Ressource(byte[] contenu, byte[] contenuGzip, String type, long dateModification, long taille) {
+            this.contenu = contenu;
+            this.contenuGzip = contenuGzip;
+            this.etag = etiquette(contenu);
+            this.etagGzip = contenuGzip == null ? null : etiquette(contenuGzip);
+            this.type = type;
+            this.dateModification = dateModification;
+            this.taille = taille;
+        }
+
+        byte[] getContenu(boolean gzip) {
+            return gzip && contenuGzip != null ? contenuGzip : contenu;
+        }
+
+        String getEtag(boolean gzip) {
+            return gzip && contenuGzip != null ? etagGzip : etag;
+        }
+
+        boolean aVarianteGzip() {
+            return contenuGzip != null;
+        }
+
+        String getType() {
+            return type;
+        }
+    }
+
+    private final Path racine;
+    /**
+     * Fichiers déjà chargés, indexés par leur chemin
+     */
+    private final Map<Path, Ressource> ressources = new ConcurrentHashMap<>();
+
+    /**
+     * @param racine répertoire des fichiers servis
+     */
+    public RessourcesStatiques(Path racine) {
+        this.racine = racine.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void service(Request requete, Response reponse) throws Exception {
+        Method methode = requete.getMethod();
+        if (methode != Method.GET && methode != Method.HEAD) {
+            reponse.sendError(405);
+            return;
+        }
+        Ressource ressource = charger(requete.getDecodedRequestURI());
+        if (ressource == null) {
+            reponse.sendError(404);
+            return;
+        }
+        boolean gzip = ressource.aVarianteGzip() && accepteGzip(requete.getHeader("Accept-Encoding"));
+        String etag = ressource.getEtag(gzip);
+        if (ressource.aVarianteGzip()) {
+            reponse.setHeader("Vary", "Accept-Encoding");
+        }
+        reponse.setHeader("ETag", etag);
+        // les noms des fichiers ne changent pas d'une version à l'autre : le navigateur revalide à chaque chargement
+        reponse.setHeader("Cache-Control", "no-cache");
+        if (correspond(requete.getHeader("If-None-Match"), etag)) {
+            reponse.setStatus(304);
+            return;
+        }
+        byte[] contenu = ressource.getContenu(gzip);
+        reponse.setContentType(ressource.getType());
+        if (gzip) {
+            reponse.setHeader("Content-Encoding", "gzip");
+        }
+        reponse.setContentLength(contenu.length);
+        if (methode == Method.GET) {
+            reponse.getOutputStream().write(contenu);
+        }
+    }
+
+    /**
+     * Charge (ou retrouve en mémoire) le fichier désigné par le chemin d'une requête
+     *
+     * @param chemin chemin décodé de la requête ("/" désigne {@code index.html})
+     * @return la ressource, ou {@code null} si le fichier n'existe pas ou est en dehors du répertoire servi
+     */
+    Ressource charger(String chemin) throws IOException {
+        String relatif = chemin.startsWith("/") ? chemin.substring(1) : chemin;
+        if (relatif.isEmpty() || relatif.endsWith("/")) {
+            relatif += "index.html";
+        }
+        Path fichier = racine.resolve(relatif).normalize();
+        if (!fichier.startsWith(racine) || !Files.isRegularFile(fichier)) {
+            return null;
+        }
+        BasicFileAttributes attributs = Files.readAttributes(fichier, BasicFileAttributes.class);
+        long date = attributs.lastModifiedTime().toMillis();
+        Ressource ressource = ressources.get(fichier);
+        if (ressource == null || ressource.dateModification != date || ressource.taille != attributs.size()) {
+            ressource = lire(fichier, date, attributs.size());
+            ressources.put(fichier, ressource);
+        }
+        return ressource;
+    }
+
+    private static Ressource lire(Path fichier, long date, long taille) throws IOException {
+        byte[] contenu = Files.readAllBytes(fichier);
+        String type = type(fichier.getFileName().toString());
+        byte[] contenuGzip = null;
+        Path variante = fichier.resolveSibling(fichier.getFileName() + ".gz");
+        if (Files.isRegularFile(variante) && Files.getLastModifiedTime(variante).toMillis() >= date) {
+            contenuGzip = Files.readAllBytes(variante);
+        } else if (estCompressible(type)) {
+            contenuGzip = compresser(contenu);
+        }
+        if (contenuGzip != null && contenuGzip.length >= contenu.length) {
+            contenuGzip = null;
+        }
+        return new Ressource(contenu, contenuGzip, type, date, taille);
+    }
+
+    private static byte[] compresser(byte[] contenu) {
+        ByteArrayOutputStream sortie = new ByteArrayOutputStream(contenu.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(sortie)) {
+            gzip.write(contenu);
+        } catch (IOException e) {
+            // impossible : l'écriture se fait en mémoire
+            throw new UncheckedIOException(e);
+        }
+        return sortie.toByteArray();
+    }
+
+    /**
+     * @return une étiquette forte (entre guillemets) calculée à partir du contenu
+     */
+    private static String etiquette(byte[] contenu) {
+        try {
+            byte[] empreinte = MessageDigest.getInstance("SHA-256").digest(contenu);
+            return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(empreinte).substring(0, 22) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 est disponible dans toutes les JVM
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Indique si l'en-tête {@code Accept-Encoding} d'une requête accepte gzip
+     */
+    static boolean accepteGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String codage : acceptEncoding.split(",")) {
+            String[] parties = codage.trim().split(";");
+            if (parties[0].trim().equalsIgnoreCase("gzip")) {
+                for (int i = 1; i < parties.length; i++) {
+                    String parametre = parties[i].trim().replace(" ", "");
+                    if (parametre.equals("q=0") || parametre.matches("q=0\\.0*")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indique si l'en-tête {@code If-None-Match} d'une requête contient une étiquette
+     * (la comparaison faible s'applique : le préfixe {@code W/} est ignoré)
+     */
+    static boolean correspond(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String etiquette : ifNoneMatch.split(",")) {
+            String e = etiquette.trim();
+            if (e.equals("*") || (e.startsWith("W/") ? e.substring(2) : e).equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String type(String nom) {
+        String extension = nom.substring(nom.lastIndexOf('.') + 1).toLowerCase();
+        switch (extension) {
+            case "html":
+                return "text/html;charset=utf-8";
+            case "css":
+                return "text/css;charset=utf-8";
+            case "js":
+                return "application/javascript;charset=utf-8";
+            case "json":
+            case "map":
+                return "application/json;charset=utf-8";
+            case "svg":
+                return "image/svg+xml";
+            case "png":
+                return "image/png";
+            case "jpg":
+            case "jpeg":
+                return "image/jpeg";
+            case "ico":
+                return "image/x-icon";
+            default:
+                return "application/octet-stream";
+        }
+    }
+
+    private static boolean estCompressible(String type) {
+        return type.startsWith("text/") || type.startsWith("application/javascript")
+                || type.startsWith("application/json") || type.equals("image/svg+xml");
+    }
+}
@@ -0,0 +1,353 @@
+package fr.umontpellier.iut.gui;
+
+import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.SuiviEtat;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Salle de jeu hébergée par le serveur : une partie, les clients qui y sont
+ * connectés et le dernier état de la partie envoyé aux clients
+ */
+public class Salle {
+    /**
+     * Identifiant unique de la salle
+     */
+    private final String id;
+    /**
+     * Instance de jeu exécutée dans la salle
+     */
+    private final Jeu jeu;
+    /**
+     * Clients connectés à la salle, indexés par l'identifiant de leur session.
+     * <p>
+     * Les clients sont ajoutés et retirés par les threads du serveur websocket
+     * pendant que le thread de la partie parcourt la table pour diffuser chaque
+     * nouvel état : une table concurrente permet ce parcours sans verrou ni
+     * copie, et des connexions ou déconnexions nombreuses ne coûtent qu'une
+     * insertion ou une suppression. Un client ajouté pendant une diffusion peut
+     * ne pas la recevoir, mais il a déjà reçu l'état courant à sa connexion.
+     */
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+    /**
+     * Dernier état du jeu, envoyé aux clients pour la mise à jour de l'interface graphique
+     * (ou {@code null} si la partie n'a encore rien envoyé)
+     */
+    private volatile MiseAJour etatJeu;
+    /**
+     * Description des éléments fixes du plateau, envoyée aux clients qui utilisent un format compact
+     */
+    private final String plateau;
+    /**
+     * Tâche qui exécute la partie
+     */
+    private Future<?> partie;
+    /**
+     * Indique si la salle a été fermée
+     */
+    private volatile boolean fermee;
+    /**
+     * Indique si les joueurs de la salle partagent un même écran : un client qui
+     * ne précise ni joueur ni mode spectateur reçoit alors la vue omnisciente et
+     * joue pour tous les joueurs, comme l'interface graphique fournie (choisi par
+     * le serveur, voir {@link GameServer#PROPRIETE_ECRAN_PARTAGE})
+     */
+    private volatile boolean ecranPartage = true;
+
+    public Salle(String id, Jeu jeu) {
+        this.id = id;
+        this.jeu = jeu;
+        jeu.setIdentifiant(id);
+        plateau = SuiviEtat.plateau(jeu);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Jeu getJeu() {
+        return jeu;
+    }
+
+    public boolean estEcranPartage() {
+        return ecranPartage;
+    }
+
+    /**
+     * Indique si les joueurs de la salle partagent un même écran (à fixer avant
+     * que des clients se connectent : la vue d'un client est choisie à sa connexion)
+     */
+    public void setEcranPartage(boolean ecranPartage) {
+        this.ecranPartage = ecranPartage;
+    }
+
+    /**
+     * Démarre la partie (exécute la méthode Jeu.run() dans l'exécuteur des parties du serveur)
+     */
+    public void demarrer() {
+        demarrer(GameServer.getExecuteurParties());
+    }
+
+    /**
+     * Démarre la partie dans un exécuteur donné
+     */
+    public void demarrer(ExecutorService executeur) {
+        demarrer(executeur, () -> { });
+    }
+
+    /**
+     * Démarre la partie dans un exécuteur donné
+     *
+     * @param finPartie action exécutée lorsque la partie se termine normalement
+     *                  (ni erreur, ni fermeture de la salle)
+     */
+    public void demarrer(ExecutorService executeur, Runnable finPartie) {
+        partie = executeur.submit(() -> {
+            try {
+                jeu.run();
+            } catch (RuntimeException e) {
+                // l'interruption de la partie lors de la fermeture de la salle n'est pas une erreur
+                if (!fermee) {
+                    e.printStackTrace();
+                }
+                return;
+            }
+            if (!fermee) {
+                finPartie.run();
+            }
+        });
+    }
+
+    /**
+     * Interrompt la partie et ferme les connexions des clients
+     */
+    public void fermer() {
+        fermee = true;
+        if (partie != null) {
+            partie.cancel(true);
+        }
+        for (Client client : clients.values()) {
+            try {
+                client.getSession().close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        clients.clear();
+    }
+
+    /**
+     * Ajoute une nouvelle instruction à la file d'instructions de la partie, si
+     * elle fait partie des choix attendus (voir {@link Jeu#verifierEntree(String, int)})
+     *
+     * @param message l'instruction à ajouter
+     * @param joueur  joueur pour lequel l'émetteur de l'instruction peut jouer
+     * @return {@code null} si l'instruction a été ajoutée, ou la raison de son refus
+     */
+    public String addInput(String message, int joueur) {
+        String erreur = jeu.verifierEntree(message, joueur);
+        if (erreur == null) {
+            jeu.addInput(message);
+        }
+        return erreur;
+    }
+
+    /**
+     * @return le joueur pour lequel un client de la salle peut jouer (voir
+     *         {@link Jeu#verifierEntree(String, int)})
+     */
+    private int joueurIncarne(Client client) {
+        int vue = client.getVue();
+        return vue == SuiviEtat.OMNISCIENT && ecranPartage ? Jeu.TOUS_LES_JOUEURS : vue;
+    }
+
+    /**
+     * Traite une instruction reçue d'un client de la salle : elle est ajoutée à
+     * la file d'instructions de la partie si elle est valide pour le joueur
+     * que le client incarne, sinon le client reçoit un message d'erreur.
+     * <p>
+     * Un client ne joue que pour sa place : seule la vue omnisciente d'une salle
+     * à écran partagé (voir {@link #setEcranPartage(boolean)}) joue pour tous
+     * les joueurs, et les spectateurs ne jouent pas
+     *
+     * @param session la session du client
+     * @param message l'instruction reçue
+     */
+    public void recevoir(Session session, String message) {
+        Client client = clients.get(session.getId());
+        if (client != null) {
+            String erreur = addInput(message, joueurIncarne(client));
+            if (erreur != null) {
+                client.envoyerErreur(erreur);
+            }
+        }
+    }
+
+    /**
+     * Met à jour l'état de la partie, et le dépose dans la file d'envoi de tous les clients connectés
+     * (la méthode n'attend pas que les messages soient envoyés).
+     * <p>
+     * Un client ne reçoit l'état que s'il est encodé dans son format et qu'il
+     * ne l'a pas déjà reçu (une mise à jour qui ne fait que compléter l'état
+     * précédent dans un autre format n'est envoyée qu'aux clients de ce format).
+     * S'il lui manque le format d'un client, la partie est invitée à le compléter.
+     *
+     * @param etatJeu le nouvel état de la partie
+     */
+    public void setEtatJeu(MiseAJour etatJeu) {
+        MiseAJour precedent = this.etatJeu;
+        this.etatJeu = etatJeu;
+        boolean incomplet = false;
+        for (Client client : clients.values()) {
+            Client.Mode mode = client.getMode();
+            if (!etatJeu.estEncode(mode)) {
+                incomplet = true;
+            } else if (precedent == null || !precedent.estEncode(mode)) {
+                // premier état encodé dans ce format : le client n'a encore rien reçu
+                client.envoyer(etatJeu.getEtat(mode, client.getVue()));
+            } else if (etatJeu.estNouveau(mode, precedent)) {
+                client.envoyerEtat(etatJeu);
+            }
+        }
+        if (incomplet) {
+            jeu.demanderEtat();
+        }
+    }
+
+    /**
+     * @return vrai si un client connecté attend des états au format JSON
+     * (tous les formats sauf le format binaire, voir {@link Client.Mode})
+     */
+    public boolean attendEtatJson() {
+        for (Client client : clients.values()) {
+            if (client.getMode() != Client.Mode.BINAIRE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return vrai si un client connecté attend des trames binaires
+     */
+    public boolean attendEtatBinaire() {
+        for (Client client : clients.values()) {
+            if (client.getMode() == Client.Mode.BINAIRE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ajoute un nouveau client à la salle, et lui transmet l'état actuel de la partie
+     * (si l'état n'est pas encore encodé dans le format du client, la partie est
+     * invitée à le compléter et le client le recevra dès qu'il sera publié)
+     *
+     * @param session la session du nouveau client
+     * @param mode    format des messages demandé par le client
+     * @param vue     vue du client (voir {@link #getVue(String, boolean)})
+     */
+    public void addClient(Session session, Client.Mode mode, int vue) {
+        Client client = new Client(session, mode, vue, mode == Client.Mode.COMPLET ? null : plateau);
+        clients.put(session.getId(), client);
+        MiseAJour etat = etatJeu;
+        if (etat != null && !etat.estEncode(mode)) {
+            jeu.demanderEtat();
+        } else {
+            envoyerEtatComplet(client);
+        }
+    }
+
+    /**
+     * Renvoie la vue d'un client qui se connecte à la salle
+     *
+     * @param nomJoueur  nom du joueur incarné par le client (ou {@code null})
+     * @param spectateur indique si le client s'est déclaré spectateur
+     * @return l'indice du joueur s'il existe, {@code SuiviEtat.OMNISCIENT} si le
+     * client n'a rien précisé et que les joueurs partagent un même écran (par
+     * défaut : l'interface graphique montre alors la main de tous les joueurs),
+     * et {@code SuiviEtat.SPECTATEUR} sinon
+     */
+    public int getVue(String nomJoueur, boolean spectateur) {
+        if (nomJoueur != null) {
+            for (int i = 0; i < jeu.getJoueurs().size(); i++) {
+                if (jeu.getJoueurs().get(i).getNom().equals(nomJoueur)) {
+                    return i;
+                }
+            }
+            return SuiviEtat.SPECTATEUR;
+        }
+        return ecranPartage && !spectateur ? SuiviEtat.OMNISCIENT : SuiviEtat.SPECTATEUR;
+    }
+
+    /**
+     * Renvoie l'état complet de la partie à un client (qui a perdu une mise à jour différentielle)
+     *
+     * @param session la session du client
+     */
+    public void resynchroniser(Session session) {
+        Client client = clients.get(session.getId());
+        if (client != null) {
+            envoyerEtatComplet(client);
+        }
+    }
+
+    private void envoyerEtatComplet(Client client) {
+        MiseAJour etat = etatJeu;
+        if (etat != null && etat.estEncode(client.getMode())) {
+            client.envoyer(etat.getEtat(client.getMode(), client.getVue()));
+        }
+    }
+
+    /**
+     * Retire un client de la salle
+     *
+     * @param session la session du client à retirer
+     */
+    public void removeClient(Session session) {
+        clients.remove(session.getId());
+    }
+
+    /**
+     * Surveille les envois aux clients de la salle (voir {@link Client#surveiller(long)})
+     * et déconnecte les clients bloqués
+     *
+     * @param maintenant date actuelle (en nanosecondes, voir {@link System#nanoTime()})
+     */
+    public void surveillerClients(long maintenant) {
+        for (Client client : clients.values()) {
+            if (client.surveiller(maintenant)) {
+                clients.remove(client.getSession().getId());
+                System.err.println("Client trop lent déconnecté : " + client);
+                try {
+                    client.getSession().close(
+                            new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "Client trop lent"));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return les clients connectés à la salle
+     */
+    public Collection<Client> getClients() {
+        return clients.values();
+    }
+
+    /**
+     * @return le nombre de clients connectés à la salle
+     */
+    public int getNbClients() {
+        return clients.size();
+    }
+}
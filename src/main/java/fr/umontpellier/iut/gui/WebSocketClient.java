@@ -12,7 +12,7 @@ public class WebSocketClient {
 
     @OnMessage
     public void onMessage(String message, Session session) {
-        GameServer.addInput(message);
+        GameServer.recevoir(session, message);
     }
 
     @OnClose
@@ -0,0 +1,498 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Archive de parties terminées, dans un format binaire compact, lue par
+ * projection du fichier en mémoire.
+ * <p>
+ * Une partie est décrite par sa graine, ses joueurs et les entrées qu'elle a
+ * lues (voir {@link Rejeu}). Chaque entrée est codée par une action typée :
+ * passer, piocher des destinations, une carte, une ville, une route ou une
+ * destination, désignée par son indice dans le dictionnaire des éléments du
+ * plateau. Une action occupe ainsi un ou deux octets (un entier de longueur
+ * variable), au lieu de la chaîne de l'entrée ; les rares entrées qui ne sont
+ * pas dans le dictionnaire sont écrites en toutes lettres.
+ * <p>
+ * Format du fichier (entiers de longueur variable notés « v », 7 bits par
+ * octet, poids faibles en premier) :
+ * <pre>
+ * en-tête     "RAIL", version (1 octet), empreinte du dictionnaire (int)
+ * partie*     v longueur de la suite de la partie
+ *             graine (long)
+ *             nombre de joueurs (1 octet), puis pour chaque joueur :
+ *               v longueur du nom, nom (UTF-8), couleur (1 octet)
+ *             v nombre d'entrées, v nombre de tours
+ *             index : pour chaque tour, v entrées et v octets depuis le début du tour précédent
+ *             actions : v (indice &lt;&lt; 3 | type) pour chaque entrée
+ *               (type AUTRE : v (longueur &lt;&lt; 3 | type), puis la chaîne en UTF-8)
+ * </pre>
+ * L'index des tours permet de lire les actions d'un tour sans décoder les
+ * précédentes, et la longueur de chaque partie permet de passer à la suivante
+ * sans la décoder. Une partie écrite partiellement en fin de fichier est ignorée.
+ * L'empreinte du dictionnaire est vérifiée à l'ouverture : une archive écrite
+ * avec un autre plateau est refusée.
+ */
+public class Archive implements Iterable<Archive.Partie> {
+    private static final byte[] MAGIQUE = {'R', 'A', 'I', 'L'};
+    private static final byte VERSION = 1;
+    private static final int TAILLE_ENTETE = MAGIQUE.length + 1 + 4;
+    /**
+     * Nombre de bits du type dans le code d'une action
+     */
+    private static final int BITS_TYPE = 3;
+
+    /**
+     * Type d'une action (bits de poids faible de son code)
+     */
+    enum TypeAction {
+        PASSER, PIOCHER_DESTINATIONS, CARTE, VILLE, ROUTE, DESTINATION, AUTRE
+    }
+
+    /**
+     * Chaînes désignées par chaque type d'action, dans l'ordre de leurs indices
+     */
+    private static final Map<TypeAction, List<String>> DICTIONNAIRE = new EnumMap<>(TypeAction.class);
+    /**
+     * Code de chaque chaîne du dictionnaire
+     */
+    private static final Map<String, Integer> CODES = new HashMap<>();
+    private static final int EMPREINTE;
+
+    static {
+        Plateau plateau = Plateau.makePlateauEurope();
+        Set<String> destinations = new LinkedHashSet<>();
+        for (Destination d : Destination.makeDestinationsEurope()) {
+            destinations.add(d.getNom());
+        }
+        for (Destination d : Destination.makeDestinationsLonguesEurope()) {
+            destinations.add(d.getNom());
+        }
+        Set<String> routes = new LinkedHashSet<>();
+        for (Route r : plateau.getRoutes()) {
+            routes.add(r.getNom());
+        }
+        List<String> villes = new ArrayList<>();
+        for (Ville v : plateau.getVilles()) {
+            villes.add(v.getNom());
+        }
+        List<String> cartes = new ArrayList<>();
+        for (CouleurWagon c : CouleurWagon.values()) {
+            cartes.add(c.name());
+        }
+        DICTIONNAIRE.put(TypeAction.PASSER, List.of(""));
+        DICTIONNAIRE.put(TypeAction.PIOCHER_DESTINATIONS, List.of("destinations"));
+        DICTIONNAIRE.put(TypeAction.CARTE, cartes);
+        DICTIONNAIRE.put(TypeAction.VILLE, villes);
+        DICTIONNAIRE.put(TypeAction.ROUTE, List.copyOf(routes));
+        DICTIONNAIRE.put(TypeAction.DESTINATION, List.copyOf(destinations));
+
+        CRC32 empreinte = new CRC32();
+        for (TypeAction type : TypeAction.values()) {
+            if (type == TypeAction.AUTRE) {
+                continue;
+            }
+            List<String> chaines = DICTIONNAIRE.get(type);
+            for (int i = 0; i < chaines.size(); i++) {
+                CODES.putIfAbsent(chaines.get(i), i << BITS_TYPE | type.ordinal());
+                empreinte.update((chaines.get(i) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            empreinte.update(0);
+        }
+        EMPREINTE = (int) empreinte.getValue();
+    }
+
+    /**
+     * Écriture de parties à la fin d'une archive (le fichier est créé s'il n'existe pas).
+     * Les parties peuvent être ajoutées par plusieurs threads.
+     * <p>
+     * Une partie écrite partiellement à la fin d'une archive existante (écriture
+     * interrompue) est effacée à l'ouverture : les parties ajoutées la remplacent.
+     */
+    public static final class Ecrivain implements Closeable {
+        private final OutputStream sortie;
+
+        public Ecrivain(Path fichier) throws IOException {
+            boolean nouveau = !Files.exists(fichier) || Files.size(fichier) == 0;
+            if (!nouveau) {
+                try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    ByteBuffer entete = ByteBuffer.allocate(TAILLE_ENTETE);
+                    canal.read(entete, 0);
+                    verifierEntete(entete.flip());
+                    canal.truncate(finPartiesCompletes(canal));
+                }
+            }
+            sortie = new BufferedOutputStream(Files.newOutputStream(fichier, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND), 64 * 1024);
+            if (nouveau) {
+                ByteBuffer entete = ByteBuffer.allocate(TAILLE_ENTETE);
+                entete.put(MAGIQUE).put(VERSION).putInt(EMPREINTE);
+                sortie.write(entete.array());
+            }
+        }
+
+        /**
+         * Ajoute une partie rejouée jusqu'à sa fin
+         *
+         * @throws IllegalArgumentException si la partie n'a pas été rejouée jusqu'à sa fin
+         */
+        public void ajouter(Rejeu rejeu) throws IOException {
+            if (!rejeu.estTerminee()) {
+                throw new IllegalArgumentException("Partie non terminée");
+            }
+            int[] debutsTours = new int[rejeu.getNbTours()];
+            for (int t = 1; t <= debutsTours.length; t++) {
+                debutsTours[t - 1] = rejeu.getDebutTour(t);
+            }
+            ajouter(rejeu, rejeu.getEntrees(), debutsTours);
+        }
+
+        /**
+         * Ajoute une partie
+         *
+         * @param jeu         la partie (seuls sa graine et ses joueurs sont lus)
+         * @param entrees     les entrées lues par la partie, dans l'ordre
+         * @param debutsTours pour chaque tour, le nombre d'entrées lues avant son début
+         */
+        public void ajouter(Jeu jeu, List<String> entrees, int[] debutsTours) throws IOException {
+            byte[] partie = encoder(jeu, entrees, debutsTours);
+            ByteArrayOutputStream longueur = new ByteArrayOutputStream(5);
+            ecrireVarint(longueur, partie.length);
+            synchronized (this) {
+                longueur.writeTo(sortie);
+                sortie.write(partie);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            sortie.close();
+        }
+
+        /**
+         * @return la position de la fin de la dernière partie complète de l'archive
+         * (seules les longueurs des parties sont lues)
+         */
+        private static long finPartiesCompletes(FileChannel canal) throws IOException {
+            long taille = canal.size();
+            long position = TAILLE_ENTETE;
+            ByteBuffer prefixe = ByteBuffer.allocate(5);
+            while (position < taille) {
+                prefixe.clear();
+                canal.read(prefixe, position);
+                prefixe.flip();
+                int longueur;
+                try {
+                    longueur = lireVarint(prefixe);
+                } catch (BufferUnderflowException e) {
+                    // longueur écrite partiellement
+                    break;
+                }
+                long fin = position + prefixe.position() + longueur;
+                if (longueur < 0 || fin > taille) {
+                    // partie écrite partiellement
+                    break;
+                }
+                position = fin;
+            }
+            return position;
+        }
+    }
+
+    private final ByteBuffer contenu;
+
+    /**
+     * Ouvre une archive (le fichier est projeté en mémoire et n'est pas lu)
+     *
+     * @throws IOException si le fichier n'est pas une archive, a été écrit avec un
+     *                     autre dictionnaire, ou dépasse 2 Go (une archive plus grande doit être découpée)
+     */
+    public Archive(Path fichier) throws IOException {
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("Archive trop grande : " + fichier);
+            }
+            contenu = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        verifierEntete(contenu.duplicate());
+    }
+
+    private static void verifierEntete(ByteBuffer entete) throws IOException {
+        byte[] magique = new byte[MAGIQUE.length];
+        if (entete.remaining() >= TAILLE_ENTETE) {
+            entete.get(magique);
+        }
+        if (!Arrays.equals(magique, MAGIQUE)) {
+            throw new IOException("Ce fichier n'est pas une archive de parties");
+        }
+        if (entete.get() != VERSION || entete.getInt() != EMPREINTE) {
+            throw new IOException("Archive écrite avec une autre version du format ou du plateau");
+        }
+    }
+
+    /**
+     * Partie d'une archive. Une instance ne lit que sa propre partie de
+     * l'archive : des parties différentes peuvent être lues par des threads
+     * différents.
+     */
+    public static final class Partie {
+        private final ByteBuffer contenu;
+        private final long graine;
+        private final String[] nomJoueurs;
+        private final Joueur.Couleur[] couleurs;
+        private final int nbEntrees;
+        private final int nbTours;
+        private final int debutIndex;
+        private final int debutActions;
+
+        private Partie(ByteBuffer contenu) {
+            this.contenu = contenu;
+            graine = contenu.getLong();
+            int nbJoueurs = contenu.get();
+            nomJoueurs = new String[nbJoueurs];
+            couleurs = new Joueur.Couleur[nbJoueurs];
+            for (int i = 0; i < nbJoueurs; i++) {
+                nomJoueurs[i] = lireChaine(contenu, lireVarint(contenu));
+                couleurs[i] = Joueur.Couleur.values()[contenu.get()];
+            }
+            nbEntrees = lireVarint(contenu);
+            nbTours = lireVarint(contenu);
+            debutIndex = contenu.position();
+            for (int i = 0; i < 2 * nbTours; i++) {
+                lireVarint(contenu);
+            }
+            debutActions = contenu.position();
+        }
+
+        public long getGraine() {
+            return graine;
+        }
+
+        public String[] getNomJoueurs() {
+            return nomJoueurs.clone();
+        }
+
+        /**
+         * @return la couleur de chaque joueur (dans l'ordre des joueurs)
+         */
+        public Joueur.Couleur[] getCouleurs() {
+            return couleurs.clone();
+        }
+
+        public int getNbEntrees() {
+            return nbEntrees;
+        }
+
+        public int getNbTours() {
+            return nbTours;
+        }
+
+        /**
+         * @return toutes les entrées lues par la partie
+         */
+        public List<String> getEntrees() {
+            return lireEntrees(debutActions, 0, nbEntrees);
+        }
+
+        /**
+         * Lit les entrées d'un tour, sans décoder celles des tours précédents
+         *
+         * @param tour numéro du tour (à partir de 1)
+         * @return les entrées lues pendant le tour
+         */
+        public List<String> getEntreesDuTour(int tour) {
+            if (tour < 1 || tour > nbTours) {
+                throw new IndexOutOfBoundsException("Tour " + tour + " absent de la partie");
+            }
+            ByteBuffer index = contenu.duplicate().position(debutIndex);
+            int entree = 0;
+            int octet = debutActions;
+            int entreeSuivante = nbEntrees;
+            for (int t = 1; t <= tour; t++) {
+                entree += lireVarint(index);
+                octet += lireVarint(index);
+            }
+            if (tour < nbTours) {
+                entreeSuivante = entree + lireVarint(index);
+            }
+            return lireEntrees(octet, entree, entreeSuivante);
+        }
+
+        /**
+         * @return un rejeu (non exécuté) de la partie
+         */
+        public Rejeu rejeu() {
+            return new Rejeu(nomJoueurs, graine, getEntrees());
+        }
+
+        private List<String> lireEntrees(int position, int debut, int fin) {
+            ByteBuffer actions = contenu.duplicate().position(position);
+            List<String> entrees = new ArrayList<>(fin - debut);
+            for (int i = debut; i < fin; i++) {
+                entrees.add(lireAction(actions));
+            }
+            return entrees;
+        }
+    }
+
+    /**
+     * Parcourt les parties de l'archive, dans l'ordre
+     */
+    @Override
+    public Iterator<Partie> iterator() {
+        ByteBuffer parties = contenu.duplicate().position(TAILLE_ENTETE);
+        return new Iterator<>() {
+            private ByteBuffer suivante = lireSuivante();
+
+            private ByteBuffer lireSuivante() {
+                if (!parties.hasRemaining()) {
+                    return null;
+                }
+                int longueur;
+                try {
+                    longueur = lireVarint(parties);
+                } catch (BufferUnderflowException e) {
+                    // longueur écrite partiellement
+                    return null;
+                }
+                if (longueur < 0 || longueur > parties.remaining()) {
+                    // partie écrite partiellement
+                    return null;
+                }
+                ByteBuffer partie = parties.slice(parties.position(), longueur);
+                parties.position(parties.position() + longueur);
+                return partie;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return suivante != null;
+            }
+
+            @Override
+            public Partie next() {
+                if (suivante == null) {
+                    throw new NoSuchElementException();
+                }
+                Partie partie = new Partie(suivante);
+                suivante = lireSuivante();
+                return partie;
+            }
+        };
+    }
+
+    /**
+     * @return les parties de l'archive, dans l'ordre
+     */
+    public Stream<Partie> parties() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private static byte[] encoder(Jeu jeu, List<String> entrees, int[] debutsTours) {
+        ByteArrayOutputStream actions = new ByteArrayOutputStream(2 * entrees.size());
+        int[] positionsTours = new int[debutsTours.length];
+        int tour = 0;
+        for (int i = 0; i < entrees.size(); i++) {
+            while (tour < debutsTours.length && debutsTours[tour] == i) {
+                positionsTours[tour++] = actions.size();
+            }
+            ecrireAction(actions, entrees.get(i));
+        }
+        while (tour < debutsTours.length) {
+            positionsTours[tour++] = actions.size();
+        }
+
+        ByteArrayOutputStream partie = new ByteArrayOutputStream(64 + actions.size());
+        ByteBuffer graine = ByteBuffer.allocate(Long.BYTES).putLong(jeu.getGraine());
+        partie.writeBytes(graine.array());
+        partie.write(jeu.getJoueurs().size());
+        for (Joueur joueur : jeu.getJoueurs()) {
+            byte[] nom = joueur.getNom().getBytes(StandardCharsets.UTF_8);
+            ecrireVarint(partie, nom.length);
+            partie.writeBytes(nom);
+            partie.write(joueur.getCouleur().ordinal());
+        }
+        ecrireVarint(partie, entrees.size());
+        ecrireVarint(partie, debutsTours.length);
+        for (int t = 0; t < debutsTours.length; t++) {
+            ecrireVarint(partie, debutsTours[t] - (t == 0 ? 0 : debutsTours[t - 1]));
+            ecrireVarint(partie, positionsTours[t] - (t == 0 ? 0 : positionsTours[t - 1]));
+        }
+        partie.writeBytes(actions.toByteArray());
+        return partie.toByteArray();
+    }
+
+    private static void ecrireAction(ByteArrayOutputStream sortie, String entree) {
+        Integer code = CODES.get(entree);
+        if (code != null) {
+            ecrireVarint(sortie, code);
+        } else {
+            byte[] octets = entree.getBytes(StandardCharsets.UTF_8);
+            ecrireVarint(sortie, octets.length << BITS_TYPE | TypeAction.AUTRE.ordinal());
+            sortie.writeBytes(octets);
+        }
+    }
+
+    private static String lireAction(ByteBuffer actions) {
+        int code = lireVarint(actions);
+        TypeAction type = TypeAction.values()[code & (1 << BITS_TYPE) - 1];
+        int indice = code >>> BITS_TYPE;
+        if (type == TypeAction.AUTRE) {
+            return lireChaine(actions, indice);
+        }
+        return DICTIONNAIRE.get(type).get(indice);
+    }
+
+    private static String lireChaine(ByteBuffer contenu, int longueur) {
+        byte[] octets = new byte[longueur];
+        contenu.get(octets);
+        return new String(octets, StandardCharsets.UTF_8);
+    }
+
+    private static void ecrireVarint(ByteArrayOutputStream sortie, int valeur) {
+        while ((valeur & ~0x7F) != 0) {
+            sortie.write(valeur & 0x7F | 0x80);
+            valeur >>>= 7;
+        }
+        sortie.write(valeur);
+    }
+
+    private static int lireVarint(ByteBuffer contenu) {
+        int valeur = 0;
+        for (int decalage = 0; ; decalage += 7) {
+            byte octet = contenu.get();
+            valeur |= (octet & 0x7F) << decalage;
+            if (octet >= 0) {
+                return valeur;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Affichage de l'état d'une partie sur la console à chaque demande d'entrée.
+ * <p>
+ * Construire l'affichage (description de tous les joueurs) et l'écrire sous le
+ * verrou de la sortie standard, partagée par toutes les parties de la JVM,
+ * ralentit le thread de la partie. Le mode d'affichage est donc configurable
+ * avec la propriété système {@value #PROPRIETE_MODE} :
+ * <ul>
+ * <li>{@code synchrone} (par défaut) : chaque état est écrit immédiatement par
+ * le thread de la partie (comportement historique) ;</li>
+ * <li>{@code aucun} : rien n'est affiché ;</li>
+ * <li>{@code echantillon} : seul un état sur n est affiché, de façon
+ * synchrone (n est fixé par la propriété {@value #PROPRIETE_ECHANTILLON}, 10
+ * par défaut) ;</li>
+ * <li>{@code asynchrone} : le texte est déposé dans une file bornée, partagée
+ * par toutes les parties et vidée par un unique thread d'écriture. Si la file
+ * est pleine, l'état n'est ni construit ni affiché, et la partie n'attend
+ * jamais la console.</li>
+ * </ul>
+ */
+public class Console {
+    /**
+     * Nom de la propriété système qui fixe le mode d'affichage
+     */
+    public static final String PROPRIETE_MODE = "rails.console";
+    /**
+     * Nom de la propriété système qui fixe la période d'échantillonnage
+     */
+    public static final String PROPRIETE_ECHANTILLON = "rails.console.echantillon";
+    /**
+     * Nombre de textes en attente d'écriture au-delà duquel les nouveaux textes sont ignorés
+     */
+    private static final int CAPACITE_FILE = 256;
+
+    /**
+     * Mode d'affichage
+     */
+    public enum Mode {
+        AUCUN, ECHANTILLON, ASYNCHRONE, SYNCHRONE;
+
+        /**
+         * @param nom valeur de la propriété {@code rails.console}
+         * @return le mode correspondant ({@code SYNCHRONE} par défaut)
+         */
+        public static Mode depuis(String nom) {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(nom)) {
+                    return mode;
+                }
+            }
+            return SYNCHRONE;
+        }
+    }
+
+    /**
+     * Texte en attente d'écriture, avec sa destination
+     */
+    private static final class Texte {
+        private final PrintStream sortie;
+        private final String texte;
+
+        private Texte(PrintStream sortie, String texte) {
+            this.sortie = sortie;
+            this.texte = texte;
+        }
+    }
+
+    /**
+     * File des textes à écrire, partagée par toutes les parties en mode asynchrone
+     */
+    private static final BlockingQueue<Texte> file = new ArrayBlockingQueue<>(CAPACITE_FILE);
+    /**
+     * Thread d'écriture des textes de la file (démarré à la première utilisation)
+     */
+    private static volatile Thread ecrivain;
+
+    private final Mode mode;
+    private final int periode;
+    private final PrintStream sortie;
+    /**
+     * Nombre d'états proposés à l'affichage (utilisé uniquement par le thread de la partie)
+     */
+    private long nbEtats;
+    /**
+     * Nombre d'états non affichés parce que la file était pleine
+     */
+    private final AtomicLong nbIgnores = new AtomicLong();
+
+    /**
+     * @param mode    mode d'affichage
+     * @param periode en mode {@code ECHANTILLON}, nombre d'états entre deux affichages
+     * @param sortie  flux sur lequel les états sont écrits
+     */
+    public Console(Mode mode, int periode, PrintStream sortie) {
+        if (periode <= 0) {
+            throw new IllegalArgumentException("Période invalide : " + periode);
+        }
+        this.mode = mode;
+        this.periode = periode;
+        this.sortie = sortie;
+    }
+
+    /**
+     * @return une console configurée par les propriétés système, qui écrit sur la sortie standard
+     */
+    public static Console depuisProprietes() {
+        return new Console(Mode.depuis(System.getProperty(PROPRIETE_MODE)),
+                Integer.getInteger(PROPRIETE_ECHANTILLON, 10), System.out);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return le nombre d'états non affichés parce que la file d'écriture était pleine
+     */
+    public long getNbIgnores() {
+        return nbIgnores.get();
+    }
+
+    /**
+     * Indique si l'état courant doit être affiché. Cette méthode est appelée
+     * une fois par état, avant de construire le texte, qui n'est construit que
+     * si elle renvoie {@code true}.
+     */
+    public boolean doitAfficher() {
+        switch (mode) {
+            case AUCUN:
+                return false;
+            case ECHANTILLON:
+                return nbEtats++ % periode == 0;
+            case ASYNCHRONE:
+                if (file.remainingCapacity() == 0) {
+                    nbIgnores.incrementAndGet();
+                    return false;
+                }
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Affiche un texte (suivi d'un retour à la ligne) selon le mode de la console
+     */
+    public void afficher(String texte) {
+        if (mode != Mode.ASYNCHRONE) {
+            sortie.println(texte);
+        } else if (file.offer(new Texte(sortie, texte))) {
+            if (ecrivain == null) {
+                demarrerEcrivain();
+            }
+        } else {
+            nbIgnores.incrementAndGet();
+        }
+    }
+
+    private static synchronized void demarrerEcrivain() {
+        if (ecrivain != null) {
+            return;
+        }
+        ecrivain = new Thread(() -> {
+            try {
+                while (true) {
+                    Texte texte = file.take();
+                    texte.sortie.println(texte.texte);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "console");
+        ecrivain.setDaemon(true);
+        ecrivain.start();
+    }
+}
@@ -1,7 +1,9 @@
 package fr.umontpellier.iut.rails;
 
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 public class Destination {
     /**
@@ -29,16 +31,27 @@ public class Destination {
         return getNom();
     }
 
+    public String getVille1() {
+        return ville1;
+    }
+
+    public String getVille2() {
+        return ville2;
+    }
+
     public String getNom() {
         return String.format("%s - %s (%d)", ville1, ville2, valeur);
     }
 
-    public Object asPOJO() {
-        HashMap<String, Object> data = new HashMap<>();
-        data.put("ville1", ville1);
-        data.put("ville2", ville2);
-        data.put("valeur", valeur);
-        return data;
+    /**
+     * Écrit la représentation JSON de la destination
+     */
+    public void ecrireJson(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.name("ville1").value(ville1);
+        out.name("ville2").value(ville2);
+        out.name("valeur").value(valeur);
+        out.endObject();
     }
 
     /**
@@ -56,7 +69,7 @@ public class Destination {
         destinations.add(new Destination("Zurich", "Budapest", 6));
         destinations.add(new Destination("Warszawa", "Smolensk", 6));
         destinations.add(new Destination("Zagrab", "Brindisi", 6));
-        destinations.add(new Destination("Paris", "Zagreb", 7));
+        destinations.add(new Destination("Paris", "Zagrab", 7));
         destinations.add(new Destination("Brest", "Marseille", 7));
         destinations.add(new Destination("London", "Berlin", 7));
         destinations.add(new Destination("Edinburgh", "Paris", 7));
@@ -74,12 +87,12 @@ public class Destination {
         destinations.add(new Destination("Kyiv", "Sochi", 8));
         destinations.add(new Destination("Madrid", "Zurich", 8));
         destinations.add(new Destination("Berlin", "Bucuresti", 8));
-        destinations.add(new Destination("Bruxelles", "Danzic", 9));
+        destinations.add(new Destination("Bruxelles", "Danzig", 9));
         destinations.add(new Destination("Berlin", "Roma", 9));
         destinations.add(new Destination("Angora", "Kharkov", 10));
         destinations.add(new Destination("Riga", "Bucuresti", 10));
         destinations.add(new Destination("Essen", "Kyiv", 10));
-        destinations.add(new Destination("Venizia", "Constantinople", 10));
+        destinations.add(new Destination("Venezia", "Constantinople", 10));
         destinations.add(new Destination("London", "Wien", 10));
         destinations.add(new Destination("Athina", "Wilno", 11));
         destinations.add(new Destination("Stockholm", "Wien", 11));
@@ -94,7 +107,7 @@ public class Destination {
      */
     public static ArrayList<Destination> makeDestinationsLonguesEurope() {
         ArrayList<Destination> destinations = new ArrayList<>();
-        destinations.add(new Destination("Lisboa", "Danzic", 20));
+        destinations.add(new Destination("Lisboa", "Danzig", 20));
         destinations.add(new Destination("Brest", "Petrograd", 20));
         destinations.add(new Destination("Palermo", "Moskva", 20));
         destinations.add(new Destination("Kobenhavn", "Erzurum", 21));
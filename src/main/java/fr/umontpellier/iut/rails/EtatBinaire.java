@@ -0,0 +1,266 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodage binaire compact de l'état d'une partie, alternative aux messages
+ * JSON pour les clients qui le demandent (robots, spectateurs).
+ * <p>
+ * Une trame est écrite avec {@link DataOutputStream} (entiers gros-boutistes,
+ * chaînes au format {@code writeUTF}) :
+ * <pre>
+ * octet   TYPE_ETAT
+ * octet   FORMAT
+ * long    version de l'état (la même que celle des messages JSON)
+ * octet   nombre de couleurs de cartes wagon (ordre de CouleurWagon)
+ * UTF     instruction, booléen peutPasser, short nombre de boutons, UTF* boutons
+ * octet   nombre de joueurs, octet indice du joueur courant
+ * joueur* UTF nom, octet couleur, short score, octet gares, octet wagons,
+ *         octet* nombre de cartes posées par couleur,
+ *         booléen main visible, puis
+ *         si la main est visible :
+ *           octet* nombre de cartes en main par couleur,
+ *           octet nombre de destinations, (short ville1, short ville2, octet valeur)*
+ *         sinon :
+ *           octet nombre de cartes en main, octet nombre de destinations
+ * short   nombre de villes, octet* propriétaire de chaque ville
+ * short   nombre de routes, octet* propriétaire de chaque route
+ * short   taille de la pioche, short taille de la pile de destinations,
+ *         octet nombre de cartes visibles, octet* couleurs des cartes visibles,
+ *         octet* nombre de cartes défaussées par couleur
+ * int     numéro de séquence de la première ligne de log, short nombre de lignes,
+ *         UTF* lignes
+ * </pre>
+ * Les villes et routes sont identifiées par leur indice dans les listes du
+ * jeu (le même ordre que dans les messages JSON) et un propriétaire vaut 0 si
+ * la ville ou la route est libre, ou l'indice du joueur plus 1.
+ * <p>
+ * Comme pour les messages JSON (voir {@link SuiviEtat}), chaque trame est
+ * assemblée pour une vue : la main et les destinations d'un joueur, ainsi que
+ * les boutons proposés au joueur courant, ne sont visibles que du joueur
+ * concerné. Pour chaque vue, deux trames peuvent être assemblées, qui
+ * contiennent toutes les deux l'état complet de la partie : une trame avec les
+ * dernières lignes du log (voir {@link Historique}), et une trame à log
+ * incrémental qui ne contient que les lignes ajoutées depuis l'état précédent.
+ * Ce ne sont pas des différences : seul le log est incrémental. Un client qui
+ * constate un trou dans les numéros de séquence des lignes de log peut
+ * redemander la trame avec les dernières lignes.
+ */
+public class EtatBinaire {
+    public static final byte TYPE_ETAT = 1;
+    public static final byte FORMAT = 3;
+
+    /**
+     * Fragments binaires d'un état de la partie, à partir desquels sont assemblées les trames de chaque vue
+     */
+    public static final class Instantane {
+        private final int joueurCourant;
+        private final byte[] entete;
+        private final byte[] prompt;
+        private final byte[] promptSansBoutons;
+        private final byte[] enteteJoueurs;
+        private final byte[][] joueursPrives;
+        private final byte[][] joueursPublics;
+        private final byte[] plateau;
+        private final byte[] log;
+        private final byte[] nouveauLog;
+
+        private Instantane(int joueurCourant, byte[] entete, byte[] prompt, byte[] promptSansBoutons,
+                           byte[] enteteJoueurs, byte[][] joueursPrives, byte[][] joueursPublics,
+                           byte[] plateau, byte[] log, byte[] nouveauLog) {
+            this.joueurCourant = joueurCourant;
+            this.entete = entete;
+            this.prompt = prompt;
+            this.promptSansBoutons = promptSansBoutons;
+            this.enteteJoueurs = enteteJoueurs;
+            this.joueursPrives = joueursPrives;
+            this.joueursPublics = joueursPublics;
+            this.plateau = plateau;
+            this.log = log;
+            this.nouveauLog = nouveauLog;
+        }
+
+        /**
+         * Assemble la trame d'une vue
+         *
+         * @param vue     la vue (indice d'un joueur, {@link SuiviEtat#OMNISCIENT} ou {@link SuiviEtat#SPECTATEUR})
+         * @param complet si vrai, la trame contient les dernières lignes du log, sinon seulement les
+         *                nouvelles (le reste de l'état est complet dans les deux cas)
+         * @return la trame (un nouveau tampon, qui peut être partagé entre les clients de la même vue)
+         */
+        public ByteBuffer trame(int vue, boolean complet) {
+            byte[][] joueurs = new byte[joueursPrives.length][];
+            int taille = entete.length + enteteJoueurs.length + plateau.length;
+            byte[] p = voit(vue, joueurCourant) ? prompt : promptSansBoutons;
+            byte[] l = complet ? log : nouveauLog;
+            taille += p.length + l.length;
+            for (int i = 0; i < joueurs.length; i++) {
+                joueurs[i] = voit(vue, i) ? joueursPrives[i] : joueursPublics[i];
+                taille += joueurs[i].length;
+            }
+            // pas de tampon en lecture seule : Tyrus accède directement au tableau sous-jacent
+            ByteBuffer trame = ByteBuffer.allocate(taille);
+            trame.put(entete).put(p).put(enteteJoueurs);
+            for (byte[] joueur : joueurs) {
+                trame.put(joueur);
+            }
+            trame.put(plateau).put(l);
+            return trame.flip();
+        }
+
+        private static boolean voit(int vue, int joueur) {
+            return vue == SuiviEtat.OMNISCIENT || vue == joueur;
+        }
+    }
+
+    private final ByteArrayOutputStream tampon = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(tampon);
+    /**
+     * Indice de chaque ville dans la liste des villes du jeu (calculé au premier état)
+     */
+    private Map<String, Integer> indicesVilles;
+    /**
+     * Numéro de séquence de la première ligne du log qui n'a pas encore été envoyée
+     */
+    private long sequenceLog;
+
+    /**
+     * Encode l'état actuel de la partie
+     *
+     * @param jeu         la partie
+     * @param version     numéro de version de l'état
+     * @param log         log de la partie (seules les dernières lignes sont conservées)
+     * @param instruction l'instruction en cours
+     * @param boutons     les boutons proposés au joueur courant
+     * @param peutPasser  indique si le joueur courant peut passer
+     * @return les fragments de l'état, à partir desquels les trames de chaque vue sont assemblées
+     */
+    public Instantane enregistrer(Jeu jeu, long version, Historique log, String instruction,
+                                  Collection<String> boutons, boolean peutPasser) {
+        if (indicesVilles == null) {
+            indicesVilles = new HashMap<>();
+            for (Ville ville : jeu.getVilles()) {
+                indicesVilles.put(ville.getNom(), indicesVilles.size());
+            }
+        }
+        try {
+            tampon.reset();
+            out.writeByte(TYPE_ETAT);
+            out.writeByte(FORMAT);
+            out.writeLong(version);
+            out.writeByte(CouleurWagon.values().length);
+            byte[] entete = tampon.toByteArray();
+
+            byte[] prompt = ecrirePrompt(instruction, boutons, peutPasser);
+            byte[] promptSansBoutons = boutons.isEmpty() ? prompt : ecrirePrompt(instruction, List.of(), peutPasser);
+
+            List<Joueur> joueurs = jeu.getJoueurs();
+            int joueurCourant = joueurs.indexOf(jeu.getJoueurCourant());
+            tampon.reset();
+            out.writeByte(joueurs.size());
+            out.writeByte(joueurCourant);
+            byte[] enteteJoueurs = tampon.toByteArray();
+            byte[][] joueursPrives = new byte[joueurs.size()][];
+            byte[][] joueursPublics = new byte[joueurs.size()][];
+            for (int i = 0; i < joueurs.size(); i++) {
+                joueursPrives[i] = ecrireJoueur(joueurs.get(i), true);
+                joueursPublics[i] = ecrireJoueur(joueurs.get(i), false);
+            }
+
+            tampon.reset();
+            out.writeShort(jeu.getVilles().size());
+            for (Ville ville : jeu.getVilles()) {
+                out.writeByte(ville.getProprietaire() == null ? 0 : joueurs.indexOf(ville.getProprietaire()) + 1);
+            }
+            out.writeShort(jeu.getRoutes().size());
+            for (Route route : jeu.getRoutes()) {
+                out.writeByte(route.getProprietaire() == null ? 0 : joueurs.indexOf(route.getProprietaire()) + 1);
+            }
+            out.writeShort(jeu.getPileCartesWagon().size());
+            out.writeShort(jeu.getPileDestinations().size());
+            out.writeByte(jeu.getCartesWagonVisibles().size());
+            for (CouleurWagon carte : jeu.getCartesWagonVisibles()) {
+                out.writeByte(carte.ordinal());
+            }
+            ecrireNombresCartes(jeu.getDefausseCartesWagon());
+            byte[] plateau = tampon.toByteArray();
+
+            byte[] logComplet = ecrireLog(log, log.getPremiereSequence());
+            byte[] nouveauLog = ecrireLog(log, Math.max(sequenceLog, log.getPremiereSequence()));
+            sequenceLog = log.getProchaineSequence();
+
+            return new Instantane(joueurCourant, entete, prompt, promptSansBoutons, enteteJoueurs,
+                    joueursPrives, joueursPublics, plateau, logComplet, nouveauLog);
+        } catch (IOException e) {
+            // impossible : l'écriture se fait en mémoire
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] ecrirePrompt(String instruction, Collection<String> boutons, boolean peutPasser)
+            throws IOException {
+        tampon.reset();
+        out.writeUTF(instruction);
+        out.writeBoolean(peutPasser);
+        out.writeShort(boutons.size());
+        for (String bouton : boutons) {
+            out.writeUTF(bouton);
+        }
+        return tampon.toByteArray();
+    }
+
+    private byte[] ecrireJoueur(Joueur joueur, boolean prive) throws IOException {
+        tampon.reset();
+        out.writeUTF(joueur.getNom());
+        out.writeByte(joueur.getCouleur().ordinal());
+        out.writeShort(joueur.getScore());
+        out.writeByte(joueur.getNbGares());
+        out.writeByte(joueur.getNbWagons());
+        ecrireNombresCartes(joueur.getCartesWagonPosees());
+        out.writeBoolean(prive);
+        if (prive) {
+            ecrireNombresCartes(joueur.getCartesWagon());
+            out.writeByte(joueur.getDestinations().size());
+            for (Destination destination : joueur.getDestinations()) {
+                out.writeShort(indicesVilles.getOrDefault(destination.getVille1(), -1));
+                out.writeShort(indicesVilles.getOrDefault(destination.getVille2(), -1));
+                out.writeByte(destination.getValeur());
+            }
+        } else {
+            out.writeByte(joueur.getCartesWagon().size());
+            out.writeByte(joueur.getDestinations().size());
+        }
+        return tampon.toByteArray();
+    }
+
+    /**
+     * Écrit le nombre de cartes de chaque couleur (dans l'ordre de l'énumération)
+     */
+    private void ecrireNombresCartes(List<CouleurWagon> cartes) throws IOException {
+        int[] nombres = new int[CouleurWagon.values().length];
+        for (CouleurWagon carte : cartes) {
+            nombres[carte.ordinal()]++;
+        }
+        for (int nombre : nombres) {
+            out.writeByte(nombre);
+        }
+    }
+
+    private byte[] ecrireLog(Historique log, long debut) throws IOException {
+        tampon.reset();
+        out.writeInt((int) debut);
+        out.writeShort((int) (log.getProchaineSequence() - debut));
+        for (long i = debut; i < log.getProchaineSequence(); i++) {
+            out.writeUTF(log.get(i));
+        }
+        return tampon.toByteArray();
+    }
+}
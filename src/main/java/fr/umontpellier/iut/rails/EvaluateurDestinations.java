@@ -0,0 +1,185 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Évalue les différentes façons de garder des destinations parmi celles qui
+ * sont proposées à un joueur (pioche de destinations en cours de partie ou
+ * distribution initiale).
+ * <p>
+ * Pour chaque sous-ensemble de destinations qu'il est permis de garder,
+ * l'évaluateur estime le nombre de wagons nécessaires pour réaliser toutes les
+ * destinations du sous-ensemble à partir du réseau actuel du joueur, puis la
+ * probabilité de réaliser chacune d'elles avec les wagons qui lui restent. Le
+ * score d'un sous-ensemble est l'espérance des points gagnés (une destination
+ * réalisée rapporte sa valeur, une destination ratée la fait perdre).
+ * <p>
+ * Si une {@link TableDestinations} est fournie, la probabilité de réaliser
+ * chaque destination est en outre multipliée par son taux de réalisation
+ * simulé, qui tient compte des routes que les adversaires risquent de prendre.
+ */
+public class EvaluateurDestinations {
+    /**
+     * Résultat de l'évaluation d'un sous-ensemble de destinations gardées
+     */
+    public static class Evaluation {
+        private final List<Destination> gardees;
+        private final int cout;
+        private final double score;
+
+        private Evaluation(List<Destination> gardees, int cout, double score) {
+            this.gardees = gardees;
+            this.cout = cout;
+            this.score = score;
+        }
+
+        /**
+         * @return les destinations gardées
+         */
+        public List<Destination> getGardees() {
+            return gardees;
+        }
+
+        /**
+         * @return le nombre estimé de wagons nécessaires pour réaliser toutes les
+         * destinations gardées (ou {@code GrapheVilles.INFINI} si c'est impossible)
+         */
+        public int getCout() {
+            return cout;
+        }
+
+        /**
+         * @return l'espérance des points rapportés par les destinations gardées
+         */
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (coût %d, score %.2f)", gardees, cout, score);
+        }
+    }
+
+    /**
+     * Graphe du plateau (les distances sur le plateau vide sont précalculées)
+     */
+    private final GrapheVilles graphe;
+    /**
+     * Table précalculée des destinations ({@code null} si aucune table n'est utilisée)
+     */
+    private final TableDestinations table;
+
+    public EvaluateurDestinations(GrapheVilles graphe, TableDestinations table) {
+        this.graphe = graphe;
+        this.table = table;
+    }
+
+    public EvaluateurDestinations(GrapheVilles graphe) {
+        this(graphe, null);
+    }
+
+    public EvaluateurDestinations(Jeu jeu, TableDestinations table) {
+        this(GrapheVilles.de(jeu), table);
+    }
+
+    public EvaluateurDestinations(Jeu jeu) {
+        this(GrapheVilles.de(jeu), null);
+    }
+
+    /**
+     * Classe tous les sous-ensembles de destinations que le joueur peut garder,
+     * du meilleur au moins bon.
+     *
+     * @param joueur     le joueur qui doit choisir
+     * @param proposees  les destinations proposées (au plus 4)
+     * @param nbMinimum  nombre minimum de destinations à garder
+     * @return la liste des évaluations, triée par score décroissant
+     */
+    public List<Evaluation> classer(Joueur joueur, List<Destination> proposees, int nbMinimum) {
+        int n = proposees.size();
+        int[] couts = graphe.coutsRoutes(joueur);
+
+        // coût individuel de chaque destination, pour ordonner le calcul des sous-ensembles
+        int[] coutsIndividuels = new int[n];
+        for (int i = 0; i < n; i++) {
+            coutsIndividuels[i] = graphe.coutDestination(proposees.get(i), couts.clone());
+        }
+
+        List<Evaluation> evaluations = new ArrayList<>();
+        for (int masque = 1; masque < 1 << n; masque++) {
+            if (Integer.bitCount(masque) < nbMinimum) {
+                continue;
+            }
+            List<Integer> indices = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if ((masque & 1 << i) != 0) {
+                    indices.add(i);
+                }
+            }
+            // les destinations les plus chères sont tracées en premier, les suivantes
+            // réutilisent les routes de leurs chemins
+            indices.sort(Comparator.comparingInt((Integer i) -> coutsIndividuels[i]).reversed());
+            evaluations.add(evaluer(joueur, proposees, indices, couts.clone()));
+        }
+        evaluations.sort(Comparator.comparingDouble(Evaluation::getScore).reversed());
+        return evaluations;
+    }
+
+    /**
+     * Renvoie le meilleur sous-ensemble de destinations à garder
+     *
+     * @see #classer(Joueur, List, int)
+     */
+    public List<Destination> meilleurChoix(Joueur joueur, List<Destination> proposees, int nbMinimum) {
+        List<Evaluation> evaluations = classer(joueur, proposees, nbMinimum);
+        return evaluations.isEmpty() ? Collections.emptyList() : evaluations.get(0).getGardees();
+    }
+
+    private Evaluation evaluer(Joueur joueur, List<Destination> proposees, List<Integer> indices, int[] couts) {
+        int wagons = joueur.getNbWagons();
+        int coutCumule = 0;
+        double score = 0;
+        List<Destination> gardees = new ArrayList<>();
+        for (int i : indices) {
+            Destination d = proposees.get(i);
+            gardees.add(d);
+            int cout = graphe.coutDestination(d, couts);
+            coutCumule = cout >= GrapheVilles.INFINI ? GrapheVilles.INFINI : Math.min(GrapheVilles.INFINI, coutCumule + cout);
+            double p = probabiliteRealisation(coutCumule, wagons) * tauxRealisation(d);
+            score += (2 * p - 1) * d.getValeur();
+        }
+        return new Evaluation(gardees, coutCumule, score);
+    }
+
+    /**
+     * @return le taux de réalisation simulé de la destination, ou 1 si aucune
+     * table n'est utilisée ou que la destination n'y figure pas
+     */
+    private double tauxRealisation(Destination d) {
+        double taux = table == null ? -1 : table.getTauxRealisation(d);
+        return taux < 0 ? 1 : taux;
+    }
+
+    /**
+     * Estime la probabilité de réaliser une destination lorsque {@code cout}
+     * wagons (cumulés avec les destinations déjà gardées) sont nécessaires et que
+     * le joueur en possède encore {@code wagons}.
+     * <p>
+     * La probabilité décroît linéairement avec la part des wagons restants
+     * qu'il faut consacrer aux destinations, et est nulle si le joueur n'a pas
+     * assez de wagons.
+     */
+    static double probabiliteRealisation(int cout, int wagons) {
+        if (cout == 0) {
+            return 1;
+        }
+        if (cout > wagons) {
+            return 0;
+        }
+        return 1 - (double) cout / (wagons + 1);
+    }
+}
@@ -0,0 +1,248 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Représentation indexée du réseau de villes et de routes d'un plateau, utilisée
+ * pour les calculs de plus courts chemins.
+ * <p>
+ * Les villes et les routes sont numérotées selon leur position dans les listes
+ * du plateau. Les distances entre toutes les paires de villes sur le plateau
+ * vide (en nombre de wagons) sont précalculées à la construction.
+ */
+public class GrapheVilles {
+    /**
+     * Valeur représentant une distance infinie (ville inaccessible)
+     */
+    public static final int INFINI = Integer.MAX_VALUE / 4;
+
+    private final List<Ville> villes;
+    private final List<Route> routes;
+    /**
+     * Indice de chaque ville à partir de son nom
+     */
+    private final Map<String, Integer> indicesVilles;
+    /**
+     * Indices des deux extrémités de chaque route
+     */
+    private final int[] extremite1;
+    private final int[] extremite2;
+    /**
+     * Pour chaque ville, indices des routes qui la touchent
+     */
+    private final int[][] routesAdjacentes;
+    /**
+     * Distances (en nombre de wagons) entre toutes les paires de villes sur le
+     * plateau vide
+     */
+    private final int[][] distances;
+
+    public GrapheVilles(List<Ville> villes, List<Route> routes) {
+        this.villes = villes;
+        this.routes = routes;
+        int n = villes.size();
+
+        indicesVilles = new HashMap<>();
+        Map<Ville, Integer> indicesParVille = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            indicesVilles.put(villes.get(i).getNom(), i);
+            indicesParVille.put(villes.get(i), i);
+        }
+
+        extremite1 = new int[routes.size()];
+        extremite2 = new int[routes.size()];
+        int[] degres = new int[n];
+        for (int r = 0; r < routes.size(); r++) {
+            extremite1[r] = indicesParVille.get(routes.get(r).getVille1());
+            extremite2[r] = indicesParVille.get(routes.get(r).getVille2());
+            degres[extremite1[r]]++;
+            degres[extremite2[r]]++;
+        }
+        routesAdjacentes = new int[n][];
+        for (int i = 0; i < n; i++) {
+            routesAdjacentes[i] = new int[degres[i]];
+            degres[i] = 0;
+        }
+        for (int r = 0; r < routes.size(); r++) {
+            routesAdjacentes[extremite1[r]][degres[extremite1[r]]++] = r;
+            routesAdjacentes[extremite2[r]][degres[extremite2[r]]++] = r;
+        }
+
+        // Floyd-Warshall sur le plateau vide
+        distances = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(distances[i], INFINI);
+            distances[i][i] = 0;
+        }
+        for (int r = 0; r < routes.size(); r++) {
+            int longueur = routes.get(r).getLongueur();
+            int a = extremite1[r];
+            int b = extremite2[r];
+            if (longueur < distances[a][b]) {
+                distances[a][b] = longueur;
+                distances[b][a] = longueur;
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    if (distances[i][k] + distances[k][j] < distances[i][j]) {
+                        distances[i][j] = distances[i][k] + distances[k][j];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Construit le graphe du plateau d'une partie
+     */
+    public static GrapheVilles de(Jeu jeu) {
+        return new GrapheVilles(jeu.getVilles(), jeu.getRoutes());
+    }
+
+    public int getNbVilles() {
+        return villes.size();
+    }
+
+    public int getNbRoutes() {
+        return routes.size();
+    }
+
+    /**
+     * @return l'indice de la ville portant ce nom, ou -1 si elle n'existe pas
+     */
+    public int indiceVille(String nom) {
+        Integer i = indicesVilles.get(nom);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * @return la distance (en nombre de wagons) entre deux villes sur le plateau
+     * vide, ou {@code INFINI} si elles ne sont pas reliées
+     */
+    public int getDistance(int ville1, int ville2) {
+        return distances[ville1][ville2];
+    }
+
+    /**
+     * Renvoie le coût de chaque route pour un joueur : 0 pour les routes qu'il
+     * possède déjà, {@code INFINI} pour celles capturées par un autre joueur et la
+     * longueur de la route sinon.
+     */
+    public int[] coutsRoutes(Joueur joueur) {
+        int[] couts = new int[routes.size()];
+        for (int r = 0; r < routes.size(); r++) {
+            Joueur proprietaire = routes.get(r).getProprietaire();
+            if (proprietaire == null) {
+                couts[r] = routes.get(r).getLongueur();
+            } else if (proprietaire == joueur) {
+                couts[r] = 0;
+            } else {
+                couts[r] = INFINI;
+            }
+        }
+        return couts;
+    }
+
+    /**
+     * Calcule les plus courts chemins depuis une ville (algorithme de Dijkstra).
+     *
+     * @param source        indice de la ville de départ
+     * @param couts         coût de chaque route (voir {@link #coutsRoutes(Joueur)})
+     * @param distance      tableau (de taille {@code getNbVilles()}) rempli avec
+     *                      la distance de chaque ville à la source
+     * @param routeEntrante tableau (de taille {@code getNbVilles()}) rempli avec
+     *                      l'indice de la dernière route du plus court chemin
+     *                      menant à chaque ville (-1 pour la source et les villes
+     *                      inaccessibles)
+     */
+    public void plusCourtsChemins(int source, int[] couts, int[] distance, int[] routeEntrante) {
+        int n = villes.size();
+        boolean[] traitee = new boolean[n];
+        Arrays.fill(distance, INFINI);
+        Arrays.fill(routeEntrante, -1);
+        distance[source] = 0;
+        for (int etape = 0; etape < n; etape++) {
+            int u = -1;
+            for (int i = 0; i < n; i++) {
+                if (!traitee[i] && distance[i] < INFINI && (u == -1 || distance[i] < distance[u])) {
+                    u = i;
+                }
+            }
+            if (u == -1) {
+                break;
+            }
+            traitee[u] = true;
+            for (int r : routesAdjacentes[u]) {
+                if (couts[r] >= INFINI) {
+                    continue;
+                }
+                int v = extremite1[r] == u ? extremite2[r] : extremite1[r];
+                if (distance[u] + couts[r] < distance[v]) {
+                    distance[v] = distance[u] + couts[r];
+                    routeEntrante[v] = r;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return l'indice de l'extrémité de la route {@code route} opposée à la ville
+     * {@code ville}
+     */
+    public int autreExtremite(int route, int ville) {
+        return extremite1[route] == ville ? extremite2[route] : extremite1[route];
+    }
+
+    /**
+     * Calcule le coût d'un plus court chemin réalisant une destination, puis met
+     * à 0 le coût des routes de ce chemin (elles sont considérées comme prises par
+     * le joueur pour les destinations suivantes).
+     *
+     * @param d     la destination à réaliser
+     * @param couts coût de chaque route, modifié par la méthode
+     * @return le nombre de wagons nécessaires, ou {@code INFINI} si les villes de
+     * la destination ne peuvent pas être reliées
+     */
+    public int coutDestination(Destination d, int[] couts) {
+        int a = indiceVille(d.getVille1());
+        int b = indiceVille(d.getVille2());
+        if (a < 0 || b < 0 || distances[a][b] >= INFINI) {
+            return INFINI;
+        }
+        int[] distance = new int[villes.size()];
+        int[] routeEntrante = new int[villes.size()];
+        plusCourtsChemins(a, couts, distance, routeEntrante);
+        if (distance[b] >= INFINI) {
+            return INFINI;
+        }
+        for (int v = b; routeEntrante[v] != -1; v = autreExtremite(routeEntrante[v], v)) {
+            couts[routeEntrante[v]] = 0;
+        }
+        return distance[b];
+    }
+
+    /**
+     * Indique si les deux villes d'une destination sont reliées par des routes du
+     * joueur (les gares ne sont pas prises en compte)
+     */
+    public boolean estRealisee(Joueur joueur, Destination destination) {
+        int a = indiceVille(destination.getVille1());
+        int b = indiceVille(destination.getVille2());
+        if (a < 0 || b < 0) {
+            return false;
+        }
+        int[] couts = new int[routes.size()];
+        for (int r = 0; r < routes.size(); r++) {
+            couts[r] = routes.get(r).getProprietaire() == joueur ? 0 : INFINI;
+        }
+        int[] distance = new int[villes.size()];
+        plusCourtsChemins(a, couts, distance, new int[villes.size()]);
+        return distance[b] == 0;
+    }
+}
@@ -0,0 +1,191 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Hachage de Zobrist (64 bits) de l'état d'une partie.
+ * <p>
+ * Le hash couvre les propriétaires des routes, les propriétaires des gares, la
+ * composition de la main de chaque joueur, les cartes wagon face visible et le
+ * joueur dont c'est le tour. Les mains et les cartes visibles sont hachées par
+ * nombre de cartes de chaque couleur : deux positions atteintes par des ordres
+ * de pioche différents ont donc le même hash.
+ * <p>
+ * Les clés aléatoires sont tirées avec une graine fixe, si bien que le hash
+ * d'un état ne dépend pas de l'exécution.
+ */
+public final class HachageZobrist {
+    /**
+     * Nombre maximum de joueurs dans une partie (une couleur par joueur)
+     */
+    private static final int NB_JOUEURS_MAX = Joueur.Couleur.values().length;
+    /**
+     * Nombre maximum de cartes d'une même couleur (il y a 14 locomotives)
+     */
+    private static final int NB_CARTES_MAX = 14;
+    /**
+     * Nombre maximum de routes et de villes prises en compte par les tables
+     */
+    private static final int NB_ELEMENTS_MAX = 128;
+    private static final int NB_COULEURS = CouleurWagon.values().length;
+
+    private static final long[][] CLES_ROUTES = new long[NB_ELEMENTS_MAX][NB_JOUEURS_MAX];
+    private static final long[][] CLES_VILLES = new long[NB_ELEMENTS_MAX][NB_JOUEURS_MAX];
+    private static final long[][][] CLES_MAINS = new long[NB_JOUEURS_MAX][NB_COULEURS][NB_CARTES_MAX + 1];
+    private static final long[][] CLES_VISIBLES = new long[NB_COULEURS][NB_CARTES_MAX + 1];
+    private static final long[] CLES_JOUEUR_COURANT = new long[NB_JOUEURS_MAX];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_2A11L);
+        for (int i = 0; i < NB_ELEMENTS_MAX; i++) {
+            for (int j = 0; j < NB_JOUEURS_MAX; j++) {
+                CLES_ROUTES[i][j] = random.nextLong();
+                CLES_VILLES[i][j] = random.nextLong();
+            }
+        }
+        for (int j = 0; j < NB_JOUEURS_MAX; j++) {
+            for (int c = 0; c < NB_COULEURS; c++) {
+                // la clé d'un nombre nul de cartes est 0 pour ne pas pénaliser les mains vides
+                for (int n = 1; n <= NB_CARTES_MAX; n++) {
+                    CLES_MAINS[j][c][n] = random.nextLong();
+                }
+            }
+            CLES_JOUEUR_COURANT[j] = random.nextLong();
+        }
+        for (int c = 0; c < NB_COULEURS; c++) {
+            for (int n = 1; n <= NB_CARTES_MAX; n++) {
+                CLES_VISIBLES[c][n] = random.nextLong();
+            }
+        }
+    }
+
+    private HachageZobrist() {
+    }
+
+    /**
+     * Calcule le hash de l'état courant d'une partie.
+     * <p>
+     * Les mains des joueurs sont des listes modifiées directement à de nombreux
+     * endroits (et par les tests) : le hash est donc recalculé en une passe sur
+     * l'état plutôt que maintenu par des crochets sur chaque mutation. Les
+     * méthodes {@code avec...} permettent en revanche à un algorithme de recherche
+     * de mettre le hash à jour de façon incrémentale lorsqu'il simule un coup.
+     *
+     * @param jeu la partie à hacher
+     * @return le hash de Zobrist de la partie
+     */
+    public static long hash(Jeu jeu) {
+        List<Joueur> joueurs = jeu.getJoueurs();
+        long h = 0;
+
+        List<Route> routes = jeu.getRoutes();
+        for (int i = 0; i < routes.size(); i++) {
+            int proprietaire = joueurs.indexOf(routes.get(i).getProprietaire());
+            if (proprietaire >= 0) {
+                h ^= CLES_ROUTES[i][proprietaire];
+            }
+        }
+
+        List<Ville> villes = jeu.getVilles();
+        for (int i = 0; i < villes.size(); i++) {
+            int proprietaire = joueurs.indexOf(villes.get(i).getProprietaire());
+            if (proprietaire >= 0) {
+                h ^= CLES_VILLES[i][proprietaire];
+            }
+        }
+
+        int[] compteur = new int[NB_COULEURS];
+        for (int j = 0; j < joueurs.size(); j++) {
+            compter(joueurs.get(j).getCartesWagon(), compteur);
+            for (int c = 0; c < NB_COULEURS; c++) {
+                h ^= CLES_MAINS[j][c][Math.min(compteur[c], NB_CARTES_MAX)];
+            }
+        }
+
+        compter(jeu.getCartesWagonVisibles(), compteur);
+        for (int c = 0; c < NB_COULEURS; c++) {
+            h ^= CLES_VISIBLES[c][Math.min(compteur[c], NB_CARTES_MAX)];
+        }
+
+        int courant = joueurs.indexOf(jeu.getJoueurCourant());
+        if (courant >= 0) {
+            h ^= CLES_JOUEUR_COURANT[courant];
+        }
+        return h;
+    }
+
+    /**
+     * Met à jour un hash lorsqu'une route change de propriétaire (ou le perd)
+     *
+     * @param h       hash de l'état avant le changement
+     * @param route   indice de la route dans {@code Jeu.getRoutes()}
+     * @param joueur  indice du joueur dans {@code Jeu.getJoueurs()}
+     */
+    public static long avecRoute(long h, int route, int joueur) {
+        return h ^ CLES_ROUTES[route][joueur];
+    }
+
+    /**
+     * Met à jour un hash lorsqu'un joueur construit (ou retire) une gare sur une
+     * ville
+     *
+     * @param h      hash de l'état avant le changement
+     * @param ville  indice de la ville dans {@code Jeu.getVilles()}
+     * @param joueur indice du joueur dans {@code Jeu.getJoueurs()}
+     */
+    public static long avecGare(long h, int ville, int joueur) {
+        return h ^ CLES_VILLES[ville][joueur];
+    }
+
+    /**
+     * Met à jour un hash lorsque le nombre de cartes d'une couleur change dans la
+     * main d'un joueur
+     *
+     * @param h           hash de l'état avant le changement
+     * @param joueur      indice du joueur dans {@code Jeu.getJoueurs()}
+     * @param couleur     couleur des cartes
+     * @param nbAvant     nombre de cartes de cette couleur avant le changement
+     * @param nbApres     nombre de cartes de cette couleur après le changement
+     */
+    public static long avecMain(long h, int joueur, CouleurWagon couleur, int nbAvant, int nbApres) {
+        long[] cles = CLES_MAINS[joueur][couleur.ordinal()];
+        return h ^ cles[Math.min(nbAvant, NB_CARTES_MAX)] ^ cles[Math.min(nbApres, NB_CARTES_MAX)];
+    }
+
+    /**
+     * Met à jour un hash lorsque le nombre de cartes visibles d'une couleur change
+     *
+     * @param h       hash de l'état avant le changement
+     * @param couleur couleur des cartes
+     * @param nbAvant nombre de cartes visibles de cette couleur avant le changement
+     * @param nbApres nombre de cartes visibles de cette couleur après le changement
+     */
+    public static long avecVisibles(long h, CouleurWagon couleur, int nbAvant, int nbApres) {
+        long[] cles = CLES_VISIBLES[couleur.ordinal()];
+        return h ^ cles[Math.min(nbAvant, NB_CARTES_MAX)] ^ cles[Math.min(nbApres, NB_CARTES_MAX)];
+    }
+
+    /**
+     * Met à jour un hash lorsque le tour passe d'un joueur à un autre
+     *
+     * @param h      hash de l'état avant le changement
+     * @param avant  indice du joueur dont c'était le tour
+     * @param apres  indice du joueur dont c'est maintenant le tour
+     */
+    public static long avecJoueurCourant(long h, int avant, int apres) {
+        return h ^ CLES_JOUEUR_COURANT[avant] ^ CLES_JOUEUR_COURANT[apres];
+    }
+
+    /**
+     * Compte le nombre de cartes de chaque couleur d'une liste (le tableau est
+     * remis à zéro avant le comptage)
+     */
+    private static void compter(List<CouleurWagon> cartes, int[] compteur) {
+        Arrays.fill(compteur, 0);
+        for (CouleurWagon c : cartes) {
+            compteur[c.ordinal()]++;
+        }
+    }
+}
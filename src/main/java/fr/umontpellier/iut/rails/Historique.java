@@ -0,0 +1,74 @@
+package fr.umontpellier.iut.rails;
+
+/**
+ * Log d'une partie, borné : seules les {@code capacite} dernières lignes sont
+ * conservées dans un tampon circulaire.
+ * <p>
+ * Chaque ligne reçoit un numéro de séquence (0 pour la première ligne de la
+ * partie), qui ne dépend pas des lignes oubliées. Les messages envoyés aux
+ * clients indiquent le numéro de leur première ligne : un client qui a reçu
+ * les lignes jusqu'au numéro {@code n} n'a besoin que des lignes suivantes,
+ * et la taille des messages ne dépend pas de la durée de la partie.
+ * <p>
+ * Une instance n'est utilisée que par le thread de la partie.
+ */
+public class Historique {
+    /**
+     * Nombre de lignes conservées par défaut
+     */
+    public static final int CAPACITE = 200;
+
+    private final String[] lignes;
+    /**
+     * Numéro de séquence de la prochaine ligne (nombre de lignes ajoutées depuis le début de la partie)
+     */
+    private long prochaineSequence;
+
+    public Historique() {
+        this(CAPACITE);
+    }
+
+    /**
+     * @param capacite nombre de lignes conservées
+     */
+    public Historique(int capacite) {
+        if (capacite <= 0) {
+            throw new IllegalArgumentException("Capacité invalide : " + capacite);
+        }
+        lignes = new String[capacite];
+    }
+
+    /**
+     * Ajoute une ligne, en oubliant la plus ancienne si le tampon est plein
+     */
+    public void ajouter(String ligne) {
+        lignes[(int) (prochaineSequence % lignes.length)] = ligne;
+        prochaineSequence++;
+    }
+
+    /**
+     * @return le numéro de séquence de la prochaine ligne ajoutée
+     */
+    public long getProchaineSequence() {
+        return prochaineSequence;
+    }
+
+    /**
+     * @return le numéro de séquence de la plus ancienne ligne conservée
+     */
+    public long getPremiereSequence() {
+        return Math.max(0, prochaineSequence - lignes.length);
+    }
+
+    /**
+     * @param sequence numéro de séquence d'une ligne conservée
+     * @return la ligne
+     * @throws IndexOutOfBoundsException si la ligne n'existe pas ou a été oubliée
+     */
+    public String get(long sequence) {
+        if (sequence < getPremiereSequence() || sequence >= prochaineSequence) {
+            throw new IndexOutOfBoundsException("Ligne " + sequence + " absente du log");
+        }
+        return lignes[(int) (sequence % lignes.length)];
+    }
+}
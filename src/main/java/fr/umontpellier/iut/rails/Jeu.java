@@ -1,12 +1,12 @@
 package fr.umontpellier.iut.rails;
 
-import com.google.gson.Gson;
 import fr.umontpellier.iut.gui.GameServer;
+import fr.umontpellier.iut.gui.MiseAJour;
+import fr.umontpellier.iut.gui.Salle;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.stream.Collectors;
 
 public class Jeu implements Runnable {
     /**
@@ -49,11 +49,101 @@ public class Jeu implements Runnable {
      */
     private BlockingQueue<String> inputQueue;
     /**
-     * Messages d'information du jeu
+     * Messages d'information du jeu (seules les dernières lignes sont conservées)
      */
-    private List<String> log;
+    private final Historique log = new Historique();
+    /**
+     * Générateur aléatoire utilisé pour tous les mélanges de la partie (une partie
+     * créée avec une graine est entièrement reproductible)
+     */
+    private final Random random;
+    /**
+     * Graine du générateur aléatoire de la partie
+     */
+    private final long graine;
+    /**
+     * Identifiant de la salle du serveur dans laquelle la partie est exécutée
+     */
+    private String identifiant;
+    /**
+     * Sérialisation JSON des états envoyés aux clients (complets et différentiels)
+     */
+    private final SuiviEtat suiviEtat = new SuiviEtat();
+    /**
+     * Encodage binaire des états envoyés aux clients qui le demandent
+     */
+    private final EtatBinaire etatBinaire = new EtatBinaire();
+    /**
+     * Dernier état publié pour les clients (ou {@code null} si l'état a changé depuis)
+     */
+    private MiseAJour etatPublie;
+    /**
+     * Dernière demande d'entrée (instruction, boutons et possibilité de passer),
+     * pour encoder à nouveau l'état courant dans un format demandé après coup
+     */
+    private String derniereInstruction;
+    private Collection<String> derniersBoutons;
+    private boolean dernierPeutPasser;
+    /**
+     * Marqueur déposé dans la file d'entrées pour demander la publication de
+     * l'état courant (reconnu par identité : ce n'est jamais une entrée reçue)
+     */
+    private static final String DEMANDE_ETAT = new String("");
+    /**
+     * Émetteur d'une entrée qui peut jouer pour tous les joueurs : l'entrée
+     * standard du serveur (voir {@link #verifierEntree(String, int)})
+     */
+    public static final int TOUS_LES_JOUEURS = Integer.MIN_VALUE;
+    /**
+     * Affichage de l'état de la partie sur la console à chaque demande d'entrée
+     */
+    private final Console console = Console.depuisProprietes();
+    /**
+     * Choix attendu du joueur courant, publié avec chaque demande d'entrée pour
+     * que les entrées reçues puissent être vérifiées par les threads du serveur
+     * avant d'être ajoutées à la file (ou {@code null} si aucune entrée n'est attendue)
+     */
+    private volatile ChoixAttendu choixAttendu;
+    /**
+     * Journal dans lequel sont enregistrées les entrées lues par la partie (ou {@code null})
+     */
+    private Journal journal;
+    /**
+     * Nombre d'entrées de la file déjà enregistrées dans le journal (entrées
+     * relues par une partie reconstruite), qui ne sont pas enregistrées à nouveau
+     */
+    private int nbEntreesJournalisees;
+    /**
+     * Nombre de tours de jeu commencés (le choix des destinations initiales n'est pas un tour)
+     */
+    private int nbTours;
+
+    /**
+     * Choix attendu d'un joueur : le joueur concerné et les entrées valides
+     */
+    private static final class ChoixAttendu {
+        private final int joueur;
+        private final Set<String> choix;
+        private final boolean peutPasser;
+
+        private ChoixAttendu(int joueur, Set<String> choix, boolean peutPasser) {
+            this.joueur = joueur;
+            this.choix = Set.copyOf(choix);
+            this.peutPasser = peutPasser;
+        }
+    }
 
     public Jeu(String[] nomJoueurs) {
+        this(nomJoueurs, new Random().nextLong());
+    }
+
+    /**
+     * Crée une partie dont tous les mélanges sont déterminés par une graine
+     *
+     * @param nomJoueurs noms des joueurs
+     * @param graine     graine du générateur aléatoire de la partie
+     */
+    public Jeu(String[] nomJoueurs, long graine) {
         /*
          * ATTENTION : Cette méthode est à réécrire.
          * 
@@ -63,9 +153,11 @@ public class Jeu implements Runnable {
          * correctement initialisés.
          */
 
+        this.graine = graine;
+        this.random = new Random(graine);
+
         // initialisation des entrées/sorties
         inputQueue = new LinkedBlockingQueue<>();
-        log = new ArrayList<>();
 
         // création des cartes
         pileCartesWagon = new ArrayList<>();
@@ -80,7 +172,7 @@ public class Jeu implements Runnable {
 
         // création des joueurs
         ArrayList<Joueur.Couleur> couleurs = new ArrayList<>(Arrays.asList(Joueur.Couleur.values()));
-        Collections.shuffle(couleurs);
+        Collections.shuffle(couleurs, random);
         joueurs = new ArrayList<>();
         for (String nom : nomJoueurs) {
             Joueur joueur = new Joueur(nom, this, couleurs.remove(0));
@@ -122,6 +214,38 @@ public class Jeu implements Runnable {
         return joueurCourant;
     }
 
+    public String getIdentifiant() {
+        return identifiant;
+    }
+
+    public void setIdentifiant(String identifiant) {
+        this.identifiant = identifiant;
+    }
+
+    /**
+     * @return la graine du générateur aléatoire de la partie
+     */
+    public long getGraine() {
+        return graine;
+    }
+
+    /**
+     * Enregistre dans un journal les entrées lues par la partie (à appeler avant de démarrer la partie).
+     * <p>
+     * Les entrées déjà enregistrées sont ajoutées à la file et relues par la
+     * partie avant toute nouvelle entrée, sans être enregistrées à nouveau :
+     * une partie créée avec la même graine retrouve ainsi l'état de la partie
+     * journalisée.
+     *
+     * @param journal         le journal
+     * @param entreesRejouees entrées déjà enregistrées pour cette partie
+     */
+    public void setJournal(Journal journal, List<String> entreesRejouees) {
+        this.journal = journal;
+        nbEntreesJournalisees = entreesRejouees.size();
+        inputQueue.addAll(entreesRejouees);
+    }
+
     public void initialiserPileCartesWagon(){
         ArrayList<CouleurWagon> res = CouleurWagon.getCouleursSimples();
         for (CouleurWagon re : res) {
@@ -132,7 +256,7 @@ public class Jeu implements Runnable {
         for (int i = 0; i<14; i++){
             pileCartesWagon.add(CouleurWagon.LOCOMOTIVE);
         }
-        Collections.shuffle(pileCartesWagon);
+        Collections.shuffle(pileCartesWagon, random);
     }
 
     public void initialiserCarteWagonsVisibles(){
@@ -172,7 +296,7 @@ public class Jeu implements Runnable {
         // INITIALISER LES CARTES DESTINATIONS DES JOUEURS
         ArrayList<Destination> destinationsLongues = Destination.makeDestinationsLonguesEurope();
         for (int i = 0; i<joueurs.size(); i++){
-            Collections.shuffle(destinationsLongues);
+            Collections.shuffle(destinationsLongues, random);
             joueurCourant=joueurs.get(i);
             initialiserCarteDestinationJoueur(destinationsLongues.remove(0), destinationsLongues);
         }
@@ -184,16 +308,41 @@ public class Jeu implements Runnable {
             else {
                 joueurCourant=joueurs.get(indiceJoueur+1);
             }
-            joueurCourant.jouerTour();
+            jouerTour();
         }
         log("Dernier tour");
         for (int i =0 ; i<this.joueurs.size()-1;i++){
-            joueurCourant.jouerTour();
+            jouerTour();
         }
         log("le joueur " +estGagnant()+"est gagnant !");
         this.prompt("", new ArrayList<>(), false);
     }
 
+    /**
+     * Fait jouer un tour au joueur courant
+     */
+    private void jouerTour() {
+        commencerTour(nbTours + 1);
+        nbTours++;
+        joueurCourant.jouerTour();
+    }
+
+    /**
+     * Appelée au début de chaque tour de jeu, avant que le joueur courant ne
+     * joue (ne fait rien par défaut)
+     *
+     * @param tour numéro du tour (à partir de 1)
+     */
+    protected void commencerTour(int tour) {
+    }
+
+    /**
+     * @return le nombre de tours de jeu commencés
+     */
+    public int getNbTours() {
+        return nbTours;
+    }
+
     private String estGagnant(){
         String res = "";
         int max = 0;
@@ -250,7 +399,7 @@ public class Jeu implements Runnable {
         CouleurWagon res;
         if (pileCartesWagon.isEmpty()){
             pileCartesWagon.addAll(defausseCartesWagon);
-            Collections.shuffle(pileCartesWagon);
+            Collections.shuffle(pileCartesWagon, random);
             defausseCartesWagon.clear();
         }
         res = pileCartesWagon.remove(0);
@@ -267,8 +416,9 @@ public class Jeu implements Runnable {
         this.cartesWagonVisibles.remove(c);
         this.cartesWagonVisibles.add(this.piocherCarteWagon());
 
-        int compteur = 0;
+        int compteur;
         do {
+            compteur = 0;
             for (CouleurWagon couleur : this.cartesWagonVisibles) {
                 if (CouleurWagon.LOCOMOTIVE.equals(couleur)) {
                     compteur++;
@@ -276,10 +426,9 @@ public class Jeu implements Runnable {
             }
             if (compteur>=3){
                 this.defausseCartesWagon.addAll(this.cartesWagonVisibles);
-                this.cartesWagonVisibles = new ArrayList<>();
+                this.cartesWagonVisibles.clear();
                 for (int i = 0; i<5; i++){
-                    this.cartesWagonVisibles.add(this.pileCartesWagon.get(0));
-                    this.pileCartesWagon.remove(this.pileCartesWagon.get(0));
+                    this.cartesWagonVisibles.add(this.piocherCarteWagon());
                 }
             }
         }
@@ -317,7 +466,7 @@ public class Jeu implements Runnable {
      * Ajoute un message au log du jeu
      */
     public void log(String message) {
-        log.add(message);
+        log.ajouter(message);
     }
 
     /**
@@ -327,6 +476,19 @@ public class Jeu implements Runnable {
         inputQueue.add(message);
     }
 
+    /**
+     * Demande à la partie de publier son état courant dans les formats attendus
+     * par les clients de sa salle (appelée par les threads du serveur lorsqu'un
+     * client se connecte dans un format qui n'a pas encore été encodé).
+     * <p>
+     * La demande passe par la file d'entrées : elle est traitée par le thread de
+     * la partie dès qu'il attend une entrée, c'est-à-dire sur l'état de la
+     * dernière demande d'entrée.
+     */
+    public void demanderEtat() {
+        inputQueue.add(DEMANDE_ETAT);
+    }
+
     /**
      * Lit une ligne de l'entrée standard
      * C'est cette méthode qui doit être appelée à chaque fois qu'on veut lire
@@ -337,11 +499,79 @@ public class Jeu implements Runnable {
      */
     public String lireLigne() {
         try {
-            return inputQueue.take();
+            String ligne = inputQueue.take();
+            while (ligne == DEMANDE_ETAT) {
+                // l'état n'a pas changé depuis la dernière demande d'entrée
+                publierEtat();
+                ligne = inputQueue.take();
+            }
+            if (journal != null) {
+                if (nbEntreesJournalisees > 0) {
+                    nbEntreesJournalisees--;
+                } else {
+                    journal.enregistrerEntree(identifiant, ligne);
+                }
+            }
+            return ligne;
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            // la partie est arrêtée (fermeture de sa salle)
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Attend le choix du joueur courant : envoie l'état de la partie pour
+     * affichage puis lit l'entrée suivante.
+     * <p>
+     * Cette méthode est appelée par {@code Joueur.choisir} à chaque fois qu'une
+     * entrée est nécessaire. Elle peut être redéfinie pour faire jouer un
+     * programme plutôt qu'un utilisateur.
+     *
+     * @param instruction l'instruction qui est donnée au joueur
+     * @param choix       l'ensemble des choix valides (y compris les boutons)
+     * @param boutons     labels des choix proposés sous forme de boutons
+     * @param peutPasser  indique si le joueur peut passer sans faire de choix
+     * @return l'entrée lue (qui n'est pas nécessairement un choix valide)
+     */
+    public String lireChoix(String instruction, Set<String> choix, Collection<String> boutons, boolean peutPasser) {
+        choixAttendu = new ChoixAttendu(joueurs.indexOf(joueurCourant), choix, peutPasser);
+        prompt(instruction, boutons, peutPasser);
+        return lireLigne();
+    }
+
+    /**
+     * Indique que le choix attendu a été fait : les entrées reçues ensuite sont
+     * refusées jusqu'à la prochaine demande
+     */
+    void terminerChoix() {
+        choixAttendu = null;
+    }
+
+    /**
+     * Vérifie une entrée reçue d'un client avant de l'ajouter à la file d'entrées.
+     * <p>
+     * Cette méthode est appelée par les threads du serveur : une entrée refusée
+     * n'atteint jamais la partie et ne provoque pas de nouvel envoi de l'état.
+     *
+     * @param entree l'entrée reçue
+     * @param joueur indice du joueur pour lequel l'émetteur de l'entrée peut jouer,
+     *               {@link #TOUS_LES_JOUEURS} pour l'entrée standard du serveur, ou
+     *               une valeur négative si l'émetteur ne peut pas jouer (spectateur)
+     * @return {@code null} si l'entrée est valide, ou la raison du refus
+     */
+    public String verifierEntree(String entree, int joueur) {
+        ChoixAttendu attendu = choixAttendu;
+        if (attendu == null) {
+            return "Aucun choix n'est attendu";
+        }
+        if (joueur != TOUS_LES_JOUEURS && joueur != attendu.joueur) {
+            return joueur < 0 ? "Les spectateurs ne peuvent pas jouer" : "Ce n'est pas votre tour";
+        }
+        if (attendu.choix.contains(entree) || (attendu.peutPasser && entree.equals(""))) {
             return null;
         }
+        return "Choix invalide : " + entree;
     }
 
     /**
@@ -352,36 +582,58 @@ public class Jeu implements Runnable {
      * @param peutPasser  indique si le joueur peut passer sans faire de choix
      */
     public void prompt(String instruction, Collection<String> boutons, boolean peutPasser) {
-        System.out.println();
-        System.out.println(this);
-        if (boutons.isEmpty()) {
-            System.out.printf(">>> %s: %s <<<%n", joueurCourant.getNom(), instruction);
-        } else {
-            StringJoiner joiner = new StringJoiner(" / ");
-            for (String bouton : boutons) {
-                joiner.add(bouton);
+        if (console.doitAfficher()) {
+            StringBuilder texte = new StringBuilder();
+            texte.append(System.lineSeparator()).append(this).append(System.lineSeparator());
+            texte.append(">>> ").append(joueurCourant.getNom()).append(": ").append(instruction);
+            if (!boutons.isEmpty()) {
+                StringJoiner joiner = new StringJoiner(" / ", " [", "]");
+                for (String bouton : boutons) {
+                    joiner.add(bouton);
+                }
+                texte.append(joiner);
             }
-            System.out.printf(">>> %s: %s [%s] <<<%n", joueurCourant.getNom(), instruction, joiner);
+            console.afficher(texte.append(" <<<").toString());
         }
 
-        Map<String, Object> data = Map.ofEntries(
-                new AbstractMap.SimpleEntry<String, Object>("prompt", Map.ofEntries(
-                        new AbstractMap.SimpleEntry<String, Object>("instruction", instruction),
-                        new AbstractMap.SimpleEntry<String, Object>("boutons", boutons),
-                        new AbstractMap.SimpleEntry<String, Object>("nomJoueurCourant", getJoueurCourant().getNom()),
-                        new AbstractMap.SimpleEntry<String, Object>("peutPasser", peutPasser))),
-                new AbstractMap.SimpleEntry<>("villes",
-                        villes.stream().map(Ville::asPOJO).collect(Collectors.toList())),
-                new AbstractMap.SimpleEntry<>("routes",
-                        routes.stream().map(Route::asPOJO).collect(Collectors.toList())),
-                new AbstractMap.SimpleEntry<String, Object>("joueurs",
-                        joueurs.stream().map(Joueur::asPOJO).collect(Collectors.toList())),
-                new AbstractMap.SimpleEntry<String, Object>("piles", Map.ofEntries(
-                        new AbstractMap.SimpleEntry<String, Object>("pileCartesWagon", pileCartesWagon.size()),
-                        new AbstractMap.SimpleEntry<String, Object>("pileDestinations", pileDestinations.size()),
-                        new AbstractMap.SimpleEntry<String, Object>("defausseCartesWagon", defausseCartesWagon),
-                        new AbstractMap.SimpleEntry<String, Object>("cartesWagonVisibles", cartesWagonVisibles))),
-                new AbstractMap.SimpleEntry<String, Object>("log", log));
-        GameServer.setEtatJeu(new Gson().toJson(data));
+        derniereInstruction = instruction;
+        derniersBoutons = boutons;
+        dernierPeutPasser = peutPasser;
+        etatPublie = null;
+        publierEtat();
+    }
+
+    /**
+     * Encode l'état de la dernière demande d'entrée dans les formats attendus par
+     * les clients de la salle, et le publie.
+     * <p>
+     * Rien n'est encodé si la partie n'est pas dans une salle ou si la salle n'a
+     * aucun client, et l'état binaire n'est encodé que si un client le demande.
+     * L'état JSON est encodé dès qu'un client est connecté, car il donne aussi
+     * leur numéro de version aux trames binaires. Un format déjà encodé pour
+     * l'état courant n'est pas encodé à nouveau.
+     */
+    private void publierEtat() {
+        Salle salle = GameServer.getSalle(identifiant);
+        if (salle == null) {
+            return;
+        }
+        MiseAJour etat = etatPublie;
+        SuiviEtat.Instantane instantaneJson = etat == null ? null : etat.getEtatJson();
+        EtatBinaire.Instantane instantaneBinaire = etat == null ? null : etat.getEtatBinaire();
+        boolean binaire = salle.attendEtatBinaire();
+        if (instantaneJson == null && (binaire || salle.attendEtatJson())) {
+            instantaneJson = suiviEtat.enregistrer(this, log, derniereInstruction, derniersBoutons,
+                    dernierPeutPasser);
+        }
+        if (instantaneBinaire == null && binaire) {
+            instantaneBinaire = etatBinaire.enregistrer(this, instantaneJson.getVersion(), log, derniereInstruction,
+                    derniersBoutons, dernierPeutPasser);
+        }
+        if (etat != null && instantaneJson == etat.getEtatJson() && instantaneBinaire == etat.getEtatBinaire()) {
+            return;
+        }
+        etatPublie = new MiseAJour(joueurs.size(), instantaneJson, instantaneBinaire);
+        salle.setEtatJeu(etatPublie);
     }
 }
@@ -1,6 +1,9 @@
 package fr.umontpellier.iut.rails;
 
+import com.google.gson.stream.JsonWriter;
+
 import javax.management.monitor.CounterMonitor;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -165,15 +168,17 @@ public class Joueur {
             if (choixDistincts.size() == 1 && !peutPasser)
                 return choixDistincts.iterator().next();
             else {
-                String entree;
-                // Lit l'entrée de l'utilisateur jusqu'à obtenir un choix valide
-                while (true) {
-                    jeu.prompt(instruction, boutons, peutPasser);
-                    entree = jeu.lireLigne();
-                    // si une réponse valide est obtenue, elle est renvoyée
-                    if (choixDistincts.contains(entree) || (peutPasser && entree.equals("")))
-                        return entree;
+                String entree = jeu.lireChoix(instruction, choixDistincts, boutons, peutPasser);
+                // Redemande le choix jusqu'à obtenir un choix valide (les entrées des clients
+                // ont déjà été vérifiées par le serveur, voir Jeu.verifierEntree)
+                while (!choixDistincts.contains(entree) && !(peutPasser && "".equals(entree))) {
+                    if (entree == null) {
+                        throw new IllegalStateException("Partie interrompue");
+                    }
+                    entree = jeu.lireChoix(instruction, choixDistincts, boutons, peutPasser);
                 }
+                jeu.terminerChoix();
+                return entree;
             }
         }
     }
@@ -208,22 +213,68 @@ public class Joueur {
     }
 
     /**
-     * Renvoie une représentation du joueur sous la forme d'un objet Java simple
-     * (POJO)
+     * Écrit la représentation JSON du joueur
+     */
+    public void ecrireJson(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.name("nom").value(nom);
+        out.name("couleur").value(couleur.name());
+        out.name("score").value(score);
+        out.name("nbGares").value(nbGares);
+        out.name("nbWagons").value(nbWagons);
+        out.name("estJoueurCourant").value(this == jeu.getJoueurCourant());
+        out.name("destinations").beginArray();
+        for (Destination destination : destinations) {
+            destination.ecrireJson(out);
+        }
+        out.endArray();
+        out.name("cartesWagon");
+        ecrireCartesTriees(out, cartesWagon);
+        out.name("cartesWagonPosees");
+        ecrireCartesTriees(out, cartesWagonPosees);
+        out.endObject();
+    }
+
+    /**
+     * Écrit la représentation JSON du joueur telle que la voient ses adversaires
+     * et les spectateurs : le contenu de sa main et ses destinations sont
+     * remplacés par leur nombre (les listes restent présentes mais vides, pour
+     * que les clients puissent lire les deux représentations de la même façon)
      */
-    public Object asPOJO() {
-        HashMap<String, Object> data = new HashMap<>();
-        data.put("nom", nom);
-        data.put("couleur", couleur);
-        data.put("score", score);
-        data.put("nbGares", nbGares);
-        data.put("nbWagons", nbWagons);
-        data.put("estJoueurCourant", this == jeu.getJoueurCourant());
-        data.put("destinations", destinations.stream().map(Destination::asPOJO).collect(Collectors.toList()));
-        data.put("cartesWagon", cartesWagon.stream().sorted().map(CouleurWagon::name).collect(Collectors.toList()));
-        data.put("cartesWagonPosees",
-                cartesWagonPosees.stream().sorted().map(CouleurWagon::name).collect(Collectors.toList()));
-        return data;
+    public void ecrireJsonPublic(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.name("nom").value(nom);
+        out.name("couleur").value(couleur.name());
+        out.name("score").value(score);
+        out.name("nbGares").value(nbGares);
+        out.name("nbWagons").value(nbWagons);
+        out.name("estJoueurCourant").value(this == jeu.getJoueurCourant());
+        out.name("destinations").beginArray().endArray();
+        out.name("nbDestinations").value(destinations.size());
+        out.name("cartesWagon").beginArray().endArray();
+        out.name("nbCartesWagon").value(cartesWagon.size());
+        out.name("cartesWagonPosees");
+        ecrireCartesTriees(out, cartesWagonPosees);
+        out.endObject();
+    }
+
+    /**
+     * Écrit une liste de cartes wagon triées dans l'ordre de l'énumération
+     * (sans copier ni trier la liste)
+     */
+    static void ecrireCartesTriees(JsonWriter out, List<CouleurWagon> cartes) throws IOException {
+        CouleurWagon[] couleurs = CouleurWagon.values();
+        int[] nombres = new int[couleurs.length];
+        for (CouleurWagon c : cartes) {
+            nombres[c.ordinal()]++;
+        }
+        out.beginArray();
+        for (int i = 0; i < couleurs.length; i++) {
+            for (int j = 0; j < nombres[i]; j++) {
+                out.value(couleurs[i].name());
+            }
+        }
+        out.endArray();
     }
 
     /**
@@ -460,7 +511,6 @@ public class Joueur {
                 }
             }
         }
-        log(choixRoutes + "");
         choix.addAll(choixRoutes);
 
 
@@ -545,8 +595,6 @@ public class Joueur {
                                     || c.equals(CouleurWagon.LOCOMOTIVE)
                                     || c.name().equals(variableTunnel)) {
                                 if (!c.equals(CouleurWagon.LOCOMOTIVE)) variableTunnel = c.name();
-                                log("variabletunnel " + variableTunnel);
-                                log("choixCarte " + choixCartesPourCreerTunnel);
                                 this.cartesWagonPosees.add(c);
                                 this.cartesWagon.remove(c);
                                 mainDuJoueur.remove(choixCartesPourCreerTunnel);
@@ -569,7 +617,6 @@ public class Joueur {
                             mainDuJoueur = new ArrayList<>();
                         }
                         choixCartesPourCreerTunnel = choisir("(Supplément : " + nbCartesPoserEnPlus + " cartes " + routeChoisie.getCouleur() + " ou Locomotive)", mainDuJoueur, new ArrayList<>(), true);
-                        log("-"+choixCartesPourCreerTunnel+"-");
                         for (CouleurWagon c : this.cartesWagon) {
                             // - si le joueur possède la carte qu'il a choisit
                             if (c.name().equals(choixCartesPourCreerTunnel)) {
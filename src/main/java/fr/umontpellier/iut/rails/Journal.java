@@ -0,0 +1,390 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Journal des parties d'un serveur, qui permet de les reconstruire après un
+ * redémarrage.
+ * <p>
+ * Une partie est entièrement déterminée par la graine de son générateur
+ * aléatoire, les noms de ses joueurs et la suite des entrées qu'elle a lues :
+ * le journal n'enregistre que ces informations, dans un fichier en ajout seul,
+ * projeté en mémoire par zones de taille fixe. Chaque enregistrement est
+ * précédé de sa longueur et d'une somme de contrôle (CRC32), ce qui permet
+ * d'ignorer un enregistrement écrit partiellement lors d'un arrêt brutal.
+ * <p>
+ * Ajouter un enregistrement n'est qu'une copie en mémoire : le thread de la
+ * partie n'attend jamais le disque. Les pages modifiées appartiennent au
+ * système, et survivent donc à un arrêt de la JVM ; elles sont écrites sur le
+ * disque par un thread de synchronisation, toutes les
+ * {@value #DELAI_SYNCHRONISATION} ms au plus, en une seule opération pour
+ * tous les enregistrements ajoutés depuis la synchronisation précédente
+ * (validation groupée).
+ * <p>
+ * Au redémarrage, {@link #compacter(Path)} relit le journal, ne garde que les
+ * parties non terminées et renvoie leur description.
+ */
+public class Journal implements AutoCloseable {
+    /**
+     * Nom de la propriété système qui indique le fichier du journal (aucun journal si elle est absente)
+     */
+    public static final String PROPRIETE_FICHIER = "rails.journal";
+    /**
+     * Taille d'une zone du fichier projetée en mémoire (en octets)
+     */
+    static final int TAILLE_ZONE = 1024 * 1024;
+    /**
+     * Délai maximal entre l'ajout d'un enregistrement et son écriture sur le disque (en millisecondes)
+     */
+    public static final long DELAI_SYNCHRONISATION = 20;
+    /**
+     * Taille de l'en-tête d'un enregistrement (longueur et somme de contrôle)
+     */
+    private static final int TAILLE_ENTETE = 8;
+
+    private static final byte CREATION = 1;
+    private static final byte ENTREE = 2;
+    private static final byte FIN = 3;
+
+    /**
+     * Partie décrite par le journal : de quoi la recréer et lui faire relire ses entrées
+     */
+    public static final class Partie {
+        private final String salle;
+        private final long graine;
+        private final List<String> nomJoueurs;
+        private final List<String> entrees = new ArrayList<>();
+
+        private Partie(String salle, long graine, List<String> nomJoueurs) {
+            this.salle = salle;
+            this.graine = graine;
+            this.nomJoueurs = nomJoueurs;
+        }
+
+        public String getSalle() {
+            return salle;
+        }
+
+        public long getGraine() {
+            return graine;
+        }
+
+        public String[] getNomJoueurs() {
+            return nomJoueurs.toArray(new String[0]);
+        }
+
+        /**
+         * @return les entrées lues par la partie, dans l'ordre
+         */
+        public List<String> getEntrees() {
+            return Collections.unmodifiableList(entrees);
+        }
+    }
+
+    private final FileChannel canal;
+    private final int tailleZone;
+    /**
+     * Zone du fichier dans laquelle les enregistrements sont ajoutés
+     */
+    private MappedByteBuffer zone;
+    /**
+     * Position de la zone courante dans le fichier
+     */
+    private long debutZone;
+    /**
+     * Partie de la zone courante modifiée depuis la dernière synchronisation
+     * (positions dans la zone, {@code debutModifie == finModifie} si rien n'a été modifié)
+     */
+    private int debutModifie;
+    private int finModifie;
+    private final Thread synchronisation;
+    private volatile boolean ferme;
+
+    /**
+     * Ouvre un journal (le fichier est créé s'il n'existe pas) : les nouveaux
+     * enregistrements sont ajoutés après le dernier enregistrement valide
+     *
+     * @param fichier le fichier du journal
+     */
+    public Journal(Path fichier) throws IOException {
+        this(fichier, TAILLE_ZONE);
+    }
+
+    Journal(Path fichier, int tailleZone) throws IOException {
+        this.tailleZone = tailleZone;
+        canal = FileChannel.open(fichier, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long fin = lire(canal, tailleZone, new LinkedHashMap<>());
+        debutZone = fin - fin % tailleZone;
+        zone = canal.map(FileChannel.MapMode.READ_WRITE, debutZone, tailleZone);
+        zone.position((int) (fin - debutZone));
+        debutModifie = finModifie = zone.position();
+        synchronisation = new Thread(this::synchroniserEnBoucle, "journal");
+        synchronisation.setDaemon(true);
+        synchronisation.start();
+    }
+
+    /**
+     * @return le fichier du journal indiqué par la propriété système
+     * {@value #PROPRIETE_FICHIER}, ou {@code null} si elle est absente
+     */
+    public static Path fichierDepuisProprietes() {
+        String fichier = System.getProperty(PROPRIETE_FICHIER);
+        return fichier == null || fichier.isEmpty() ? null : Path.of(fichier);
+    }
+
+    /**
+     * Enregistre la création d'une partie
+     *
+     * @param salle      identifiant de la salle de la partie
+     * @param graine     graine du générateur aléatoire de la partie
+     * @param nomJoueurs noms des joueurs
+     */
+    public void enregistrerCreation(String salle, long graine, String[] nomJoueurs) {
+        ajouter(enregistrement(CREATION, salle, sortie -> {
+            sortie.writeLong(graine);
+            sortie.writeByte(nomJoueurs.length);
+            for (String nom : nomJoueurs) {
+                sortie.writeUTF(nom);
+            }
+        }));
+    }
+
+    /**
+     * Enregistre une entrée lue par une partie
+     */
+    public void enregistrerEntree(String salle, String entree) {
+        ajouter(enregistrement(ENTREE, salle, sortie -> sortie.writeUTF(entree)));
+    }
+
+    /**
+     * Enregistre la fin d'une partie (elle ne sera pas reconstruite)
+     */
+    public void enregistrerFin(String salle) {
+        ajouter(enregistrement(FIN, salle, sortie -> { }));
+    }
+
+    private interface Contenu {
+        void ecrire(DataOutputStream sortie) throws IOException;
+    }
+
+    private static byte[] enregistrement(byte type, String salle, Contenu contenu) {
+        ByteArrayOutputStream octets = new ByteArrayOutputStream(64);
+        try (DataOutputStream sortie = new DataOutputStream(octets)) {
+            sortie.writeInt(0);
+            sortie.writeInt(0);
+            sortie.writeByte(type);
+            sortie.writeUTF(salle);
+            contenu.ecrire(sortie);
+        } catch (IOException e) {
+            // l'écriture se fait en mémoire : seule une chaîne trop longue pour writeUTF provoque une erreur
+            throw new IllegalArgumentException(e);
+        }
+        ByteBuffer tampon = ByteBuffer.wrap(octets.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(tampon.array(), TAILLE_ENTETE, tampon.capacity() - TAILLE_ENTETE);
+        tampon.putInt(0, tampon.capacity() - TAILLE_ENTETE);
+        tampon.putInt(4, (int) crc.getValue());
+        return tampon.array();
+    }
+
+    private synchronized void ajouter(byte[] enregistrement) {
+        if (ferme) {
+            throw new IllegalStateException("Journal fermé");
+        }
+        if (enregistrement.length > tailleZone) {
+            throw new IllegalArgumentException("Enregistrement trop long : " + enregistrement.length + " octets");
+        }
+        if (zone.remaining() < enregistrement.length) {
+            // zone pleine (rare) : elle est écrite sur le disque avant de passer à la suivante
+            zone.force();
+            debutZone += tailleZone;
+            try {
+                zone = canal.map(FileChannel.MapMode.READ_WRITE, debutZone, tailleZone);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            debutModifie = finModifie = 0;
+        }
+        zone.put(enregistrement);
+        finModifie = zone.position();
+    }
+
+    /**
+     * Écrit sur le disque les enregistrements ajoutés depuis la dernière synchronisation
+     * (les ajouts ne sont pas bloqués pendant l'écriture)
+     */
+    public void synchroniser() {
+        MappedByteBuffer aEcrire;
+        int debut;
+        int fin;
+        synchronized (this) {
+            aEcrire = zone;
+            debut = debutModifie;
+            fin = finModifie;
+            debutModifie = finModifie;
+        }
+        if (fin > debut) {
+            aEcrire.force(debut, fin - debut);
+        }
+    }
+
+    private void synchroniserEnBoucle() {
+        try {
+            while (!ferme) {
+                Thread.sleep(DELAI_SYNCHRONISATION);
+                synchroniser();
+            }
+        } catch (InterruptedException e) {
+            // fermeture du journal
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (ferme) {
+                return;
+            }
+            ferme = true;
+        }
+        synchronisation.interrupt();
+        synchroniser();
+        canal.close();
+    }
+
+    /**
+     * Relit un journal et renvoie les parties qui n'ont pas été terminées
+     *
+     * @param fichier le fichier du journal
+     * @return les parties, indexées par l'identifiant de leur salle (dans l'ordre de leur création)
+     */
+    public static Map<String, Partie> lire(Path fichier) throws IOException {
+        return lire(fichier, TAILLE_ZONE);
+    }
+
+    static Map<String, Partie> lire(Path fichier, int tailleZone) throws IOException {
+        Map<String, Partie> parties = new LinkedHashMap<>();
+        if (Files.exists(fichier)) {
+            try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+                lire(canal, tailleZone, parties);
+            }
+        }
+        return parties;
+    }
+
+    /**
+     * Remplace un journal par un journal qui ne contient que les parties non
+     * terminées (création et entrées), et renvoie ces parties
+     *
+     * @param fichier le fichier du journal
+     * @return les parties, indexées par l'identifiant de leur salle (dans l'ordre de leur création)
+     */
+    public static Map<String, Partie> compacter(Path fichier) throws IOException {
+        Map<String, Partie> parties = lire(fichier);
+        Path temporaire = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+        Files.deleteIfExists(temporaire);
+        try (Journal compact = new Journal(temporaire)) {
+            for (Partie partie : parties.values()) {
+                compact.enregistrerCreation(partie.salle, partie.graine, partie.getNomJoueurs());
+                for (String entree : partie.entrees) {
+                    compact.enregistrerEntree(partie.salle, entree);
+                }
+            }
+        }
+        Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return parties;
+    }
+
+    /**
+     * Lit les enregistrements valides d'un journal
+     *
+     * @return la position qui suit le dernier enregistrement valide
+     */
+    private static long lire(FileChannel canal, int tailleZone, Map<String, Partie> parties) throws IOException {
+        long taille = canal.size();
+        for (long debutZone = 0; debutZone < taille; debutZone += tailleZone) {
+            ByteBuffer zone = canal.map(FileChannel.MapMode.READ_ONLY, debutZone,
+                    Math.min(tailleZone, taille - debutZone));
+            boolean debut = true;
+            while (zone.remaining() >= TAILLE_ENTETE) {
+                int position = zone.position();
+                int longueur = zone.getInt();
+                int crc = zone.getInt();
+                if (longueur <= 0 || longueur > zone.remaining()) {
+                    zone.position(position);
+                    break;
+                }
+                byte[] contenu = new byte[longueur];
+                zone.get(contenu);
+                CRC32 calcul = new CRC32();
+                calcul.update(contenu);
+                if ((int) calcul.getValue() != crc || !appliquer(contenu, parties)) {
+                    // enregistrement écrit partiellement : fin du journal
+                    return debutZone + position;
+                }
+                debut = false;
+            }
+            if (debut || debutZone + tailleZone >= taille) {
+                // zone vide, ou dernière zone du fichier
+                return debutZone + zone.position();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Applique un enregistrement aux parties lues
+     *
+     * @return {@code false} si l'enregistrement est illisible
+     */
+    private static boolean appliquer(byte[] contenu, Map<String, Partie> parties) {
+        try (DataInputStream entree = new DataInputStream(new ByteArrayInputStream(contenu))) {
+            byte type = entree.readByte();
+            String salle = entree.readUTF();
+            switch (type) {
+                case CREATION:
+                    long graine = entree.readLong();
+                    int nbJoueurs = entree.readByte();
+                    List<String> noms = new ArrayList<>();
+                    for (int i = 0; i < nbJoueurs; i++) {
+                        noms.add(entree.readUTF());
+                    }
+                    parties.put(salle, new Partie(salle, graine, List.copyOf(noms)));
+                    return true;
+                case ENTREE:
+                    String ligne = entree.readUTF();
+                    Partie partie = parties.get(salle);
+                    if (partie != null) {
+                        partie.entrees.add(ligne);
+                    }
+                    return true;
+                case FIN:
+                    parties.remove(salle);
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
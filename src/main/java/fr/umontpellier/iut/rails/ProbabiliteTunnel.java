@@ -0,0 +1,144 @@
+package fr.umontpellier.iut.rails;
+
+/**
+ * Loi de probabilité du supplément à payer pour capturer un tunnel.
+ * <p>
+ * Lorsqu'un joueur capture un tunnel, 3 cartes sont retournées (voir
+ * {@code Joueur.nbCartesAPoserEnPlus}) et chaque carte de la couleur de la
+ * route ou locomotive ajoute une carte à payer. Vu du joueur, ces cartes sont tirées
+ * sans remise parmi les cartes qu'il ne voit pas (pile de pioche et défausse) :
+ * le supplément suit donc une loi hypergéométrique qui ne dépend que du nombre
+ * de cartes invisibles et du nombre de cartes correspondantes parmi elles.
+ * <p>
+ * Toutes les lois possibles pour un paquet de 110 cartes sont calculées une
+ * seule fois au chargement de la classe, si bien qu'une requête n'est qu'une
+ * lecture dans un tableau.
+ */
+public final class ProbabiliteTunnel {
+    /**
+     * Nombre de cartes retournées lors de la capture d'un tunnel
+     */
+    public static final int NB_CARTES_RETOURNEES = 3;
+    /**
+     * Nombre total de cartes wagon du jeu (8 x 12 cartes de couleur + 14 locomotives)
+     */
+    private static final int NB_CARTES_MAX = 110;
+    /**
+     * LOIS[n][k][s] : probabilité d'un supplément de s cartes lorsque k cartes
+     * correspondantes sont parmi n cartes invisibles
+     */
+    private static final double[][][] LOIS = new double[NB_CARTES_MAX + 1][][];
+
+    static {
+        for (int n = 0; n <= NB_CARTES_MAX; n++) {
+            LOIS[n] = new double[n + 1][];
+            for (int k = 0; k <= n; k++) {
+                LOIS[n][k] = calculerLoi(k, n);
+            }
+        }
+    }
+
+    private ProbabiliteTunnel() {
+    }
+
+    /**
+     * Renvoie la probabilité que le supplément soit exactement de {@code s} cartes
+     *
+     * @param s                  nombre de cartes supplémentaires (entre 0 et 3)
+     * @param nbCorrespondantes  nombre de cartes invisibles de la couleur de la
+     *                           route ou locomotives
+     * @param nbCartesInvisibles nombre total de cartes invisibles (pioche + défausse)
+     */
+    public static double probabilite(int s, int nbCorrespondantes, int nbCartesInvisibles) {
+        if (s < 0 || s > NB_CARTES_RETOURNEES) {
+            return 0;
+        }
+        return loi(nbCorrespondantes, nbCartesInvisibles)[s];
+    }
+
+    /**
+     * Renvoie l'espérance du supplément (en nombre de cartes)
+     *
+     * @param nbCorrespondantes  nombre de cartes invisibles de la couleur de la
+     *                           route ou locomotives
+     * @param nbCartesInvisibles nombre total de cartes invisibles (pioche + défausse)
+     */
+    public static double esperance(int nbCorrespondantes, int nbCartesInvisibles) {
+        double[] loi = loi(nbCorrespondantes, nbCartesInvisibles);
+        double res = 0;
+        for (int s = 1; s <= NB_CARTES_RETOURNEES; s++) {
+            res += s * loi[s];
+        }
+        return res;
+    }
+
+    /**
+     * Renvoie la loi du supplément pour un tunnel d'une partie, calculée à partir
+     * des cartes de la pile de pioche et de la défausse.
+     * <p>
+     * Les cartes correspondantes sont celles que compte le moteur de jeu
+     * ({@code Joueur.nbCartesAPoserEnPlus}) : les cartes de la couleur de la
+     * route et les locomotives. Pour un tunnel gris, seules les locomotives
+     * ajoutent donc une carte à payer.
+     *
+     * @param jeu    la partie en cours
+     * @param tunnel le tunnel à capturer
+     * @return un tableau de 4 probabilités (supplément de 0, 1, 2 ou 3 cartes)
+     */
+    public static double[] distribution(Jeu jeu, Tunnel tunnel) {
+        CouleurWagon couleur = tunnel.getCouleur();
+        int nbCorrespondantes = 0;
+        for (CouleurWagon c : jeu.getPileCartesWagon()) {
+            if (c == couleur || c == CouleurWagon.LOCOMOTIVE) {
+                nbCorrespondantes++;
+            }
+        }
+        for (CouleurWagon c : jeu.getDefausseCartesWagon()) {
+            if (c == couleur || c == CouleurWagon.LOCOMOTIVE) {
+                nbCorrespondantes++;
+            }
+        }
+        int nbCartesInvisibles = jeu.getPileCartesWagon().size() + jeu.getDefausseCartesWagon().size();
+        return loi(nbCorrespondantes, nbCartesInvisibles).clone();
+    }
+
+    /**
+     * Renvoie la loi précalculée (le tableau renvoyé est partagé et ne doit pas
+     * être modifié)
+     */
+    private static double[] loi(int nbCorrespondantes, int nbCartesInvisibles) {
+        if (nbCorrespondantes < 0 || nbCorrespondantes > nbCartesInvisibles) {
+            throw new IllegalArgumentException(
+                    "Nombre de cartes invalide : " + nbCorrespondantes + " / " + nbCartesInvisibles);
+        }
+        if (nbCartesInvisibles > NB_CARTES_MAX) {
+            return calculerLoi(nbCorrespondantes, nbCartesInvisibles);
+        }
+        return LOIS[nbCartesInvisibles][nbCorrespondantes];
+    }
+
+    /**
+     * Calcule la loi hypergéométrique du nombre de cartes correspondantes parmi
+     * min(3, n) cartes tirées sans remise
+     */
+    private static double[] calculerLoi(int k, int n) {
+        double[] loi = new double[NB_CARTES_RETOURNEES + 1];
+        int tirage = Math.min(NB_CARTES_RETOURNEES, n);
+        double total = combinaisons(n, tirage);
+        for (int s = 0; s <= tirage; s++) {
+            loi[s] = combinaisons(k, s) * combinaisons(n - k, tirage - s) / total;
+        }
+        return loi;
+    }
+
+    private static double combinaisons(int n, int p) {
+        if (p < 0 || p > n) {
+            return 0;
+        }
+        double res = 1;
+        for (int i = 0; i < p; i++) {
+            res = res * (n - i) / (i + 1);
+        }
+        return res;
+    }
+}
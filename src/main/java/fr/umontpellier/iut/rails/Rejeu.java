@@ -0,0 +1,176 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rejeu d'une partie à partir de sa graine et de la suite des entrées
+ * qu'elle a lues (par exemple une partie du journal du serveur, voir
+ * {@link Journal}).
+ * <p>
+ * Le rejeu s'exécute dans le thread appelant et lit ses entrées dans une
+ * liste, comme {@code IOJeu} : il n'attend aucune entrée, n'affiche rien sur
+ * la console, ne construit aucun état pour les clients et n'envoie rien au
+ * serveur. Il s'arrête à la fin de la partie, lorsque toutes les entrées ont
+ * été lues, ou au début d'un tour donné.
+ */
+public class Rejeu extends Jeu {
+    /**
+     * Interrompt le rejeu (lancée depuis la partie, arrêtée par {@link #rejouerJusquauTour(int)})
+     */
+    private static final class FinRejeu extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private FinRejeu() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final List<String> entrees;
+    private int nbEntreesLues;
+    /**
+     * Nombre d'entrées lues avant le début de chaque tour rejoué
+     */
+    private final List<Integer> debutsTours = new ArrayList<>();
+    /**
+     * Numéro du tour au début duquel le rejeu s'arrête
+     */
+    private int tourArret;
+    private boolean rejoue;
+    private boolean terminee;
+
+    /**
+     * @param nomJoueurs noms des joueurs
+     * @param graine     graine de la partie rejouée
+     * @param entrees    entrées lues par la partie rejouée, dans l'ordre
+     */
+    public Rejeu(String[] nomJoueurs, long graine, List<String> entrees) {
+        super(nomJoueurs, graine);
+        this.entrees = List.copyOf(entrees);
+    }
+
+    /**
+     * @return le rejeu d'une partie du journal
+     */
+    public static Rejeu depuis(Journal.Partie partie) {
+        return new Rejeu(partie.getNomJoueurs(), partie.getGraine(), partie.getEntrees());
+    }
+
+    /**
+     * Rejoue la partie jusqu'à sa fin, ou jusqu'à ce que toutes les entrées aient été lues
+     *
+     * @return ce rejeu
+     */
+    public Rejeu rejouer() {
+        return rejouerJusquauTour(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Rejoue la partie jusqu'au début d'un tour (avant que le joueur ne joue),
+     * jusqu'à sa fin, ou jusqu'à ce que toutes les entrées aient été lues
+     *
+     * @param tour numéro du tour (à partir de 1, voir {@link #getNbTours()})
+     * @return ce rejeu
+     * @throws IllegalStateException si la partie a déjà été rejouée
+     */
+    public Rejeu rejouerJusquauTour(int tour) {
+        if (rejoue) {
+            throw new IllegalStateException("Partie déjà rejouée");
+        }
+        rejoue = true;
+        tourArret = tour;
+        try {
+            run();
+            terminee = true;
+        } catch (FinRejeu e) {
+            // arrêt demandé, ou plus aucune entrée
+        }
+        return this;
+    }
+
+    /**
+     * @return vrai si la partie rejouée est allée jusqu'à sa fin
+     */
+    public boolean estTerminee() {
+        return terminee;
+    }
+
+    /**
+     * @return le nombre d'entrées lues par la partie rejouée
+     */
+    public int getNbEntreesLues() {
+        return nbEntreesLues;
+    }
+
+    /**
+     * @return les entrées de la partie rejouée (y compris celles qui n'ont pas été lues)
+     */
+    public List<String> getEntrees() {
+        return entrees;
+    }
+
+    /**
+     * @param tour numéro d'un tour rejoué (à partir de 1)
+     * @return le nombre d'entrées lues avant le début du tour
+     */
+    public int getDebutTour(int tour) {
+        return debutsTours.get(tour - 1);
+    }
+
+    @Override
+    protected void commencerTour(int tour) {
+        if (tour >= tourArret) {
+            throw new FinRejeu();
+        }
+        debutsTours.add(nbEntreesLues);
+    }
+
+    @Override
+    public String lireLigne() {
+        if (nbEntreesLues == entrees.size()) {
+            throw new FinRejeu();
+        }
+        return entrees.get(nbEntreesLues++);
+    }
+
+    @Override
+    public String lireChoix(String instruction, Set<String> choix, Collection<String> boutons, boolean peutPasser) {
+        return lireLigne();
+    }
+
+    @Override
+    public void prompt(String instruction, Collection<String> boutons, boolean peutPasser) {
+        // aucun affichage
+    }
+
+    /**
+     * Rejoue une partie du journal du serveur et affiche son état :
+     * {@code Rejeu fichier salle [tour]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage : Rejeu fichier salle [tour]");
+            return;
+        }
+        Journal.Partie partie = Journal.lire(Path.of(args[0])).get(args[1]);
+        if (partie == null) {
+            System.err.println("Salle absente du journal (ou partie terminée) : " + args[1]);
+            return;
+        }
+        Rejeu rejeu = depuis(partie);
+        long debut = System.nanoTime();
+        if (args.length > 2) {
+            rejeu.rejouerJusquauTour(Integer.parseInt(args[2]));
+        } else {
+            rejeu.rejouer();
+        }
+        System.out.printf("%d entrées rejouées (%d tours) en %.2f ms%n", rejeu.getNbEntreesLues(),
+                rejeu.getNbTours(), (System.nanoTime() - debut) / 1e6);
+        System.out.println(rejeu);
+        System.out.println("Cartes visibles : " + rejeu.getCartesWagonVisibles());
+    }
+}
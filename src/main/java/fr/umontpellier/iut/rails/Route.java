@@ -1,6 +1,8 @@
 package fr.umontpellier.iut.rails;
 
-import java.util.HashMap;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.util.Objects;
 
 public class Route {
@@ -96,14 +98,14 @@ public class Route {
     }
 
     /**
-     * @return un objet simple représentant les informations de la route
+     * Écrit la représentation JSON de la route
      */
-    public Object asPOJO() {
-        HashMap<String, Object> data = new HashMap<>();
-        data.put("nom", getNom());
+    public void ecrireJson(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.name("nom").value(getNom());
         if (proprietaire != null) {
-            data.put("proprietaire", proprietaire.getCouleur());
+            out.name("proprietaire").value(proprietaire.getCouleur().name());
         }
-        return data;
+        out.endObject();
     }
 }
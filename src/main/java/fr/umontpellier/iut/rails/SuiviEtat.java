@@ -0,0 +1,458 @@
+package fr.umontpellier.iut.rails;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sérialisation des états successifs d'une partie envoyés aux clients, avec
+ * suivi des différences pour produire des mises à jour différentielles.
+ * <p>
+ * L'état est écrit directement en JSON dans un tampon réutilisé d'un appel à
+ * l'autre, sans construire d'objets intermédiaires. Chaque élément de l'état
+ * (ville, route, joueur, piles...) est écrit une seule fois sous forme de
+ * fragment JSON, et les fragments sont réunis dans un {@link Instantane} à
+ * partir duquel sont assemblés les messages envoyés aux clients :
+ * <ul>
+ * <li>l'état complet au format historique, où chaque ville et route est
+ * désignée par son nom ;</li>
+ * <li>l'état complet compact ({@code "type": "etat"}), où les villes et routes
+ * sont désignées par leur identifiant dans le plateau (voir
+ * {@link #plateau(Jeu)}) et ne contiennent que leur propriétaire ;</li>
+ * <li>la différence compacte avec l'état précédent ({@code "type": "delta"}).</li>
+ * </ul>
+ * Chaque message est assemblé pour une vue : celle d'un joueur (qui ne voit
+ * que le nombre de cartes et de destinations de ses adversaires), celle d'un
+ * spectateur (qui ne voit la main d'aucun joueur), ou la vue omnisciente du
+ * format historique. Chaque joueur a donc un fragment privé (complet) et un
+ * fragment public.
+ * <p>
+ * Chaque fragment est comparé à sa représentation précédente : un élément
+ * inchangé ne provoque aucune allocation et réutilise la chaîne déjà produite.
+ * Chaque état enregistré reçoit un numéro de version. La différence entre deux
+ * versions consécutives ne contient que les villes, routes et joueurs dont la
+ * représentation a changé, les piles si elles ont changé et les nouvelles
+ * lignes du log. L'instruction en cours est toujours incluse.
+ * <p>
+ * Le log est borné (voir {@link Historique}) : un état complet ne contient
+ * que les dernières lignes, et les messages compacts indiquent le numéro de
+ * séquence de leur première ligne ({@code "sequenceLog"}). Un client qui
+ * constate un trou dans les numéros redemande l'état complet.
+ * <p>
+ * Une instance n'est utilisée que par le thread de la partie, mais les
+ * instantanés produits sont immuables et peuvent être lus par n'importe quel
+ * thread.
+ */
+public class SuiviEtat {
+    /**
+     * Vue qui montre la main de tous les joueurs (format historique)
+     */
+    public static final int OMNISCIENT = -1;
+    /**
+     * Vue d'un spectateur, qui ne montre la main d'aucun joueur
+     */
+    public static final int SPECTATEUR = -2;
+
+    private static final String[] AUCUN = new String[0];
+
+    /**
+     * Écriture d'un élément du plateau en JSON
+     */
+    private interface Ecriture<T> {
+        void ecrire(T element, int id, JsonWriter out) throws IOException;
+    }
+
+    /**
+     * Fragments JSON d'un état de la partie, à partir desquels sont assemblés les messages de chaque vue
+     */
+    public static final class Instantane {
+        private final long version;
+        private final int joueurCourant;
+        private final String prompt;
+        private final String promptSansBoutons;
+        private final String villesNommees;
+        private final String routesNommees;
+        private final String[] villes;
+        private final String[] routes;
+        private final boolean[] villesModifiees;
+        private final boolean[] routesModifiees;
+        private final String[] joueursPrives;
+        private final String[] joueursPublics;
+        private final boolean[] privesModifies;
+        private final boolean[] publicsModifies;
+        private final String piles;
+        private final boolean pilesModifiees;
+        private final long sequenceLog;
+        private final String log;
+        private final long sequenceNouveauLog;
+        private final String nouveauLog;
+
+        private Instantane(long version, int joueurCourant, String prompt, String promptSansBoutons,
+                           String villesNommees, String routesNommees, String[] villes, String[] routes,
+                           boolean[] villesModifiees, boolean[] routesModifiees, String[] joueursPrives,
+                           String[] joueursPublics, boolean[] privesModifies, boolean[] publicsModifies,
+                           String piles, boolean pilesModifiees, long sequenceLog, String log,
+                           long sequenceNouveauLog, String nouveauLog) {
+            this.version = version;
+            this.joueurCourant = joueurCourant;
+            this.prompt = prompt;
+            this.promptSansBoutons = promptSansBoutons;
+            this.villesNommees = villesNommees;
+            this.routesNommees = routesNommees;
+            this.villes = villes;
+            this.routes = routes;
+            this.villesModifiees = villesModifiees;
+            this.routesModifiees = routesModifiees;
+            this.joueursPrives = joueursPrives;
+            this.joueursPublics = joueursPublics;
+            this.privesModifies = privesModifies;
+            this.publicsModifies = publicsModifies;
+            this.piles = piles;
+            this.pilesModifiees = pilesModifiees;
+            this.sequenceLog = sequenceLog;
+            this.log = log;
+            this.sequenceNouveauLog = sequenceNouveauLog;
+            this.nouveauLog = nouveauLog;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public int getNbJoueurs() {
+            return joueursPrives.length;
+        }
+
+        /**
+         * @return le message JSON de l'état complet au format historique, pour une vue
+         */
+        public String etatComplet(int vue) {
+            StringBuilder sb = debut(null, vue);
+            sb.append(",\"villes\":").append(villesNommees);
+            sb.append(",\"routes\":").append(routesNommees);
+            ajouterJoueurs(sb, vue, false);
+            sb.append(",\"piles\":").append(piles);
+            return sb.append(",\"log\":").append(log).append('}').toString();
+        }
+
+        /**
+         * @return le message JSON de l'état complet au format compact, pour une vue
+         */
+        public String etatCompact(int vue) {
+            StringBuilder sb = debut("etat", vue);
+            ajouterFragments(sb, "villes", villes, null);
+            ajouterFragments(sb, "routes", routes, null);
+            ajouterJoueurs(sb, vue, false);
+            sb.append(",\"piles\":").append(piles);
+            sb.append(",\"sequenceLog\":").append(sequenceLog);
+            return sb.append(",\"log\":").append(log).append('}').toString();
+        }
+
+        /**
+         * @return le message JSON de la différence avec l'état précédent, pour une vue
+         */
+        public String delta(int vue) {
+            StringBuilder sb = debut("delta", vue);
+            ajouterFragments(sb, "villes", villes, villesModifiees);
+            ajouterFragments(sb, "routes", routes, routesModifiees);
+            ajouterJoueurs(sb, vue, true);
+            if (pilesModifiees) {
+                sb.append(",\"piles\":").append(piles);
+            }
+            sb.append(",\"sequenceLog\":").append(sequenceNouveauLog);
+            return sb.append(",\"log\":").append(nouveauLog).append('}').toString();
+        }
+
+        /**
+         * Indique si une vue montre la main d'un joueur
+         */
+        private static boolean voit(int vue, int joueur) {
+            return vue == OMNISCIENT || vue == joueur;
+        }
+
+        private StringBuilder debut(String type, int vue) {
+            StringBuilder sb = new StringBuilder(4096);
+            sb.append('{');
+            if (type != null) {
+                sb.append("\"type\":\"").append(type).append("\",");
+            }
+            sb.append("\"version\":").append(version);
+            // les choix proposés ne sont visibles que par le joueur qui les fait
+            sb.append(",\"prompt\":").append(voit(vue, joueurCourant) ? prompt : promptSansBoutons);
+            return sb;
+        }
+
+        private void ajouterJoueurs(StringBuilder sb, int vue, boolean modifiesSeulement) {
+            sb.append(",\"joueurs\":[");
+            boolean premier = true;
+            for (int i = 0; i < joueursPrives.length; i++) {
+                boolean prive = voit(vue, i);
+                if (modifiesSeulement && !(prive ? privesModifies[i] : publicsModifies[i])) {
+                    continue;
+                }
+                if (!premier) {
+                    sb.append(',');
+                }
+                sb.append(prive ? joueursPrives[i] : joueursPublics[i]);
+                premier = false;
+            }
+            sb.append(']');
+        }
+
+        private static void ajouterFragments(StringBuilder sb, String nom, String[] fragments, boolean[] modifies) {
+            sb.append(",\"").append(nom).append("\":[");
+            boolean premier = true;
+            for (int i = 0; i < fragments.length; i++) {
+                if (modifies != null && !modifies[i]) {
+                    continue;
+                }
+                if (!premier) {
+                    sb.append(',');
+                }
+                sb.append(fragments[i]);
+                premier = false;
+            }
+            sb.append(']');
+        }
+    }
+
+    private final StringWriter sortie = new StringWriter();
+    private final StringBuffer tampon = sortie.getBuffer();
+    private final JsonWriter json = new JsonWriter(sortie);
+
+    /**
+     * Numéro de version du dernier état enregistré
+     */
+    private long version;
+    private String[] villes = AUCUN;
+    private String[] routes = AUCUN;
+    private String[] joueursPrives = AUCUN;
+    private String[] joueursPublics = AUCUN;
+    private String piles;
+    /**
+     * Numéro de séquence de la première ligne du log qui n'a pas encore été envoyée
+     */
+    private long sequenceLog;
+
+    public SuiviEtat() {
+        // plusieurs valeurs de premier niveau sont écrites successivement dans le même JsonWriter
+        json.setLenient(true);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Enregistre l'état actuel de la partie
+     *
+     * @param jeu         la partie
+     * @param log         log de la partie (seules les dernières lignes sont conservées)
+     * @param instruction l'instruction en cours
+     * @param boutons     les boutons proposés au joueur courant
+     * @param peutPasser  indique si le joueur courant peut passer
+     * @return les fragments de l'état, à partir desquels les messages de chaque vue sont assemblés
+     */
+    public Instantane enregistrer(Jeu jeu, Historique log, String instruction, Collection<String> boutons,
+                                  boolean peutPasser) {
+        try {
+            version++;
+            String prompt = ecrirePrompt(jeu, instruction, boutons, peutPasser);
+            String promptSansBoutons = boutons.isEmpty()
+                    ? prompt : ecrirePrompt(jeu, instruction, List.of(), peutPasser);
+
+            boolean[] villesModifiees = new boolean[jeu.getVilles().size()];
+            boolean[] routesModifiees = new boolean[jeu.getRoutes().size()];
+            boolean[] privesModifies = new boolean[jeu.getJoueurs().size()];
+            boolean[] publicsModifies = new boolean[jeu.getJoueurs().size()];
+            villes = comparer(villes, jeu.getVilles(),
+                    (ville, id, out) -> ecrireProprietaire(id, ville.getProprietaire()), villesModifiees);
+            routes = comparer(routes, jeu.getRoutes(),
+                    (route, id, out) -> ecrireProprietaire(id, route.getProprietaire()), routesModifiees);
+            joueursPrives = comparer(joueursPrives, jeu.getJoueurs(),
+                    (joueur, id, out) -> joueur.ecrireJson(out), privesModifies);
+            joueursPublics = comparer(joueursPublics, jeu.getJoueurs(),
+                    (joueur, id, out) -> joueur.ecrireJsonPublic(out), publicsModifies);
+
+            tampon.setLength(0);
+            ecrirePiles(jeu);
+            boolean pilesModifiees = piles == null || !piles.contentEquals(tampon);
+            if (pilesModifiees) {
+                piles = tampon.toString();
+            }
+
+            tampon.setLength(0);
+            json.beginArray();
+            for (Ville ville : jeu.getVilles()) {
+                ville.ecrireJson(json);
+            }
+            json.endArray();
+            json.flush();
+            String villesNommees = tampon.toString();
+            tampon.setLength(0);
+            json.beginArray();
+            for (Route route : jeu.getRoutes()) {
+                route.ecrireJson(json);
+            }
+            json.endArray();
+            json.flush();
+            String routesNommees = tampon.toString();
+
+            String logComplet = ecrireLog(log, log.getPremiereSequence());
+            // seules les nouvelles lignes sont envoyées dans les différences
+            long sequenceNouveauLog = Math.max(sequenceLog, log.getPremiereSequence());
+            String nouveauLog = ecrireLog(log, sequenceNouveauLog);
+            sequenceLog = log.getProchaineSequence();
+
+            return new Instantane(version, jeu.getJoueurs().indexOf(jeu.getJoueurCourant()), prompt,
+                    promptSansBoutons, villesNommees, routesNommees, villes, routes, villesModifiees,
+                    routesModifiees, joueursPrives, joueursPublics, privesModifies, publicsModifies, piles,
+                    pilesModifiees, log.getPremiereSequence(), logComplet, sequenceNouveauLog, nouveauLog);
+        } catch (IOException e) {
+            // impossible : l'écriture se fait en mémoire
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String ecrirePrompt(Jeu jeu, String instruction, Collection<String> boutons, boolean peutPasser)
+            throws IOException {
+        tampon.setLength(0);
+        json.beginObject();
+        json.name("instruction").value(instruction);
+        json.name("boutons").beginArray();
+        for (String bouton : boutons) {
+            json.value(bouton);
+        }
+        json.endArray();
+        json.name("nomJoueurCourant").value(jeu.getJoueurCourant().getNom());
+        json.name("peutPasser").value(peutPasser);
+        json.endObject();
+        json.flush();
+        return tampon.toString();
+    }
+
+    /**
+     * Écrit la partie dynamique d'une ville ou d'une route : son identifiant et son propriétaire
+     */
+    private void ecrireProprietaire(int id, Joueur proprietaire) throws IOException {
+        json.beginObject();
+        json.name("id").value(id);
+        if (proprietaire != null) {
+            json.name("proprietaire").value(proprietaire.getCouleur().name());
+        }
+        json.endObject();
+    }
+
+    private void ecrirePiles(Jeu jeu) throws IOException {
+        json.beginObject();
+        json.name("pileCartesWagon").value(jeu.getPileCartesWagon().size());
+        json.name("pileDestinations").value(jeu.getPileDestinations().size());
+        json.name("defausseCartesWagon");
+        ecrireCartes(jeu.getDefausseCartesWagon());
+        json.name("cartesWagonVisibles");
+        ecrireCartes(jeu.getCartesWagonVisibles());
+        json.endObject();
+        json.flush();
+    }
+
+    private void ecrireCartes(List<CouleurWagon> cartes) throws IOException {
+        json.beginArray();
+        for (CouleurWagon carte : cartes) {
+            json.value(carte.name());
+        }
+        json.endArray();
+    }
+
+    private String ecrireLog(Historique log, long debut) throws IOException {
+        tampon.setLength(0);
+        json.beginArray();
+        for (long i = debut; i < log.getProchaineSequence(); i++) {
+            json.value(log.get(i));
+        }
+        json.endArray();
+        json.flush();
+        return tampon.toString();
+    }
+
+    /**
+     * Écrit chaque élément et le compare à sa représentation précédente (de
+     * même indice), en indiquant dans {@code modifies} les éléments dont la
+     * représentation a changé.
+     *
+     * @return les représentations actuelles des éléments (un nouveau tableau,
+     * les instantanés précédents ne sont pas modifiés)
+     */
+    private <T> String[] comparer(String[] anciens, List<T> elements, Ecriture<T> ecriture,
+                                  boolean[] modifies) throws IOException {
+        String[] nouveaux = new String[elements.size()];
+        for (int i = 0; i < elements.size(); i++) {
+            tampon.setLength(0);
+            ecriture.ecrire(elements.get(i), i, json);
+            json.flush();
+            String ancien = i < anciens.length ? anciens[i] : null;
+            if (ancien != null && ancien.contentEquals(tampon)) {
+                nouveaux[i] = ancien;
+            } else {
+                nouveaux[i] = tampon.toString();
+                modifies[i] = true;
+            }
+        }
+        return nouveaux;
+    }
+
+    /**
+     * Renvoie la description JSON des éléments fixes du plateau
+     * ({@code "type": "plateau"}), envoyée une seule fois à chaque client qui
+     * utilise le format compact : l'identifiant de chaque ville et route est
+     * son indice dans la liste, et les routes donnent les identifiants de
+     * leurs extrémités, leur longueur, leur couleur et leur type.
+     *
+     * @param jeu la partie
+     * @return la description du plateau
+     */
+    public static String plateau(Jeu jeu) {
+        try {
+            StringWriter sortie = new StringWriter();
+            JsonWriter out = new JsonWriter(sortie);
+            List<Ville> villes = jeu.getVilles();
+            out.beginObject();
+            out.name("type").value("plateau");
+            out.name("villes").beginArray();
+            for (int i = 0; i < villes.size(); i++) {
+                out.beginObject();
+                out.name("id").value(i);
+                out.name("nom").value(villes.get(i).getNom());
+                out.endObject();
+            }
+            out.endArray();
+            out.name("routes").beginArray();
+            List<Route> routes = jeu.getRoutes();
+            for (int i = 0; i < routes.size(); i++) {
+                Route route = routes.get(i);
+                out.beginObject();
+                out.name("id").value(i);
+                out.name("nom").value(route.getNom());
+                out.name("ville1").value(villes.indexOf(route.getVille1()));
+                out.name("ville2").value(villes.indexOf(route.getVille2()));
+                out.name("longueur").value(route.getLongueur());
+                out.name("couleur").value(route.getCouleur().name());
+                if (route instanceof Tunnel) {
+                    out.name("tunnel").value(true);
+                } else if (route instanceof Ferry) {
+                    out.name("nbLocomotives").value(((Ferry) route).getNbLocomotives());
+                }
+                out.endObject();
+            }
+            out.endArray();
+            out.endObject();
+            out.flush();
+            return sortie.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
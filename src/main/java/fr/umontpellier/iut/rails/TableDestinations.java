@@ -0,0 +1,343 @@
+package fr.umontpellier.iut.rails;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Table précalculée de la valeur des destinations du jeu Europe.
+ * <p>
+ * La table est produite hors-ligne par simulation (voir {@link #main(String[])}) :
+ * à chaque simulation, une partie des routes du plateau est attribuée au hasard
+ * aux adversaires, puis on calcule le nombre de wagons nécessaires pour réaliser
+ * chaque destination seule et chaque paire de destinations. La table contient,
+ * pour chaque destination, le taux de réalisation (chemin existant et pas plus
+ * long que les 45 wagons d'un joueur) et le coût moyen lorsqu'elle est
+ * réalisable, et pour chaque paire de destinations la synergie moyenne (part
+ * des wagons économisés en réalisant les deux destinations ensemble).
+ * <p>
+ * La table est enregistrée dans un format binaire compact et versionné que les
+ * bots chargent au démarrage avec {@link #chargerDepuisProprietes()}.
+ */
+public class TableDestinations {
+    /**
+     * Nom de la propriété système qui indique le fichier de la table
+     */
+    public static final String PROPRIETE_FICHIER = "rails.destinations";
+    /**
+     * Fichier de la table lorsque la propriété système est absente
+     */
+    public static final String FICHIER_PAR_DEFAUT = "destinations-europe.bin";
+    /**
+     * Identifiant du format de fichier ("DEST")
+     */
+    private static final int MAGIQUE = 0x44455354;
+    /**
+     * Version du format de fichier
+     */
+    public static final int VERSION = 1;
+    /**
+     * Nombre de wagons d'un joueur en début de partie
+     */
+    private static final int NB_WAGONS = 45;
+    /**
+     * Proportion maximale des routes prises par les adversaires dans une simulation
+     */
+    private static final double OCCUPATION_MAX = 0.5;
+
+    private final List<Destination> destinations;
+    private final Map<String, Integer> indices;
+    private final int nbSimulations;
+    private final float[] tauxRealisation;
+    private final float[] coutMoyen;
+    /**
+     * Synergie de chaque paire de destinations (matrice symétrique)
+     */
+    private final float[][] synergie;
+
+    TableDestinations(List<Destination> destinations, int nbSimulations, float[] tauxRealisation,
+                              float[] coutMoyen, float[][] synergie) {
+        this.destinations = destinations;
+        this.nbSimulations = nbSimulations;
+        this.tauxRealisation = tauxRealisation;
+        this.coutMoyen = coutMoyen;
+        this.synergie = synergie;
+        indices = new HashMap<>();
+        for (int i = 0; i < destinations.size(); i++) {
+            indices.put(destinations.get(i).getNom(), i);
+        }
+    }
+
+    /**
+     * @return toutes les destinations (normales puis longues) du jeu Europe
+     */
+    public static List<Destination> destinationsEurope() {
+        List<Destination> destinations = new ArrayList<>(Destination.makeDestinationsEurope());
+        destinations.addAll(Destination.makeDestinationsLonguesEurope());
+        return destinations;
+    }
+
+    public int getNbSimulations() {
+        return nbSimulations;
+    }
+
+    public List<Destination> getDestinations() {
+        return destinations;
+    }
+
+    /**
+     * @return la proportion des simulations où la destination est réalisable, ou
+     * -1 si la destination n'est pas dans la table
+     */
+    public double getTauxRealisation(Destination d) {
+        Integer i = indices.get(d.getNom());
+        return i == null ? -1 : tauxRealisation[i];
+    }
+
+    /**
+     * @return le nombre moyen de wagons nécessaires pour réaliser la destination
+     * (lorsqu'elle est réalisable), ou -1 si la destination n'est pas dans la table
+     */
+    public double getCoutMoyen(Destination d) {
+        Integer i = indices.get(d.getNom());
+        return i == null ? -1 : coutMoyen[i];
+    }
+
+    /**
+     * @return la part moyenne des wagons économisés en réalisant les deux
+     * destinations ensemble plutôt que séparément (0 si l'une des destinations
+     * n'est pas dans la table)
+     */
+    public double getSynergie(Destination d1, Destination d2) {
+        Integer i = indices.get(d1.getNom());
+        Integer j = indices.get(d2.getNom());
+        return i == null || j == null ? 0 : synergie[i][j];
+    }
+
+    /**
+     * Calcule la table par simulation (les simulations sont réparties sur tous
+     * les processeurs disponibles).
+     *
+     * @param nbSimulations nombre de plateaux simulés
+     * @param graine        graine du générateur aléatoire (deux calculs avec la
+     *                      même graine produisent la même table)
+     */
+    public static TableDestinations calculer(int nbSimulations, long graine) {
+        Plateau plateau = Plateau.makePlateauEurope();
+        GrapheVilles graphe = new GrapheVilles(plateau.getVilles(), plateau.getRoutes());
+        List<Destination> destinations = destinationsEurope();
+        int n = destinations.size();
+
+        Accumulateur total = IntStream.range(0, nbSimulations).parallel()
+                .collect(() -> new Accumulateur(n),
+                        (acc, s) -> simuler(graphe, plateau.getRoutes(), destinations, graine + s, acc),
+                        Accumulateur::ajouter);
+
+        float[] tauxRealisation = new float[n];
+        float[] coutMoyen = new float[n];
+        float[][] synergie = new float[n][n];
+        for (int i = 0; i < n; i++) {
+            tauxRealisation[i] = (float) total.nbRealisables[i] / nbSimulations;
+            coutMoyen[i] = total.nbRealisables[i] == 0 ? 0 : (float) total.sommeCouts[i] / total.nbRealisables[i];
+            for (int j = 0; j < n; j++) {
+                synergie[i][j] = total.nbPaires[i][j] == 0 ? 0 : (float) (total.sommeSynergies[i][j] / total.nbPaires[i][j]);
+            }
+        }
+        return new TableDestinations(destinations, nbSimulations, tauxRealisation, coutMoyen, synergie);
+    }
+
+    /**
+     * Effectue une simulation : une partie des routes est attribuée aux
+     * adversaires, puis les coûts des destinations et des paires sont ajoutés à
+     * l'accumulateur.
+     */
+    private static void simuler(GrapheVilles graphe, List<Route> routes, List<Destination> destinations, long graine,
+                                Accumulateur acc) {
+        SplittableRandom random = new SplittableRandom(graine);
+        double occupation = random.nextDouble() * OCCUPATION_MAX;
+        int[] couts = new int[routes.size()];
+        for (int r = 0; r < routes.size(); r++) {
+            couts[r] = random.nextDouble() < occupation ? GrapheVilles.INFINI : routes.get(r).getLongueur();
+        }
+
+        int n = destinations.size();
+        int[] coutsSeuls = new int[n];
+        for (int i = 0; i < n; i++) {
+            coutsSeuls[i] = graphe.coutDestination(destinations.get(i), couts.clone());
+            if (coutsSeuls[i] <= NB_WAGONS) {
+                acc.nbRealisables[i]++;
+                acc.sommeCouts[i] += coutsSeuls[i];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (coutsSeuls[i] > NB_WAGONS) {
+                continue;
+            }
+            for (int j = i + 1; j < n; j++) {
+                if (coutsSeuls[j] > NB_WAGONS) {
+                    continue;
+                }
+                int[] coutsPaire = couts.clone();
+                int coutPaire = graphe.coutDestination(destinations.get(i), coutsPaire)
+                        + graphe.coutDestination(destinations.get(j), coutsPaire);
+                double s = 1 - (double) coutPaire / (coutsSeuls[i] + coutsSeuls[j]);
+                acc.sommeSynergies[i][j] += s;
+                acc.sommeSynergies[j][i] += s;
+                acc.nbPaires[i][j]++;
+                acc.nbPaires[j][i]++;
+            }
+        }
+    }
+
+    /**
+     * Enregistre la table dans un flux (le flux n'est pas fermé)
+     */
+    public void ecrire(OutputStream sortie) throws IOException {
+        DataOutputStream out = new DataOutputStream(sortie);
+        out.writeInt(MAGIQUE);
+        out.writeInt(VERSION);
+        out.writeInt(nbSimulations);
+        out.writeShort(destinations.size());
+        for (int i = 0; i < destinations.size(); i++) {
+            Destination d = destinations.get(i);
+            out.writeUTF(d.getVille1());
+            out.writeUTF(d.getVille2());
+            out.writeByte(d.getValeur());
+            out.writeFloat(tauxRealisation[i]);
+            out.writeFloat(coutMoyen[i]);
+        }
+        // la matrice de synergie est symétrique : seul le triangle supérieur est enregistré
+        for (int i = 0; i < destinations.size(); i++) {
+            for (int j = i + 1; j < destinations.size(); j++) {
+                out.writeFloat(synergie[i][j]);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Lit une table depuis un flux
+     *
+     * @throws IOException si le flux ne contient pas une table au format attendu
+     */
+    public static TableDestinations lire(InputStream entree) throws IOException {
+        DataInputStream in = new DataInputStream(entree);
+        if (in.readInt() != MAGIQUE) {
+            throw new IOException("Le fichier n'est pas une table de destinations");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Version de table non supportée : " + version + " (attendue : " + VERSION + ")");
+        }
+        int nbSimulations = in.readInt();
+        int n = in.readUnsignedShort();
+        List<Destination> destinations = new ArrayList<>(n);
+        float[] tauxRealisation = new float[n];
+        float[] coutMoyen = new float[n];
+        for (int i = 0; i < n; i++) {
+            String ville1 = in.readUTF();
+            String ville2 = in.readUTF();
+            destinations.add(new Destination(ville1, ville2, in.readUnsignedByte()));
+            tauxRealisation[i] = in.readFloat();
+            coutMoyen[i] = in.readFloat();
+        }
+        float[][] synergie = new float[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                synergie[i][j] = in.readFloat();
+                synergie[j][i] = synergie[i][j];
+            }
+        }
+        return new TableDestinations(destinations, nbSimulations, tauxRealisation, coutMoyen, synergie);
+    }
+
+    /**
+     * Charge une table enregistrée dans un fichier
+     */
+    public static TableDestinations charger(Path fichier) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(fichier))) {
+            return lire(in);
+        }
+    }
+
+    /**
+     * Charge la table indiquée par la propriété système {@value #PROPRIETE_FICHIER}
+     * (par défaut {@value #FICHIER_PAR_DEFAUT}), si le fichier existe
+     *
+     * @return la table, ou {@code null} si le fichier est absent ou invalide (un
+     * avertissement est alors affiché)
+     */
+    public static TableDestinations chargerDepuisProprietes() {
+        Path fichier = Paths.get(System.getProperty(PROPRIETE_FICHIER, FICHIER_PAR_DEFAUT));
+        if (!Files.isRegularFile(fichier)) {
+            return null;
+        }
+        try {
+            return charger(fichier);
+        } catch (IOException e) {
+            System.err.println("Table des destinations ignorée (" + fichier + ") : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Calcule la table et l'enregistre dans un fichier.
+     * <p>
+     * Arguments : chemin du fichier (par défaut {@value #FICHIER_PAR_DEFAUT}),
+     * nombre de simulations (par défaut 2000) et graine (par défaut 0).
+     */
+    public static void main(String[] args) throws IOException {
+        Path fichier = Paths.get(args.length > 0 ? args[0] : FICHIER_PAR_DEFAUT);
+        int nbSimulations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        long graine = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+        long debut = System.nanoTime();
+        TableDestinations table = calculer(nbSimulations, graine);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(fichier))) {
+            table.ecrire(out);
+        }
+        System.out.printf("%d destinations, %d simulations en %.1f s -> %s%n", table.destinations.size(),
+                nbSimulations, (System.nanoTime() - debut) / 1e9, fichier);
+    }
+
+    /**
+     * Sommes partielles des résultats de simulation
+     */
+    private static class Accumulateur {
+        private final long[] nbRealisables;
+        private final long[] sommeCouts;
+        private final double[][] sommeSynergies;
+        private final long[][] nbPaires;
+
+        private Accumulateur(int n) {
+            nbRealisables = new long[n];
+            sommeCouts = new long[n];
+            sommeSynergies = new double[n][n];
+            nbPaires = new long[n][n];
+        }
+
+        private void ajouter(Accumulateur autre) {
+            for (int i = 0; i < nbRealisables.length; i++) {
+                nbRealisables[i] += autre.nbRealisables[i];
+                sommeCouts[i] += autre.sommeCouts[i];
+                for (int j = 0; j < nbRealisables.length; j++) {
+                    sommeSynergies[i][j] += autre.sommeSynergies[i][j];
+                    nbPaires[i][j] += autre.nbPaires[i][j];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Table de transposition de taille bornée, partagée sans verrou entre plusieurs
+ * threads de recherche.
+ * <p>
+ * Les entrées sont indexées par un hash de Zobrist (voir {@link HachageZobrist}).
+ * Chaque case contient au plus une entrée immuable : une entrée n'est remplacée
+ * que par une entrée d'un autre état ou par une entrée calculée à une profondeur
+ * au moins égale. Une lecture ne renvoie jamais une valeur associée à un autre
+ * hash.
+ *
+ * @param <V> type des valeurs mémorisées
+ */
+public class TableTransposition<V> {
+    /**
+     * Entrée immuable de la table
+     */
+    private static final class Entree<V> {
+        private final long hash;
+        private final int profondeur;
+        private final V valeur;
+
+        private Entree(long hash, int profondeur, V valeur) {
+            this.hash = hash;
+            this.profondeur = profondeur;
+            this.valeur = valeur;
+        }
+    }
+
+    /**
+     * Cases de la table (le nombre de cases est une puissance de 2)
+     */
+    private final AtomicReferenceArray<Entree<V>> cases;
+    /**
+     * Masque appliqué au hash pour obtenir l'indice d'une case
+     */
+    private final int masque;
+
+    /**
+     * @param capacite nombre minimum de cases de la table (arrondi à la puissance
+     *                 de 2 supérieure)
+     */
+    public TableTransposition(int capacite) {
+        if (capacite <= 0 || capacite > 1 << 30) {
+            throw new IllegalArgumentException("Capacité invalide : " + capacite);
+        }
+        int taille = Integer.highestOneBit(capacite);
+        if (taille < capacite) {
+            taille <<= 1;
+        }
+        cases = new AtomicReferenceArray<>(taille);
+        masque = taille - 1;
+    }
+
+    public int getCapacite() {
+        return cases.length();
+    }
+
+    /**
+     * Renvoie la valeur associée à un hash, ou {@code null} si la table ne contient
+     * pas d'entrée pour ce hash
+     */
+    public V get(long hash) {
+        Entree<V> entree = cases.get(indice(hash));
+        return entree != null && entree.hash == hash ? entree.valeur : null;
+    }
+
+    /**
+     * Renvoie la profondeur à laquelle la valeur associée à un hash a été
+     * calculée, ou -1 si la table ne contient pas d'entrée pour ce hash
+     */
+    public int getProfondeur(long hash) {
+        Entree<V> entree = cases.get(indice(hash));
+        return entree != null && entree.hash == hash ? entree.profondeur : -1;
+    }
+
+    /**
+     * Mémorise une valeur pour un hash.
+     * <p>
+     * Si la case contient déjà une entrée pour le même hash calculée à une
+     * profondeur strictement supérieure, elle est conservée.
+     *
+     * @param hash       hash de Zobrist de l'état
+     * @param profondeur profondeur de recherche à laquelle la valeur a été calculée
+     * @param valeur     valeur à mémoriser
+     */
+    public void put(long hash, int profondeur, V valeur) {
+        int i = indice(hash);
+        Entree<V> nouvelle = new Entree<>(hash, profondeur, valeur);
+        Entree<V> actuelle;
+        do {
+            actuelle = cases.get(i);
+            if (actuelle != null && actuelle.hash == hash && actuelle.profondeur > profondeur) {
+                return;
+            }
+        } while (!cases.compareAndSet(i, actuelle, nouvelle));
+    }
+
+    /**
+     * Vide la table
+     */
+    public void vider() {
+        for (int i = 0; i < cases.length(); i++) {
+            cases.set(i, null);
+        }
+    }
+
+    private int indice(long hash) {
+        // mélange les bits de poids fort pour ne pas dépendre des seuls bits de poids faible
+        return (int) (hash ^ (hash >>> 32)) & masque;
+    }
+}
@@ -1,6 +1,8 @@
 package fr.umontpellier.iut.rails;
 
-import java.util.HashMap;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 
 public class Ville {
     /**
@@ -37,12 +39,15 @@ public class Ville {
         return String.format("<span class=\"ville\">%s</span>", nom);
     }
 
-    public Object asPOJO() {
-        HashMap<String, Object> data = new HashMap<>();
-        data.put("nom", nom);
+    /**
+     * Écrit la représentation JSON de la ville
+     */
+    public void ecrireJson(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.name("nom").value(nom);
         if (proprietaire != null) {
-            data.put("proprietaire", proprietaire.getCouleur());
-        }    
-        return data;
-    }    
+            out.name("proprietaire").value(proprietaire.getCouleur().name());
+        }
+        out.endObject();
+    }
 }
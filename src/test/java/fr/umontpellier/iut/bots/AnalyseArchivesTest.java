@@ -0,0 +1,116 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.Archive;
+import fr.umontpellier.iut.rails.Destination;
+import fr.umontpellier.iut.rails.GrapheVilles;
+import fr.umontpellier.iut.rails.Joueur;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.support.io.TempDirectory;
+import org.junit.jupiter.api.support.io.TempDirectory.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(TempDirectory.class)
+public class AnalyseArchivesTest {
+    private Path repertoire;
+
+    @BeforeEach
+    void initialiser(@TempDir Path repertoire) {
+        this.repertoire = repertoire;
+    }
+
+    @Test
+    void testAgregats() throws Exception {
+        List<JeuAutomatique> jeux = new ArrayList<>();
+        List<Path> archives = List.of(repertoire.resolve("a.rail"), repertoire.resolve("b.rail"));
+        for (int f = 0; f < archives.size(); f++) {
+            try (Archive.Ecrivain ecrivain = new Archive.Ecrivain(archives.get(f))) {
+                for (int i = 0; i < 5; i++) {
+                    JeuAutomatique jeu = new JeuAutomatique(new String[]{"Guybrush", "Largo"},
+                            List.of(new StrategieGloutonne(), new StrategieAleatoire()), 10L * f + i);
+                    jeu.run();
+                    jeux.add(jeu);
+                    ecrivain.ajouter(jeu, jeu.getEntrees(), jeu.getDebutsTours());
+                }
+            }
+        }
+
+        // résultats attendus, calculés sur les parties d'origine
+        long nbPrises = 0;
+        long nbRealisees = 0;
+        long[] victoiresParPlace = new long[2];
+        for (JeuAutomatique jeu : jeux) {
+            nbPrises += jeu.getRoutes().stream().filter(r -> r.getProprietaire() != null).count();
+            GrapheVilles graphe = GrapheVilles.de(jeu);
+            for (Joueur joueur : jeu.getJoueurs()) {
+                for (Destination d : joueur.getDestinations()) {
+                    nbRealisees += graphe.estRealisee(joueur, d) ? 1 : 0;
+                }
+            }
+            List<Joueur> joueurs = jeu.getJoueurs();
+            victoiresParPlace[joueurs.get(1).getScore() > joueurs.get(0).getScore() ? 1 : 0]++;
+        }
+
+        AnalyseArchives.Agregat sequentiel = new AnalyseArchives(1).analyser(archives);
+        AnalyseArchives.Agregat parallele = new AnalyseArchives(4).analyser(archives);
+        for (AnalyseArchives.Agregat agregat : List.of(sequentiel, parallele)) {
+            assertEquals(jeux.size(), agregat.getNbParties());
+            assertEquals(0, agregat.getNbIncompletes());
+            long prises = 0;
+            for (int r = 0; r < jeux.get(0).getRoutes().size(); r++) {
+                prises += agregat.getNbPrises(r);
+            }
+            assertEquals(nbPrises, prises);
+            long realisees = 0;
+            for (Destination d : Destination.makeDestinationsEurope()) {
+                realisees += agregat.getNbRealisees(d.getNom());
+                assertTrue(agregat.getNbRealisees(d.getNom()) <= agregat.getNbDistribuees(d.getNom()));
+            }
+            for (Destination d : Destination.makeDestinationsLonguesEurope()) {
+                realisees += agregat.getNbRealisees(d.getNom());
+            }
+            assertEquals(nbRealisees, realisees);
+            assertEquals(victoiresParPlace[0], agregat.getNbVictoiresPlace(0));
+            assertEquals(victoiresParPlace[1], agregat.getNbVictoiresPlace(1));
+            long victoiresCouleurs = 0;
+            for (Joueur.Couleur c : Joueur.Couleur.values()) {
+                victoiresCouleurs += agregat.getNbVictoiresCouleur(c);
+            }
+            assertEquals(jeux.size(), victoiresCouleurs);
+        }
+    }
+
+    @Test
+    void testErreurDUnThreadArreteLAnalyse() throws Exception {
+        JeuAutomatique jeu = new JeuAutomatique(new String[]{"Guybrush", "Largo"},
+                List.of(new StrategieGloutonne(), new StrategieAleatoire()), 1);
+        jeu.run();
+        Path archive = repertoire.resolve("a.rail");
+        try (Archive.Ecrivain ecrivain = new Archive.Ecrivain(archive)) {
+            // bien plus de lots que la file ne peut en contenir
+            for (int i = 0; i < 2000; i++) {
+                ecrivain.ajouter(jeu, jeu.getEntrees(), jeu.getDebutsTours());
+            }
+        }
+        AnalyseArchives analyse = new AnalyseArchives(2) {
+            @Override
+            void ajouter(Agregat agregat, Archive.Partie partie) {
+                throw new StackOverflowError();
+            }
+        };
+        // l'erreur est renvoyée au lieu de bloquer la lecture des archives sur la file pleine
+        IllegalStateException e = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> assertThrows(IllegalStateException.class, () -> analyse.analyser(List.of(archive))));
+        assertTrue(e.getCause() instanceof StackOverflowError);
+    }
+}
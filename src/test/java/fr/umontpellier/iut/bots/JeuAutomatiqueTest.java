@@ -0,0 +1,69 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.Joueur;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JeuAutomatiqueTest {
+
+    private JeuAutomatique jouer(long graine) {
+        JeuAutomatique jeu = new JeuAutomatique(new String[] { "Guybrush", "Largo", "LeChuck" },
+                List.of(new StrategieGloutonne(), new StrategieAleatoire(), new StrategieGloutonne()), graine);
+        jeu.run();
+        return jeu;
+    }
+
+    @Test
+    void testPartieTerminee() {
+        JeuAutomatique jeu = jouer(1);
+        boolean unJoueurSansWagons = false;
+        for (Joueur j : jeu.getJoueurs()) {
+            unJoueurSansWagons |= j.getNbWagons() <= 2;
+        }
+        assertTrue(unJoueurSansWagons);
+    }
+
+    @Test
+    void testPartieReproductible() {
+        JeuAutomatique jeu1 = jouer(7);
+        JeuAutomatique jeu2 = jouer(7);
+        assertEquals(jeu1.getNbDecisions(), jeu2.getNbDecisions());
+        for (int i = 0; i < jeu1.getJoueurs().size(); i++) {
+            Joueur j1 = jeu1.getJoueurs().get(i);
+            Joueur j2 = jeu2.getJoueurs().get(i);
+            assertEquals(j1.getCouleur(), j2.getCouleur());
+            assertEquals(j1.getScore(), j2.getScore());
+            assertEquals(j1.getCartesWagon(), j2.getCartesWagon());
+        }
+    }
+
+    @Test
+    void testChoixInvalidesInterrompentLaPartie() {
+        Strategie invalide = new Strategie() {
+            @Override
+            public String getNom() {
+                return "invalide";
+            }
+
+            @Override
+            public String choisir(Joueur joueur, String instruction, List<String> choix, boolean peutPasser,
+                                  Random random) {
+                return "choix invalide";
+            }
+        };
+        JeuAutomatique jeu = new JeuAutomatique(new String[] { "Guybrush", "Largo" },
+                List.of(invalide, new StrategieGloutonne()), 1);
+        // chaque choix invalide compte comme une décision : la partie ne reste pas bloquée
+        assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> assertThrows(JeuAutomatique.PartieInterrompue.class, jeu::run));
+        assertEquals(JeuAutomatique.NB_DECISIONS_MAX + 1, jeu.getNbDecisions());
+    }
+}
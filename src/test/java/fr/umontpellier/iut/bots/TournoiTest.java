@@ -0,0 +1,36 @@
+package fr.umontpellier.iut.bots;
+
+import fr.umontpellier.iut.rails.Joueur;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TournoiTest {
+
+    @Test
+    void testErreurDeStrategieArreteLeTournoi() {
+        Strategie defaillante = new Strategie() {
+            @Override
+            public String getNom() {
+                return "defaillante";
+            }
+
+            @Override
+            public String choisir(Joueur joueur, String instruction, List<String> choix, boolean peutPasser,
+                                  Random random) {
+                throw new NullPointerException();
+            }
+        };
+        Tournoi tournoi = new Tournoi(List.of(new StrategieGloutonne(), defaillante), 2, 1);
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> tournoi.executer(2, 0));
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        assertTrue(cause instanceof NullPointerException);
+    }
+}
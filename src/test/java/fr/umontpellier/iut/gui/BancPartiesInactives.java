@@ -0,0 +1,71 @@
+package fr.umontpellier.iut.gui;
+
+import fr.umontpellier.iut.rails.Jeu;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure le coût de parties inactives : N salles sont démarrées dans
+ * l'exécuteur des parties du serveur et restent bloquées en attente de la
+ * première entrée. Le programme affiche la mémoire utilisée et le nombre de
+ * threads de la JVM.
+ * <p>
+ * Argument : nombre de parties (par défaut 10000).
+ */
+public class BancPartiesInactives {
+    /**
+     * Partie qui signale le moment où elle attend sa première entrée
+     */
+    private static class JeuInactif extends Jeu {
+        private final CountDownLatch enAttente;
+
+        JeuInactif(CountDownLatch enAttente) {
+            super(new String[] { "J1", "J2" });
+            this.enAttente = enAttente;
+        }
+
+        @Override
+        public void prompt(String instruction, Collection<String> boutons, boolean peutPasser) {
+            enAttente.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int nbParties = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        Runtime runtime = Runtime.getRuntime();
+
+        System.gc();
+        long memoireAvant = runtime.totalMemory() - runtime.freeMemory();
+        int threadsAvant = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        long debut = System.nanoTime();
+        CountDownLatch enAttente = new CountDownLatch(nbParties);
+        List<Salle> salles = new ArrayList<>();
+        for (int i = 0; i < nbParties; i++) {
+            Salle salle = new Salle("banc-" + i, new JeuInactif(enAttente));
+            salle.demarrer();
+            salles.add(salle);
+        }
+        if (!enAttente.await(5, TimeUnit.MINUTES)) {
+            System.out.println("Toutes les parties n'ont pas démarré");
+        }
+        double duree = (System.nanoTime() - debut) / 1e9;
+
+        System.gc();
+        long memoireApres = runtime.totalMemory() - runtime.freeMemory();
+        int threadsApres = ManagementFactory.getThreadMXBean().getThreadCount();
+        System.out.printf("%d parties inactives démarrées en %.2f s%n", nbParties, duree);
+        System.out.printf("Tas : %.1f Mo (%.1f Ko par partie)%n", (memoireApres - memoireAvant) / 1e6,
+                (memoireApres - memoireAvant) / 1e3 / nbParties);
+        System.out.printf("Threads de la JVM : %d -> %d%n", threadsAvant, threadsApres);
+
+        for (Salle salle : salles) {
+            salle.fermer();
+        }
+    }
+}
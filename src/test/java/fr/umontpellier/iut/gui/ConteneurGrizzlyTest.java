@@ -0,0 +1,199 @@
+package fr.umontpellier.iut.gui;
+
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransportBuilder;
+import org.glassfish.tyrus.server.TyrusServerContainer;
+import org.glassfish.tyrus.spi.SPIEndpoint;
+import org.glassfish.tyrus.spi.SPIHandshakeListener;
+import org.glassfish.tyrus.spi.SPIHandshakeRequest;
+import org.glassfish.tyrus.spi.SPIRemoteEndpoint;
+import org.glassfish.tyrus.spi.TyrusClientSocket;
+import org.junit.jupiter.api.Test;
+
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.CloseReason;
+import javax.websocket.EndpointConfig;
+import javax.websocket.Extension;
+import javax.websocket.OnMessage;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+import javax.websocket.server.ServerEndpoint;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConteneurGrizzlyTest {
+
+    @Test
+    void testTransportConfigure() {
+        ConfigurationServeur configuration = new ConfigurationServeur("localhost", 0, 3, 6, 4096, 16384, 1024, null);
+        TCPNIOTransport transport = new ConteneurGrizzly(configuration).creerTransport();
+
+        assertEquals(3, transport.getSelectorRunnersCount());
+        assertEquals(6, transport.getWorkerThreadPoolConfig().getCorePoolSize());
+        assertEquals(6, transport.getWorkerThreadPoolConfig().getMaxPoolSize());
+        assertEquals(4096, transport.getReadBufferSize());
+        assertEquals(16384, transport.getWriteBufferSize());
+    }
+
+    @Test
+    void testValeursNullesGardentLesReglagesParDefaut() {
+        TCPNIOTransport parDefaut = new ConteneurGrizzly(
+                new ConfigurationServeur("localhost", 0, 0, 0, 0, 0, 1024, null)).creerTransport();
+        TCPNIOTransport reference = TCPNIOTransportBuilder.newInstance().build();
+
+        assertEquals(reference.getSelectorRunnersCount(), parDefaut.getSelectorRunnersCount());
+        assertEquals(reference.getWorkerThreadPoolConfig().getMaxPoolSize(),
+                parDefaut.getWorkerThreadPoolConfig().getMaxPoolSize());
+    }
+
+    @Test
+    void testConfigurationInvalide() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ConfigurationServeur("localhost", 3232, -1, 0, 0, 0, 1024, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ConfigurationServeur("localhost", 3232, 0, 0, 0, 0, 0, null));
+    }
+
+    /**
+     * Point d'accès du serveur de test : renvoie chaque message reçu
+     */
+    @ServerEndpoint(value = "/")
+    public static class Echo {
+        @OnMessage
+        public String onMessage(String message) {
+            return message;
+        }
+    }
+
+    /**
+     * Point d'accès client minimal, qui conserve les messages reçus
+     */
+    private static class ClientTest extends SPIEndpoint {
+        private final BlockingQueue<Object> evenements = new ArrayBlockingQueue<>(10);
+
+        @Override
+        public void onConnect(SPIRemoteEndpoint distant, String sousProtocole, List<Extension> extensions) {
+            evenements.add(distant);
+        }
+
+        @Override
+        public void onMessage(SPIRemoteEndpoint distant, String message) {
+            evenements.add(message);
+        }
+
+        @Override
+        public boolean checkHandshake(SPIHandshakeRequest requete) {
+            return true;
+        }
+
+        @Override
+        public void onPartialMessage(SPIRemoteEndpoint distant, String message, boolean fin) {
+        }
+
+        @Override
+        public void onPartialMessage(SPIRemoteEndpoint distant, ByteBuffer message, boolean fin) {
+        }
+
+        @Override
+        public void onMessage(SPIRemoteEndpoint distant, ByteBuffer message) {
+        }
+
+        @Override
+        public void onPong(SPIRemoteEndpoint distant, ByteBuffer message) {
+        }
+
+        @Override
+        public void onPing(SPIRemoteEndpoint distant, ByteBuffer message) {
+        }
+
+        @Override
+        public void onClose(SPIRemoteEndpoint distant, CloseReason raison) {
+        }
+
+        @Override
+        public void remove() {
+        }
+
+        @Override
+        public List<Extension> getNegotiatedExtensions(List<Extension> extensions) {
+            return List.of();
+        }
+
+        @Override
+        public String getNegotiatedProtocol(List<String> protocoles) {
+            return null;
+        }
+
+        @Override
+        public Set<Session> getOpenSessions() {
+            return Set.of();
+        }
+
+        @Override
+        public Session createSessionForRemoteEndpoint(SPIRemoteEndpoint distant, String sousProtocole,
+                                                      List<Extension> extensions) {
+            return null;
+        }
+
+        @Override
+        public EndpointConfig getEndpointConfig() {
+            return ClientEndpointConfig.Builder.create().build();
+        }
+
+        @Override
+        public String getEndpointPath() {
+            return null;
+        }
+
+        @Override
+        public WebSocketContainer getWebSocketContainer() {
+            return null;
+        }
+    }
+
+    @Test
+    void testConnexionCliente() throws Exception {
+        int port;
+        try (ServerSocket libre = new ServerSocket(0)) {
+            port = libre.getLocalPort();
+        }
+        ConfigurationServeur configuration = new ConfigurationServeur("localhost", port, 0, 0, 0, 0, 1024, null);
+        ConteneurGrizzly conteneur = new ConteneurGrizzly(configuration);
+        TyrusServerContainer serveur = new TyrusServerContainer(conteneur.createServer("/", port), "/",
+                Set.of(Echo.class), Set.of(), Set.of());
+        serveur.start();
+        try {
+            ClientTest client = new ClientTest();
+            BlockingQueue<Throwable> erreurs = new ArrayBlockingQueue<>(1);
+            TyrusClientSocket socket = conteneur.openClientSocket("ws://localhost:" + port + "/",
+                    ClientEndpointConfig.Builder.create().build(), client, new SPIHandshakeListener() {
+                        @Override
+                        public void onResponseHeaders(Map<String, String> entetes) {
+                        }
+
+                        @Override
+                        public void onError(Throwable erreur) {
+                            erreurs.add(erreur);
+                        }
+                    }, Map.of());
+            try {
+                Object connexion = client.evenements.poll(10, TimeUnit.SECONDS);
+                assertTrue(connexion instanceof SPIRemoteEndpoint, "connexion : " + connexion + " " + erreurs);
+                ((SPIRemoteEndpoint) connexion).sendText("bonjour");
+                assertEquals("bonjour", client.evenements.poll(10, TimeUnit.SECONDS));
+            } finally {
+                socket.close();
+            }
+        } finally {
+            serveur.stop();
+        }
+    }
+}
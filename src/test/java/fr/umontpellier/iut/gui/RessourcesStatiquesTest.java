@@ -0,0 +1,90 @@
+package fr.umontpellier.iut.gui;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.support.io.TempDirectory;
+import org.junit.jupiter.api.support.io.TempDirectory.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(TempDirectory.class)
+public class RessourcesStatiquesTest {
+    private Path racine;
+
+    @BeforeEach
+    void initialiser(@TempDir Path racine) {
+        this.racine = racine;
+    }
+
+    private static String decompresser(byte[] contenu) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(contenu))) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testVariantesEtEtiquettes() throws IOException {
+        String css = "body { color: red; }\n".repeat(50);
+        Files.writeString(racine.resolve("bundle.css"), css);
+        Files.writeString(racine.resolve("index.html"), "<html></html>");
+        Files.writeString(racine.resolve("secret.txt"), "secret");
+        Path publique = Files.createDirectory(racine.resolve("public"));
+        RessourcesStatiques statiques = new RessourcesStatiques(racine);
+
+        RessourcesStatiques.Ressource ressource = statiques.charger("/bundle.css");
+        assertTrue(ressource.aVarianteGzip());
+        assertEquals(css, new String(ressource.getContenu(false), StandardCharsets.UTF_8));
+        assertEquals(css, decompresser(ressource.getContenu(true)));
+        assertTrue(ressource.getContenu(true).length < ressource.getContenu(false).length);
+        assertNotEquals(ressource.getEtag(false), ressource.getEtag(true));
+        assertTrue(ressource.getEtag(false).startsWith("\""));
+        // même fichier : même ressource, sans relecture
+        assertSame(ressource, statiques.charger("/bundle.css"));
+
+        assertEquals("text/html;charset=utf-8", statiques.charger("/").getType());
+        assertNull(new RessourcesStatiques(publique).charger("/../secret.txt"));
+        assertNull(statiques.charger("/absent.js"));
+
+        // un fichier modifié est relu et change d'étiquette
+        Files.writeString(racine.resolve("bundle.css"), css + "p {}\n");
+        Files.setLastModifiedTime(racine.resolve("bundle.css"), FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        RessourcesStatiques.Ressource modifiee = statiques.charger("/bundle.css");
+        assertNotEquals(ressource.getEtag(false), modifiee.getEtag(false));
+    }
+
+    @Test
+    void testVariantePrecompressee() throws IOException {
+        Path fichier = racine.resolve("bundle.js");
+        Files.writeString(fichier, "console.log('a');\n".repeat(50));
+        Path variante = racine.resolve("bundle.js.gz");
+        Files.write(variante, new byte[]{1, 2, 3});
+        Files.setLastModifiedTime(variante, FileTime.fromMillis(Files.getLastModifiedTime(fichier).toMillis() + 1000));
+
+        RessourcesStatiques.Ressource ressource = new RessourcesStatiques(racine).charger("/bundle.js");
+        assertArrayEquals(new byte[]{1, 2, 3}, ressource.getContenu(true));
+    }
+
+    @Test
+    void testEntetes() {
+        assertTrue(RessourcesStatiques.accepteGzip("gzip, deflate, br"));
+        assertTrue(RessourcesStatiques.accepteGzip("br;q=1.0, gzip;q=0.8"));
+        assertFalse(RessourcesStatiques.accepteGzip("gzip;q=0"));
+        assertFalse(RessourcesStatiques.accepteGzip("deflate"));
+        assertFalse(RessourcesStatiques.accepteGzip(null));
+
+        assertTrue(RessourcesStatiques.correspond("\"a\", \"b\"", "\"b\""));
+        assertTrue(RessourcesStatiques.correspond("W/\"b\"", "\"b\""));
+        assertTrue(RessourcesStatiques.correspond("*", "\"b\""));
+        assertFalse(RessourcesStatiques.correspond("\"a\"", "\"b\""));
+        assertFalse(RessourcesStatiques.correspond(null, "\"b\""));
+    }
+}
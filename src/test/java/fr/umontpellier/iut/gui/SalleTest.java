@@ -0,0 +1,356 @@
+package fr.umontpellier.iut.gui;
+
+import fr.umontpellier.iut.bots.JeuAutomatique;
+import fr.umontpellier.iut.bots.StrategieAleatoire;
+import fr.umontpellier.iut.bots.StrategieGloutonne;
+import fr.umontpellier.iut.rails.EtatBinaire;
+import fr.umontpellier.iut.rails.Historique;
+import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.Journal;
+import fr.umontpellier.iut.rails.SuiviEtat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.support.io.TempDirectory;
+import org.junit.jupiter.api.support.io.TempDirectory.TempDir;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SalleTest {
+
+    /**
+     * Crée une session factice dont les envois se terminent immédiatement
+     */
+    private static Session session(String id, AtomicInteger nbEnvois) {
+        return session(id, nbEnvois, false);
+    }
+
+    /**
+     * Crée une session factice
+     *
+     * @param bloquee si vrai, les envois ne se terminent jamais (client qui ne lit plus)
+     */
+    private static Session session(String id, AtomicInteger nbEnvois, boolean bloquee) {
+        return session(id, nbEnvois, bloquee, null);
+    }
+
+    /**
+     * Crée une session factice qui conserve les messages envoyés
+     *
+     * @param messages liste dans laquelle sont ajoutés les messages envoyés (ou {@code null})
+     */
+    private static Session session(String id, AtomicInteger nbEnvois, boolean bloquee, List<Object> messages) {
+        RemoteEndpoint.Async async = (RemoteEndpoint.Async) Proxy.newProxyInstance(
+                SalleTest.class.getClassLoader(), new Class<?>[]{RemoteEndpoint.Async.class},
+                (proxy, methode, args) -> {
+                    if (args != null && args.length == 2 && args[1] instanceof SendHandler) {
+                        nbEnvois.incrementAndGet();
+                        if (messages != null) {
+                            messages.add(args[0]);
+                        }
+                        if (!bloquee) {
+                            ((SendHandler) args[1]).onResult(new SendResult());
+                        }
+                    }
+                    return null;
+                });
+        return (Session) Proxy.newProxyInstance(
+                SalleTest.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, methode, args) -> {
+                    switch (methode.getName()) {
+                        case "getId":
+                            return id;
+                        case "getAsyncRemote":
+                            return async;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return id.hashCode();
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static MiseAJour miseAJour(Jeu jeu, SuiviEtat suivi, EtatBinaire binaire) {
+        Historique log = new Historique();
+        SuiviEtat.Instantane etat = suivi.enregistrer(jeu, log, "", List.of(), false);
+        return new MiseAJour(jeu.getJoueurs().size(), etat, binaire.enregistrer(jeu, etat.getVersion(), log, "", List.of(), false));
+    }
+
+    @Test
+    void testConnexionsPendantLaDiffusion() throws Exception {
+        Jeu jeu = new Jeu(new String[]{"J1", "J2"});
+        Salle salle = new Salle("test", jeu);
+        SuiviEtat suivi = new SuiviEtat();
+        EtatBinaire binaire = new EtatBinaire();
+        AtomicInteger nbEnvois = new AtomicInteger();
+        salle.setEtatJeu(miseAJour(jeu, suivi, binaire));
+
+        int nbThreads = 4;
+        int nbConnexions = 2000;
+        ExecutorService executeur = Executors.newFixedThreadPool(nbThreads + 1);
+        AtomicBoolean termine = new AtomicBoolean();
+        CountDownLatch depart = new CountDownLatch(1);
+        try {
+            // diffusion continue pendant que les clients se connectent et se déconnectent
+            Future<Integer> diffusion = executeur.submit(() -> {
+                depart.await();
+                int nbDiffusions = 0;
+                while (!termine.get()) {
+                    salle.setEtatJeu(miseAJour(jeu, suivi, binaire));
+                    nbDiffusions++;
+                }
+                return nbDiffusions;
+            });
+            List<Future<?>> connexions = new ArrayList<>();
+            for (int t = 0; t < nbThreads; t++) {
+                final int thread = t;
+                connexions.add(executeur.submit(() -> {
+                    depart.await();
+                    for (int i = 0; i < nbConnexions; i++) {
+                        Session session = session(thread + "-" + i, nbEnvois);
+                        salle.addClient(session, Client.Mode.values()[i % Client.Mode.values().length], i % 4 - 2);
+                        if (i % 2 == 0) {
+                            salle.resynchroniser(session);
+                        }
+                        salle.removeClient(session);
+                    }
+                    // un client par thread reste connecté
+                    salle.addClient(session(thread + "-fin", nbEnvois), Client.Mode.COMPLET, SuiviEtat.OMNISCIENT);
+                    return null;
+                }));
+            }
+            depart.countDown();
+            for (Future<?> connexion : connexions) {
+                connexion.get(30, TimeUnit.SECONDS);
+            }
+            termine.set(true);
+            assertTrue(diffusion.get(30, TimeUnit.SECONDS) > 0);
+        } finally {
+            executeur.shutdownNow();
+        }
+
+        assertEquals(nbThreads, salle.getNbClients());
+        // chaque client a au moins reçu l'état courant à sa connexion
+        assertTrue(nbEnvois.get() >= nbThreads * nbConnexions);
+    }
+
+    @Test
+    void testClientLentDegradePuisDeconnecte() {
+        Jeu jeu = new Jeu(new String[]{"J1", "J2"});
+        Salle salle = new Salle("test", jeu);
+        SuiviEtat suivi = new SuiviEtat();
+        EtatBinaire binaire = new EtatBinaire();
+        AtomicInteger nbEnvoisLent = new AtomicInteger();
+        AtomicInteger nbEnvoisNormal = new AtomicInteger();
+        salle.setEtatJeu(miseAJour(jeu, suivi, binaire));
+        salle.addClient(session("lent", nbEnvoisLent, true), Client.Mode.COMPLET, SuiviEtat.OMNISCIENT);
+        salle.addClient(session("normal", nbEnvoisNormal), Client.Mode.COMPLET, SuiviEtat.OMNISCIENT);
+        Client lent = salle.getClients().stream()
+                .filter(c -> c.getSession().getId().equals("lent")).findFirst().orElseThrow();
+
+        // l'envoi de l'état initial est bloqué depuis une seconde
+        long maintenant = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        salle.surveillerClients(maintenant);
+        assertTrue(lent.estDegrade());
+
+        // un client dégradé ne remplit plus sa file
+        for (int i = 1; i <= 100; i++) {
+            salle.setEtatJeu(miseAJour(jeu, suivi, binaire));
+        }
+        assertEquals(0, lent.getNbRemplaces());
+        assertEquals(1, nbEnvoisLent.get());
+        assertEquals(101, nbEnvoisNormal.get());
+
+        salle.surveillerClients(maintenant + Client.DELAI_EVICTION);
+        assertEquals(1, salle.getNbClients());
+        assertEquals("normal", salle.getClients().iterator().next().getSession().getId());
+    }
+
+    @Test
+    void testEntreesInvalidesRefuseesAvantLaFile() throws Exception {
+        Jeu jeu = new Jeu(new String[]{"J1", "J2"});
+        Salle salle = new Salle("test", jeu);
+        salle.setEcranPartage(false);
+        AtomicInteger nbEnvois = new AtomicInteger();
+        Session joueur1 = session("joueur1", nbEnvois);
+        Session joueur2 = session("joueur2", nbEnvois);
+        Session spectateur = session("spectateur", nbEnvois);
+        Session ecran = session("ecran", nbEnvois);
+        salle.addClient(joueur1, Client.Mode.DIFFERENTIEL, 0);
+        salle.addClient(joueur2, Client.Mode.DIFFERENTIEL, 1);
+        salle.addClient(spectateur, Client.Mode.DIFFERENTIEL, SuiviEtat.SPECTATEUR);
+        salle.addClient(ecran, Client.Mode.DIFFERENTIEL, SuiviEtat.OMNISCIENT);
+        // chaque client a reçu la description du plateau
+        assertEquals(4, nbEnvois.get());
+
+        ExecutorService executeur = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> choix = executeur.submit(() ->
+                    jeu.getJoueurCourant().choisir("Choisissez", List.of("a", "b"), List.of(), false));
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (jeu.verifierEntree("a", Jeu.TOUS_LES_JOUEURS) != null) {
+                assertTrue(System.nanoTime() < limite);
+                Thread.sleep(1);
+            }
+
+            salle.recevoir(spectateur, "a");
+            salle.recevoir(joueur2, "a");
+            salle.recevoir(joueur1, "c");
+            salle.recevoir(joueur1, "");
+            // la vue omnisciente ne joue pour personne hors d'une salle à écran partagé
+            salle.recevoir(ecran, "a");
+            // une erreur par instruction refusée, et aucune n'a atteint la partie
+            assertEquals(9, nbEnvois.get());
+            assertFalse(choix.isDone());
+
+            salle.setEcranPartage(true);
+            salle.recevoir(ecran, "b");
+            assertEquals("b", choix.get(10, TimeUnit.SECONDS));
+            assertEquals(9, nbEnvois.get());
+            // le choix est fait : plus aucune entrée n'est acceptée
+            assertNotNull(jeu.verifierEntree("a", Jeu.TOUS_LES_JOUEURS));
+        } finally {
+            executeur.shutdownNow();
+        }
+    }
+
+    @Test
+    void testSpectateursPartagentLeMemeMessage() {
+        Jeu jeu = new Jeu(new String[]{"J1", "J2"});
+        Salle salle = new Salle("test", jeu);
+        SuiviEtat suivi = new SuiviEtat();
+        EtatBinaire binaire = new EtatBinaire();
+        AtomicInteger nbEnvois = new AtomicInteger();
+        salle.setEtatJeu(miseAJour(jeu, suivi, binaire));
+        int nbSpectateurs = 200;
+        List<List<Object>> messages = new ArrayList<>();
+        for (int i = 0; i < nbSpectateurs; i++) {
+            List<Object> recus = new ArrayList<>();
+            messages.add(recus);
+            Client.Mode mode = i % 2 == 0 ? Client.Mode.DIFFERENTIEL : Client.Mode.BINAIRE;
+            salle.addClient(session("s" + i, nbEnvois, false, recus), mode, SuiviEtat.SPECTATEUR);
+        }
+        salle.setEtatJeu(miseAJour(jeu, suivi, binaire));
+
+        // plateau, état complet puis différence
+        for (int i = 0; i < nbSpectateurs; i++) {
+            List<Object> recus = messages.get(i);
+            List<Object> reference = messages.get(i % 2);
+            assertEquals(3, recus.size());
+            for (int m = 0; m < recus.size(); m++) {
+                if (recus.get(m) instanceof ByteBuffer) {
+                    // chaque client envoie sa propre vue d'un même tableau
+                    assertSame(((ByteBuffer) reference.get(m)).array(), ((ByteBuffer) recus.get(m)).array());
+                } else {
+                    assertSame(reference.get(m), recus.get(m));
+                }
+            }
+        }
+    }
+
+    /**
+     * Attend qu'une liste de messages atteigne une taille donnée
+     */
+    private static void attendre(List<Object> messages, int taille) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (messages.size() < taille) {
+            assertTrue(System.nanoTime() < limite);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void testEtatEncodeSeulementPourLesFormatsAttendus() throws Exception {
+        Jeu jeu = new Jeu(new String[]{"J1", "J2"});
+        Salle salle = GameServer.creerSalle("formats-attendus", jeu);
+        try {
+            // la partie attend la première entrée, sans client : aucun état n'est encodé
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while ("Aucun choix n'est attendu".equals(jeu.verifierEntree("", Jeu.TOUS_LES_JOUEURS))) {
+                assertTrue(System.nanoTime() < limite);
+                Thread.sleep(1);
+            }
+            AtomicInteger nbEnvois = new AtomicInteger();
+            List<Object> json = new CopyOnWriteArrayList<>();
+            salle.addClient(session("json", nbEnvois, false, json), Client.Mode.DIFFERENTIEL, 0);
+            // plateau, puis l'état JSON encodé à la demande du client
+            attendre(json, 2);
+            assertTrue(json.get(1) instanceof String);
+
+            List<Object> binaire = new CopyOnWriteArrayList<>();
+            salle.addClient(session("binaire", nbEnvois, false, binaire), Client.Mode.BINAIRE, 1);
+            attendre(binaire, 2);
+            assertTrue(binaire.get(1) instanceof ByteBuffer);
+            // le client JSON ne reçoit pas une seconde fois le même état
+            Thread.sleep(50);
+            assertEquals(2, json.size());
+        } finally {
+            GameServer.retirerSalle("formats-attendus");
+        }
+    }
+
+    @Test
+    void testVueParDefautSansMainVisible() {
+        Salle salle = new Salle("test", new Jeu(new String[]{"J1", "J2"}));
+        assertEquals(1, salle.getVue("J2", false));
+        assertEquals(SuiviEtat.SPECTATEUR, salle.getVue("J3", false));
+        assertEquals(SuiviEtat.SPECTATEUR, salle.getVue(null, true));
+        // par défaut, un client qui ne précise rien partage l'écran des joueurs...
+        assertEquals(SuiviEtat.OMNISCIENT, salle.getVue(null, false));
+        assertEquals(SuiviEtat.SPECTATEUR, salle.getVue(null, true));
+        // ...et ne voit aucune main si le serveur a désactivé l'écran partagé
+        salle.setEcranPartage(false);
+        assertEquals(SuiviEtat.SPECTATEUR, salle.getVue(null, false));
+    }
+
+    @Test
+    @ExtendWith(TempDirectory.class)
+    void testPartieTermineeRetireeDuJournal(@TempDir Path repertoire) throws Exception {
+        String[] noms = {"Guybrush", "Largo"};
+        JeuAutomatique automatique = new JeuAutomatique(noms,
+                List.of(new StrategieGloutonne(), new StrategieAleatoire()), 5);
+        automatique.run();
+
+        Path fichier = repertoire.resolve("parties.journal");
+        Jeu jeu = new Jeu(noms, 5);
+        Salle salle = new Salle("terminee", jeu);
+        CountDownLatch fin = new CountDownLatch(1);
+        ExecutorService executeur = Executors.newSingleThreadExecutor();
+        try (Journal journal = new Journal(fichier)) {
+            journal.enregistrerCreation("terminee", jeu.getGraine(), noms);
+            jeu.setJournal(journal, List.of());
+            for (String entree : automatique.getEntrees()) {
+                jeu.addInput(entree);
+            }
+            salle.demarrer(executeur, () -> {
+                journal.enregistrerFin("terminee");
+                fin.countDown();
+            });
+            assertTrue(fin.await(30, TimeUnit.SECONDS));
+        } finally {
+            executeur.shutdownNow();
+        }
+        // la partie terminée n'est pas reconstruite au prochain démarrage du serveur
+        assertTrue(Journal.compacter(fichier).isEmpty());
+        assertTrue(Journal.lire(fichier).isEmpty());
+    }
+}
@@ -0,0 +1,146 @@
+package fr.umontpellier.iut.rails;
+
+import fr.umontpellier.iut.bots.JeuAutomatique;
+import fr.umontpellier.iut.bots.StrategieAleatoire;
+import fr.umontpellier.iut.bots.StrategieGloutonne;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.support.io.TempDirectory;
+import org.junit.jupiter.api.support.io.TempDirectory.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(TempDirectory.class)
+public class ArchiveTest {
+    private Path repertoire;
+    private Path fichier;
+
+    @BeforeEach
+    void initialiser(@TempDir Path repertoire) {
+        this.repertoire = repertoire;
+        fichier = repertoire.resolve("parties.rail");
+    }
+
+    private static JeuAutomatique jouer(long graine) {
+        JeuAutomatique jeu = new JeuAutomatique(new String[]{"Guybrush", "Largo", "Elaine"},
+                List.of(new StrategieGloutonne(), new StrategieAleatoire(), new StrategieGloutonne()), graine);
+        jeu.run();
+        return jeu;
+    }
+
+    @Test
+    void testParties() throws IOException {
+        List<JeuAutomatique> jeux = new ArrayList<>();
+        try (Archive.Ecrivain ecrivain = new Archive.Ecrivain(fichier)) {
+            for (long graine = 1; graine <= 5; graine++) {
+                JeuAutomatique jeu = jouer(graine);
+                jeux.add(jeu);
+                ecrivain.ajouter(jeu, jeu.getEntrees(), jeu.getDebutsTours());
+            }
+            // une partie rejouée jusqu'à sa fin
+            ecrivain.ajouter(new Rejeu(new String[]{"Guybrush", "Largo", "Elaine"}, 1, jeux.get(0).getEntrees())
+                    .rejouer());
+        }
+        jeux.add(jeux.get(0));
+
+        List<Archive.Partie> parties = new Archive(fichier).parties().toList();
+        assertEquals(jeux.size(), parties.size());
+        long tailleEntrees = 0;
+        long nbEntrees = 0;
+        for (int i = 0; i < jeux.size(); i++) {
+            JeuAutomatique jeu = jeux.get(i);
+            Archive.Partie partie = parties.get(i);
+            assertEquals(jeu.getGraine(), partie.getGraine());
+            assertArrayEquals(new String[]{"Guybrush", "Largo", "Elaine"}, partie.getNomJoueurs());
+            for (int j = 0; j < 3; j++) {
+                assertEquals(jeu.getJoueurs().get(j).getCouleur(), partie.getCouleurs()[j]);
+            }
+            assertEquals(jeu.getEntrees(), partie.getEntrees());
+            assertEquals(jeu.getNbTours(), partie.getNbTours());
+
+            // les entrées de chaque tour, lues directement grâce à l'index
+            int[] debuts = jeu.getDebutsTours();
+            for (int t = 1; t <= partie.getNbTours(); t++) {
+                int fin = t < debuts.length ? debuts[t] : jeu.getEntrees().size();
+                assertEquals(jeu.getEntrees().subList(debuts[t - 1], fin), partie.getEntreesDuTour(t));
+            }
+
+            Rejeu rejeu = partie.rejeu().rejouer();
+            assertTrue(rejeu.estTerminee());
+            assertEquals(jeu.toString(), rejeu.toString());
+
+            nbEntrees += jeu.getEntrees().size();
+            for (String entree : jeu.getEntrees()) {
+                tailleEntrees += entree.length() + 1;
+            }
+        }
+        // moins de deux octets par action, et bien moins que les entrées en toutes lettres
+        assertTrue(Files.size(fichier) < 2 * nbEntrees);
+        assertTrue(Files.size(fichier) * 4 < tailleEntrees);
+    }
+
+    @Test
+    void testEntreesHorsDictionnaire() throws IOException {
+        Jeu jeu = new Jeu(new String[]{"J1", "J2"}, 3);
+        List<String> entrees = List.of("", "Zürich", "Zürich - Venezia", "inconnue", "ROUGE", "destinations");
+        try (Archive.Ecrivain ecrivain = new Archive.Ecrivain(fichier)) {
+            ecrivain.ajouter(jeu, entrees, new int[]{2, 2, 5});
+        }
+        Archive.Partie partie = new Archive(fichier).iterator().next();
+        assertEquals(entrees, partie.getEntrees());
+        assertEquals(List.of(), partie.getEntreesDuTour(1));
+        assertEquals(List.of("Zürich - Venezia", "inconnue", "ROUGE"), partie.getEntreesDuTour(2));
+        assertEquals(List.of("destinations"), partie.getEntreesDuTour(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> partie.getEntreesDuTour(4));
+    }
+
+    @Test
+    void testAjoutEtPartieIncomplete() throws IOException {
+        JeuAutomatique jeu = jouer(9);
+        try (Archive.Ecrivain ecrivain = new Archive.Ecrivain(fichier)) {
+            ecrivain.ajouter(jeu, jeu.getEntrees(), jeu.getDebutsTours());
+        }
+        // une archive existante est complétée
+        try (Archive.Ecrivain ecrivain = new Archive.Ecrivain(fichier)) {
+            ecrivain.ajouter(jeu, jeu.getEntrees(), jeu.getDebutsTours());
+        }
+        assertEquals(2, new Archive(fichier).parties().count());
+
+        // partie interrompue pendant son écriture
+        Files.write(fichier, new byte[]{(byte) 0xC8, 0x01, 1, 2, 3}, StandardOpenOption.APPEND);
+        assertEquals(2, new Archive(fichier).parties().count());
+
+        // partie interrompue pendant l'écriture de sa longueur
+        Path tronquee = repertoire.resolve("tronquee.rail");
+        byte[] octets = Files.readAllBytes(fichier);
+        Files.write(tronquee, Arrays.copyOf(octets, octets.length - 4));
+        assertEquals(2, new Archive(tronquee).parties().count());
+
+        // les parties ajoutées ensuite remplacent la partie interrompue
+        JeuAutomatique suivante = jouer(10);
+        for (Path archive : List.of(fichier, tronquee)) {
+            try (Archive.Ecrivain ecrivain = new Archive.Ecrivain(archive)) {
+                ecrivain.ajouter(suivante, suivante.getEntrees(), suivante.getDebutsTours());
+            }
+            List<Archive.Partie> parties = new Archive(archive).parties().toList();
+            assertEquals(3, parties.size());
+            assertEquals(jeu.getEntrees(), parties.get(1).getEntrees());
+            assertEquals(suivante.getGraine(), parties.get(2).getGraine());
+            assertEquals(suivante.getEntrees(), parties.get(2).getEntrees());
+        }
+
+        Path autre = repertoire.resolve("autre");
+        Files.writeString(autre, "pas une archive");
+        assertThrows(IOException.class, () -> new Archive(autre));
+        assertThrows(IOException.class, () -> new Archive.Ecrivain(autre));
+    }
+}
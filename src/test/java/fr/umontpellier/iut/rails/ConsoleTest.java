@@ -0,0 +1,63 @@
+package fr.umontpellier.iut.rails;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConsoleTest {
+
+    /**
+     * Propose n états à l'affichage, comme le fait {@code Jeu.prompt}
+     */
+    private static void afficher(Console console, int n) {
+        for (int i = 0; i < n; i++) {
+            if (console.doitAfficher()) {
+                console.afficher("etat " + i);
+            }
+        }
+    }
+
+    private static long nbLignes(ByteArrayOutputStream sortie) {
+        return sortie.toString(StandardCharsets.UTF_8).lines().count();
+    }
+
+    @Test
+    void testModesSynchrones() {
+        ByteArrayOutputStream sortie = new ByteArrayOutputStream();
+        PrintStream flux = new PrintStream(sortie, true, StandardCharsets.UTF_8);
+
+        afficher(new Console(Console.Mode.AUCUN, 1, flux), 20);
+        assertEquals(0, nbLignes(sortie));
+        afficher(new Console(Console.Mode.ECHANTILLON, 10, flux), 20);
+        assertEquals("etat 0\netat 10\n", sortie.toString(StandardCharsets.UTF_8).replace("\r", ""));
+        afficher(new Console(Console.Mode.SYNCHRONE, 1, flux), 20);
+        assertEquals(22, nbLignes(sortie));
+    }
+
+    @Test
+    void testModeAsynchrone() throws InterruptedException {
+        ByteArrayOutputStream sortie = new ByteArrayOutputStream();
+        Console console = new Console(Console.Mode.ASYNCHRONE, 1,
+                new PrintStream(sortie, true, StandardCharsets.UTF_8));
+        afficher(console, 1000);
+
+        // la file est bornée : les états qui n'y entrent pas sont ignorés, et aucun n'est perdu autrement
+        long limite = System.nanoTime() + 10_000_000_000L;
+        while (nbLignes(sortie) + console.getNbIgnores() < 1000) {
+            assertTrue(System.nanoTime() < limite);
+            Thread.sleep(1);
+        }
+        assertTrue(nbLignes(sortie) > 0);
+    }
+
+    @Test
+    void testModeDepuisPropriete() {
+        assertEquals(Console.Mode.ASYNCHRONE, Console.Mode.depuis("asynchrone"));
+        assertEquals(Console.Mode.AUCUN, Console.Mode.depuis("aucun"));
+        assertEquals(Console.Mode.SYNCHRONE, Console.Mode.depuis(null));
+    }
+}
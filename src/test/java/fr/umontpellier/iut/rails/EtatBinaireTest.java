@@ -0,0 +1,120 @@
+package fr.umontpellier.iut.rails;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EtatBinaireTest {
+    private Jeu jeu;
+    private EtatBinaire etat;
+    private Historique log;
+
+    @BeforeEach
+    void init() {
+        jeu = new Jeu(new String[]{"Guybrush", "Largo"}, 1);
+        etat = new EtatBinaire();
+        log = new Historique();
+        log.ajouter("l1");
+        log.ajouter("l2");
+    }
+
+    private static DataInputStream lire(ByteBuffer trame) {
+        byte[] octets = new byte[trame.remaining()];
+        trame.duplicate().get(octets);
+        return new DataInputStream(new ByteArrayInputStream(octets));
+    }
+
+    /**
+     * Lit une trame jusqu'aux propriétaires des routes (inclus)
+     *
+     * @param vue la vue pour laquelle la trame a été assemblée
+     */
+    private byte[] lireProprietairesRoutes(DataInputStream in, int vue) throws IOException {
+        assertEquals(EtatBinaire.TYPE_ETAT, in.readByte());
+        assertEquals(EtatBinaire.FORMAT, in.readByte());
+        assertEquals(7, in.readLong());
+        int nbCouleurs = in.readByte();
+        assertEquals(CouleurWagon.values().length, nbCouleurs);
+        assertEquals("Choisissez", in.readUTF());
+        assertTrue(in.readBoolean());
+        // seul le joueur courant (Guybrush) voit les boutons
+        boolean voitBoutons = vue == 0 || vue == SuiviEtat.OMNISCIENT;
+        assertEquals(voitBoutons ? 1 : 0, in.readShort());
+        if (voitBoutons) {
+            assertEquals("a", in.readUTF());
+        }
+        assertEquals(2, in.readByte());
+        assertEquals(0, in.readByte());
+        for (int i = 0; i < 2; i++) {
+            Joueur joueur = jeu.getJoueurs().get(i);
+            assertEquals(joueur.getNom(), in.readUTF());
+            assertEquals(joueur.getCouleur().ordinal(), in.readByte());
+            assertEquals(joueur.getScore(), in.readShort());
+            assertEquals(joueur.getNbGares(), in.readByte());
+            assertEquals(joueur.getNbWagons(), in.readByte());
+            in.skipBytes(nbCouleurs);
+            boolean visible = in.readBoolean();
+            assertEquals(vue == i || vue == SuiviEtat.OMNISCIENT, visible);
+            if (visible) {
+                int nbCartes = 0;
+                for (int c = 0; c < nbCouleurs; c++) {
+                    nbCartes += in.readByte();
+                }
+                assertEquals(joueur.getCartesWagon().size(), nbCartes);
+                assertEquals(0, in.readByte());
+            } else {
+                assertEquals(joueur.getCartesWagon().size(), in.readByte());
+                assertEquals(0, in.readByte());
+            }
+        }
+        in.skipBytes(in.readShort());
+        byte[] routes = new byte[in.readShort()];
+        in.readFully(routes);
+        return routes;
+    }
+
+    @Test
+    void testProprietairesRoutes() throws IOException {
+        jeu.getRoutes().get(5).setProprietaire(jeu.getJoueurs().get(1));
+        EtatBinaire.Instantane instantane = etat.enregistrer(jeu, 7, log, "Choisissez", List.of("a"), true);
+
+        for (int vue : new int[]{SuiviEtat.OMNISCIENT, SuiviEtat.SPECTATEUR, 0, 1}) {
+            byte[] routes = lireProprietairesRoutes(lire(instantane.trame(vue, true)), vue);
+            assertEquals(jeu.getRoutes().size(), routes.length);
+            for (int i = 0; i < routes.length; i++) {
+                assertEquals(i == 5 ? 2 : 0, routes[i]);
+            }
+        }
+    }
+
+    @Test
+    void testLogIncrementalNeContientQueLesNouvellesLignes() throws IOException {
+        etat.enregistrer(jeu, 6, log, "Choisissez", List.of("a"), true);
+        log.ajouter("l3");
+        EtatBinaire.Instantane instantane = etat.enregistrer(jeu, 7, log, "Choisissez", List.of("a"), true);
+
+        DataInputStream complet = lire(instantane.trame(0, true));
+        DataInputStream incremental = lire(instantane.trame(0, false));
+        lireProprietairesRoutes(complet, 0);
+        lireProprietairesRoutes(incremental, 0);
+        for (DataInputStream in : List.of(complet, incremental)) {
+            in.skipBytes(4);
+            in.skipBytes(in.readByte());
+            in.skipBytes(CouleurWagon.values().length);
+        }
+
+        assertEquals(0, complet.readInt());
+        assertEquals(3, complet.readShort());
+        assertEquals(2, incremental.readInt());
+        assertEquals(1, incremental.readShort());
+        assertEquals("l3", incremental.readUTF());
+        assertEquals(0, incremental.available());
+    }
+}
@@ -0,0 +1,82 @@
+package fr.umontpellier.iut.rails;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvaluateurDestinationsTest {
+    private IOJeu jeu;
+    private Joueur joueur1;
+    private GrapheVilles graphe;
+    private EvaluateurDestinations evaluateur;
+
+    @BeforeEach
+    void init() {
+        jeu = new IOJeu(new String[] { "Guybrush", "Largo" });
+        joueur1 = jeu.getJoueurs().get(0);
+        graphe = GrapheVilles.de(jeu);
+        evaluateur = new EvaluateurDestinations(graphe);
+    }
+
+    @Test
+    void testToutesLesDestinationsSontSurLePlateau() {
+        List<Destination> destinations = new ArrayList<>(Destination.makeDestinationsEurope());
+        destinations.addAll(Destination.makeDestinationsLonguesEurope());
+        for (Destination d : destinations) {
+            int a = graphe.indiceVille(d.getVille1());
+            int b = graphe.indiceVille(d.getVille2());
+            assertTrue(a >= 0 && b >= 0, d.toString());
+            assertTrue(graphe.getDistance(a, b) < GrapheVilles.INFINI, d.toString());
+        }
+    }
+
+    @Test
+    void testDestinationRealisee() {
+        Destination d = new Destination("Paris", "Bruxelles", 5);
+        assertFalse(graphe.estRealisee(joueur1, d));
+        for (Route r : jeu.getRoutes()) {
+            if (r.getNom().startsWith("Bruxelles - Paris")) {
+                r.setProprietaire(joueur1);
+                break;
+            }
+        }
+        assertTrue(graphe.estRealisee(joueur1, d));
+    }
+
+    @Test
+    void testClasserDestinations() {
+        Destination proche = new Destination("Paris", "Bruxelles", 5);
+        Destination lointaine = new Destination("Lisboa", "Moskva", 5);
+        Destination moyenne = new Destination("Paris", "Berlin", 8);
+        List<Destination> proposees = List.of(proche, lointaine, moyenne);
+
+        List<EvaluateurDestinations.Evaluation> evaluations = evaluateur.classer(joueur1, proposees, 1);
+        assertEquals(7, evaluations.size());
+        List<Destination> meilleur = evaluations.get(0).getGardees();
+        assertTrue(meilleur.contains(proche));
+        assertFalse(meilleur.contains(lointaine));
+        for (int i = 1; i < evaluations.size(); i++) {
+            assertTrue(evaluations.get(i - 1).getScore() >= evaluations.get(i).getScore());
+        }
+
+        assertEquals(4, evaluateur.classer(joueur1, proposees, 2).size());
+    }
+
+    @Test
+    void testTableDestinations() {
+        Destination proche = new Destination("Paris", "Bruxelles", 5);
+        Destination moyenne = new Destination("Paris", "Berlin", 8);
+        List<Destination> proposees = List.of(proche, moyenne);
+        assertEquals(proposees.size(), evaluateur.meilleurChoix(joueur1, proposees, 1).size());
+
+        // la table indique que Paris - Berlin n'est jamais réalisable
+        TableDestinations table = new TableDestinations(proposees, 1, new float[] { 1, 0 }, new float[] { 2, 8 },
+                new float[2][2]);
+        List<Destination> gardees = new EvaluateurDestinations(graphe, table).meilleurChoix(joueur1, proposees, 1);
+        assertEquals(List.of(proche), gardees);
+    }
+}
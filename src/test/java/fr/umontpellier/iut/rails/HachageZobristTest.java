@@ -0,0 +1,52 @@
+package fr.umontpellier.iut.rails;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HachageZobristTest {
+    private IOJeu jeu;
+    private Joueur joueur1;
+
+    @BeforeEach
+    void init() {
+        jeu = new IOJeu(new String[] { "Guybrush", "Largo", "LeChuck", "Elaine" });
+        joueur1 = jeu.getJoueurs().get(0);
+    }
+
+    @Test
+    void testHashIndependantOrdreCartes() {
+        TestUtils.setCartesWagon(joueur1, CouleurWagon.ROUGE, CouleurWagon.BLEU, CouleurWagon.ROUGE);
+        long h1 = HachageZobrist.hash(jeu);
+        TestUtils.setCartesWagon(joueur1, CouleurWagon.BLEU, CouleurWagon.ROUGE, CouleurWagon.ROUGE);
+        assertEquals(h1, HachageZobrist.hash(jeu));
+        TestUtils.setCartesWagon(joueur1, CouleurWagon.BLEU, CouleurWagon.BLEU, CouleurWagon.ROUGE);
+        assertNotEquals(h1, HachageZobrist.hash(jeu));
+    }
+
+    @Test
+    void testMiseAJourIncrementale() {
+        long avant = HachageZobrist.hash(jeu);
+        jeu.getRoutes().get(3).setProprietaire(joueur1);
+        long apres = HachageZobrist.hash(jeu);
+        assertNotEquals(avant, apres);
+        assertEquals(apres, HachageZobrist.avecRoute(avant, 3, 0));
+
+        jeu.getVilles().get(5).setProprietaire(jeu.getJoueurs().get(2));
+        assertEquals(HachageZobrist.avecGare(apres, 5, 2), HachageZobrist.hash(jeu));
+    }
+
+    @Test
+    void testTableTransposition() {
+        TableTransposition<String> table = new TableTransposition<>(100);
+        assertEquals(128, table.getCapacite());
+        long h = HachageZobrist.hash(jeu);
+        assertNull(table.get(h));
+        table.put(h, 3, "profond");
+        table.put(h, 1, "superficiel");
+        assertEquals("profond", table.get(h));
+        assertEquals(3, table.getProfondeur(h));
+        assertNull(table.get(h + 128));
+    }
+}
@@ -0,0 +1,174 @@
+package fr.umontpellier.iut.rails;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.support.io.TempDirectory;
+import org.junit.jupiter.api.support.io.TempDirectory.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(TempDirectory.class)
+public class JournalTest {
+    private Path repertoire;
+    private Path fichier;
+
+    @BeforeEach
+    void initialiser(@TempDir Path repertoire) {
+        this.repertoire = repertoire;
+        fichier = repertoire.resolve("parties.journal");
+    }
+
+    /**
+     * Partie qui compte les lectures d'entrées (la partie est bloquée en attente
+     * d'une entrée lorsque toutes les entrées fournies ont été lues)
+     */
+    private static class JeuCompte extends Jeu {
+        private final AtomicInteger nbLectures = new AtomicInteger();
+
+        JeuCompte(long graine) {
+            super(new String[]{"Guybrush", "Largo"}, graine);
+        }
+
+        @Override
+        public String lireLigne() {
+            nbLectures.incrementAndGet();
+            return super.lireLigne();
+        }
+
+        void attendreLectures(int nb) throws InterruptedException {
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (nbLectures.get() < nb) {
+                assertTrue(System.nanoTime() < limite);
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    @Test
+    void testRelecture() throws IOException {
+        try (Journal journal = new Journal(fichier)) {
+            journal.enregistrerCreation("a", 42, new String[]{"J1", "J2"});
+            journal.enregistrerCreation("b", 7, new String[]{"J1", "J2", "J3"});
+            journal.enregistrerEntree("a", "");
+            journal.enregistrerEntree("b", "Paris");
+            journal.enregistrerEntree("a", "GRIS");
+            journal.enregistrerFin("b");
+        }
+        Map<String, Journal.Partie> parties = Journal.lire(fichier);
+        assertEquals(List.of("a"), List.copyOf(parties.keySet()));
+        Journal.Partie a = parties.get("a");
+        assertEquals(42, a.getGraine());
+        assertArrayEquals(new String[]{"J1", "J2"}, a.getNomJoueurs());
+        assertEquals(List.of("", "GRIS"), a.getEntrees());
+
+        // un journal rouvert ajoute ses enregistrements à la suite
+        try (Journal journal = new Journal(fichier)) {
+            journal.enregistrerEntree("a", "Zürich");
+        }
+        assertEquals(List.of("", "GRIS", "Zürich"), Journal.lire(fichier).get("a").getEntrees());
+
+        // le journal compacté ne contient plus la partie terminée
+        long taille = Files.size(fichier);
+        assertEquals(List.of("", "GRIS", "Zürich"), Journal.compacter(fichier).get("a").getEntrees());
+        assertEquals(List.of("", "GRIS", "Zürich"), Journal.lire(fichier).get("a").getEntrees());
+        assertTrue(Files.size(fichier) <= taille);
+    }
+
+    @Test
+    void testEnregistrementPartielIgnore() throws IOException {
+        try (Journal journal = new Journal(fichier)) {
+            journal.enregistrerCreation("a", 1, new String[]{"J1", "J2"});
+            journal.enregistrerEntree("a", "ROUGE");
+            journal.enregistrerEntree("a", "BLEU");
+        }
+        // le dernier enregistrement n'a été écrit qu'en partie
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var contenu = canal.map(FileChannel.MapMode.READ_WRITE, 0, 256);
+            int position = 0;
+            for (int i = 0; i < 2; i++) {
+                position += 8 + contenu.getInt(position);
+            }
+            contenu.put(position + 14, (byte) 0);
+            contenu.force();
+        }
+        assertEquals(List.of("ROUGE"), Journal.lire(fichier).get("a").getEntrees());
+
+        // les nouveaux enregistrements remplacent l'enregistrement partiel
+        try (Journal journal = new Journal(fichier)) {
+            journal.enregistrerEntree("a", "VERT");
+        }
+        assertEquals(List.of("ROUGE", "VERT"), Journal.lire(fichier).get("a").getEntrees());
+    }
+
+    @Test
+    void testPlusieursZones() throws IOException {
+        int tailleZone = 128;
+        List<String> entrees = new ArrayList<>();
+        try (Journal journal = new Journal(fichier, tailleZone)) {
+            journal.enregistrerCreation("a", 3, new String[]{"J1", "J2"});
+            for (int i = 0; i < 50; i++) {
+                entrees.add("entrée " + i);
+                journal.enregistrerEntree("a", "entrée " + i);
+            }
+        }
+        assertTrue(Files.size(fichier) > 10 * tailleZone);
+        assertEquals(entrees, Journal.lire(fichier, tailleZone).get("a").getEntrees());
+
+        try (Journal journal = new Journal(fichier, tailleZone)) {
+            journal.enregistrerEntree("a", "suite");
+        }
+        entrees.add("suite");
+        assertEquals(entrees, Journal.lire(fichier, tailleZone).get("a").getEntrees());
+    }
+
+    @Test
+    void testPartieReconstruite() throws Exception {
+        List<String> entrees = List.of("", "", "GRIS", "GRIS", "inconnu", "", "GRIS", "GRIS");
+        ExecutorService executeur = Executors.newFixedThreadPool(2);
+        try {
+            JeuCompte originale = new JeuCompte(2024);
+            originale.setIdentifiant("a");
+            try (Journal journal = new Journal(fichier)) {
+                journal.enregistrerCreation("a", originale.getGraine(), new String[]{"Guybrush", "Largo"});
+                originale.setJournal(journal, List.of());
+                executeur.submit(originale);
+                for (String entree : entrees) {
+                    originale.addInput(entree);
+                }
+                originale.attendreLectures(entrees.size() + 1);
+            }
+
+            Journal.Partie partie = Journal.lire(fichier).get("a");
+            assertEquals(entrees, partie.getEntrees());
+            JeuCompte reconstruite = new JeuCompte(partie.getGraine());
+            reconstruite.setIdentifiant("a");
+            try (Journal journal = new Journal(fichier)) {
+                reconstruite.setJournal(journal, partie.getEntrees());
+                executeur.submit(reconstruite);
+                reconstruite.attendreLectures(entrees.size() + 1);
+            }
+
+            assertEquals(originale.toString(), reconstruite.toString());
+            assertEquals(originale.getCartesWagonVisibles(), reconstruite.getCartesWagonVisibles());
+            assertEquals(originale.getPileCartesWagon(), reconstruite.getPileCartesWagon());
+            // les entrées relues ne sont pas enregistrées une seconde fois
+            assertEquals(entrees, Journal.lire(fichier).get("a").getEntrees());
+        } finally {
+            executeur.shutdownNow();
+        }
+    }
+}
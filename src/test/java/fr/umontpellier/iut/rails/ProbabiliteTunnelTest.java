@@ -0,0 +1,79 @@
+package fr.umontpellier.iut.rails;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProbabiliteTunnelTest {
+
+    @Test
+    void testSommeDesProbabilites() {
+        for (int k = 0; k <= 20; k++) {
+            double somme = 0;
+            for (int s = 0; s <= 3; s++) {
+                somme += ProbabiliteTunnel.probabilite(s, k, 20);
+            }
+            assertEquals(1, somme, 1e-9);
+        }
+    }
+
+    @Test
+    void testValeursHypergeometriques() {
+        // 2 cartes correspondantes parmi 4 : C(2,1) * C(2,2) / C(4,3) = 2 / 4
+        assertEquals(0.5, ProbabiliteTunnel.probabilite(1, 2, 4), 1e-9);
+        assertEquals(0.5, ProbabiliteTunnel.probabilite(2, 2, 4), 1e-9);
+        assertEquals(0, ProbabiliteTunnel.probabilite(0, 2, 4), 1e-9);
+        // espérance d'un tirage de 3 cartes : 3 * k / n
+        assertEquals(3.0 * 26 / 110, ProbabiliteTunnel.esperance(26, 110), 1e-9);
+    }
+
+    @Test
+    void testDistributionPartie() {
+        IOJeu jeu = new IOJeu(new String[] { "Guybrush", "Largo" });
+        List<CouleurWagon> pile = jeu.getPileCartesWagon();
+        pile.clear();
+        pile.addAll(List.of(CouleurWagon.ROSE, CouleurWagon.BLEU, CouleurWagon.VERT));
+        jeu.getDefausseCartesWagon().clear();
+        jeu.getDefausseCartesWagon().add(CouleurWagon.LOCOMOTIVE);
+
+        double[] loi = ProbabiliteTunnel.distribution(jeu, getTunnel(jeu, "Marseille - Zurich"));
+        assertEquals(0, loi[0], 1e-9);
+        assertEquals(0.5, loi[1], 1e-9);
+        assertEquals(0.5, loi[2], 1e-9);
+        assertEquals(0, loi[3], 1e-9);
+    }
+
+    @Test
+    void testDistributionTunnelGrisCommeLeMoteur() {
+        IOJeu jeu = new IOJeu(new String[] { "Guybrush", "Largo" });
+        Joueur joueur = jeu.getJoueurs().get(0);
+        Tunnel tunnel = getTunnel(jeu, "Paris - Zurich"); // 3 cartes, gris
+        joueur.getCartesWagon().clear();
+        joueur.getCartesWagon().addAll(List.of(CouleurWagon.BLEU, CouleurWagon.BLEU, CouleurWagon.BLEU,
+                CouleurWagon.BLEU, CouleurWagon.ROUGE));
+        // cartes retournées par le moteur : seule la locomotive correspond à un tunnel gris
+        jeu.getPileCartesWagon().clear();
+        jeu.getPileCartesWagon().addAll(List.of(CouleurWagon.BLEU, CouleurWagon.LOCOMOTIVE, CouleurWagon.BLEU));
+        jeu.getDefausseCartesWagon().clear();
+
+        double[] loi = ProbabiliteTunnel.distribution(jeu, tunnel);
+        assertEquals(1, loi[1], 1e-9);
+
+        jeu.setInput("Paris - Zurich", "BLEU", "BLEU", "BLEU", "BLEU");
+        joueur.jouerTour();
+        assertEquals(joueur, tunnel.getProprietaire());
+        assertTrue(TestUtils.contientExactement(joueur.getCartesWagon(), CouleurWagon.ROUGE));
+    }
+
+    private static Tunnel getTunnel(Jeu jeu, String nom) {
+        for (Route route : jeu.getRoutes()) {
+            if (route.getNom().equals(nom)) {
+                return (Tunnel) route;
+            }
+        }
+        throw new IllegalArgumentException(nom);
+    }
+}
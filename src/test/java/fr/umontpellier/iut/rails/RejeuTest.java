@@ -0,0 +1,76 @@
+package fr.umontpellier.iut.rails;
+
+import fr.umontpellier.iut.bots.JeuAutomatique;
+import fr.umontpellier.iut.bots.StrategieAleatoire;
+import fr.umontpellier.iut.bots.StrategieGloutonne;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RejeuTest {
+    private static final String[] NOMS = {"Guybrush", "Largo", "Elaine"};
+
+    /**
+     * Partie jouée par des stratégies, qui conserve les entrées qu'elle lit
+     */
+    private static class JeuEnregistre extends JeuAutomatique {
+        private final List<String> entrees = new ArrayList<>();
+
+        JeuEnregistre(long graine) {
+            super(NOMS, List.of(new StrategieGloutonne(), new StrategieAleatoire(), new StrategieGloutonne()), graine);
+        }
+
+        @Override
+        public String lireChoix(String instruction, Set<String> choix, Collection<String> boutons, boolean peutPasser) {
+            String entree = super.lireChoix(instruction, choix, boutons, peutPasser);
+            entrees.add(entree);
+            return entree;
+        }
+    }
+
+    private static void assertMemeEtat(Jeu attendu, Jeu jeu) {
+        assertEquals(attendu.toString(), jeu.toString());
+        assertEquals(attendu.getCartesWagonVisibles(), jeu.getCartesWagonVisibles());
+        assertEquals(attendu.getPileCartesWagon(), jeu.getPileCartesWagon());
+        assertEquals(attendu.getDefausseCartesWagon(), jeu.getDefausseCartesWagon());
+        assertEquals(attendu.getNbTours(), jeu.getNbTours());
+    }
+
+    @Test
+    void testPartieComplete() {
+        for (long graine = 1; graine <= 5; graine++) {
+            JeuEnregistre originale = new JeuEnregistre(graine);
+            originale.run();
+
+            Rejeu rejeu = new Rejeu(NOMS, graine, originale.entrees).rejouer();
+            assertTrue(rejeu.estTerminee());
+            assertEquals(originale.entrees.size(), rejeu.getNbEntreesLues());
+            assertMemeEtat(originale, rejeu);
+        }
+    }
+
+    @Test
+    void testArretAuDebutDUnTour() {
+        JeuEnregistre originale = new JeuEnregistre(42);
+        originale.run();
+        assertTrue(originale.getNbTours() > 20);
+
+        Rejeu auTour = new Rejeu(NOMS, 42, originale.entrees).rejouerJusquauTour(20);
+        assertFalse(auTour.estTerminee());
+        assertEquals(19, auTour.getNbTours());
+        assertTrue(auTour.getNbEntreesLues() < originale.entrees.size());
+
+        // même état que la partie arrêtée faute d'entrées avant la première action du tour
+        Rejeu tronque = new Rejeu(NOMS, 42, originale.entrees.subList(0, auTour.getNbEntreesLues())).rejouer();
+        assertFalse(tronque.estTerminee());
+        assertEquals(auTour.toString(), tronque.toString());
+        assertEquals(auTour.getCartesWagonVisibles(), tronque.getCartesWagonVisibles());
+
+        assertThrows(IllegalStateException.class, auTour::rejouer);
+    }
+}
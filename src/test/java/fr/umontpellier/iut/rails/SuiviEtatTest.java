@@ -0,0 +1,169 @@
+package fr.umontpellier.iut.rails;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuiviEtatTest {
+    private Jeu jeu;
+    private SuiviEtat suivi;
+    private Historique log;
+
+    @BeforeEach
+    void init() {
+        jeu = new Jeu(new String[]{"Guybrush", "Largo"}, 1);
+        suivi = new SuiviEtat();
+        log = new Historique(3);
+        log.ajouter("l1");
+    }
+
+    private static JsonObject json(String message) {
+        return JsonParser.parseString(message).getAsJsonObject();
+    }
+
+    @Test
+    void testEtatComplet() {
+        SuiviEtat.Instantane instantane = suivi.enregistrer(jeu, log, "Choisissez", List.of("a", "b"), true);
+        JsonObject etat = json(instantane.etatComplet(SuiviEtat.OMNISCIENT));
+
+        assertEquals(1, etat.get("version").getAsLong());
+        assertEquals("Choisissez", etat.getAsJsonObject("prompt").get("instruction").getAsString());
+        assertEquals("Guybrush", etat.getAsJsonObject("prompt").get("nomJoueurCourant").getAsString());
+        assertEquals(2, etat.getAsJsonObject("prompt").getAsJsonArray("boutons").size());
+        assertEquals(jeu.getVilles().size(), etat.getAsJsonArray("villes").size());
+        assertEquals(jeu.getRoutes().size(), etat.getAsJsonArray("routes").size());
+        assertEquals(2, etat.getAsJsonArray("joueurs").size());
+        assertEquals(jeu.getPileCartesWagon().size(),
+                etat.getAsJsonObject("piles").get("pileCartesWagon").getAsInt());
+        assertEquals(1, etat.getAsJsonArray("log").size());
+    }
+
+    @Test
+    void testSeulsLesChangementsSontEnvoyes() {
+        SuiviEtat.Instantane premier = suivi.enregistrer(jeu, log, "p", List.of(), false);
+        assertEquals(jeu.getRoutes().size(), json(premier.delta(0)).getAsJsonArray("routes").size());
+
+        Route route = jeu.getRoutes().get(3);
+        route.setProprietaire(jeu.getJoueurs().get(1));
+        log.ajouter("l2");
+        JsonObject delta = json(suivi.enregistrer(jeu, log, "q", List.of(), false).delta(0));
+
+        assertEquals(2, delta.get("version").getAsLong());
+        assertEquals("q", delta.getAsJsonObject("prompt").get("instruction").getAsString());
+        assertEquals(0, delta.getAsJsonArray("villes").size());
+        assertEquals(1, delta.getAsJsonArray("routes").size());
+        JsonObject routeModifiee = delta.getAsJsonArray("routes").get(0).getAsJsonObject();
+        assertEquals(3, routeModifiee.get("id").getAsInt());
+        assertFalse(routeModifiee.has("nom"));
+        assertEquals(jeu.getJoueurs().get(1).getCouleur().name(), routeModifiee.get("proprietaire").getAsString());
+        assertEquals(0, delta.getAsJsonArray("joueurs").size());
+        assertFalse(delta.has("piles"));
+        assertEquals(1, delta.getAsJsonArray("log").size());
+        assertEquals("l2", delta.getAsJsonArray("log").get(0).getAsString());
+        assertEquals(1, delta.get("sequenceLog").getAsLong());
+    }
+
+    @Test
+    void testLogBorne() {
+        suivi.enregistrer(jeu, log, "p", List.of(), false);
+        for (int i = 2; i <= 6; i++) {
+            log.ajouter("l" + i);
+        }
+        SuiviEtat.Instantane instantane = suivi.enregistrer(jeu, log, "p", List.of(), false);
+
+        // seules les 3 dernières lignes sont conservées et envoyées
+        JsonObject compact = json(instantane.etatCompact(0));
+        assertEquals(3, compact.get("sequenceLog").getAsLong());
+        assertEquals(List.of("l4", "l5", "l6"), lignes(compact));
+        JsonObject delta = json(instantane.delta(0));
+        assertEquals(3, delta.get("sequenceLog").getAsLong());
+        assertEquals(List.of("l4", "l5", "l6"), lignes(delta));
+        assertEquals(3, json(instantane.etatComplet(SuiviEtat.OMNISCIENT)).getAsJsonArray("log").size());
+
+        log.ajouter("l7");
+        delta = json(suivi.enregistrer(jeu, log, "p", List.of(), false).delta(0));
+        assertEquals(6, delta.get("sequenceLog").getAsLong());
+        assertEquals(List.of("l7"), lignes(delta));
+    }
+
+    private static List<String> lignes(JsonObject message) {
+        List<String> lignes = new ArrayList<>();
+        message.getAsJsonArray("log").forEach(ligne -> lignes.add(ligne.getAsString()));
+        return lignes;
+    }
+
+    @Test
+    void testEtatCompactFaitReferenceAuPlateau() {
+        jeu.getVilles().get(2).setProprietaire(jeu.getJoueurs().get(0));
+        JsonObject compact = json(suivi.enregistrer(jeu, log, "p", List.of(), false).etatCompact(1));
+        JsonObject plateau = json(SuiviEtat.plateau(jeu));
+
+        assertEquals("etat", compact.get("type").getAsString());
+        assertEquals(jeu.getRoutes().size(), plateau.getAsJsonArray("routes").size());
+        JsonObject ville = compact.getAsJsonArray("villes").get(2).getAsJsonObject();
+        assertEquals(2, ville.get("id").getAsInt());
+        assertEquals(jeu.getJoueurs().get(0).getCouleur().name(), ville.get("proprietaire").getAsString());
+        assertEquals(jeu.getVilles().get(2).getNom(),
+                plateau.getAsJsonArray("villes").get(2).getAsJsonObject().get("nom").getAsString());
+
+        Route route = jeu.getRoutes().get(0);
+        JsonObject routePlateau = plateau.getAsJsonArray("routes").get(0).getAsJsonObject();
+        assertEquals(route.getNom(), routePlateau.get("nom").getAsString());
+        assertEquals(route.getVille1().getNom(), plateau.getAsJsonArray("villes")
+                .get(routePlateau.get("ville1").getAsInt()).getAsJsonObject().get("nom").getAsString());
+        assertEquals(route.getLongueur(), routePlateau.get("longueur").getAsInt());
+    }
+
+    @Test
+    void testVuesMasquentLesMainsDesAdversaires() {
+        SuiviEtat.Instantane instantane = suivi.enregistrer(jeu, log, "Choisissez", List.of("a", "b"), true);
+        Joueur guybrush = jeu.getJoueurs().get(0);
+
+        JsonObject vueLargo = json(instantane.etatCompact(1));
+        JsonObject guybrushVuParLargo = vueLargo.getAsJsonArray("joueurs").get(0).getAsJsonObject();
+        assertEquals(0, guybrushVuParLargo.getAsJsonArray("cartesWagon").size());
+        assertEquals(guybrush.getCartesWagon().size(), guybrushVuParLargo.get("nbCartesWagon").getAsInt());
+        assertEquals(4, vueLargo.getAsJsonArray("joueurs").get(1).getAsJsonObject()
+                .getAsJsonArray("cartesWagon").size());
+        // Largo ne voit pas les choix proposés à Guybrush
+        assertEquals(0, vueLargo.getAsJsonObject("prompt").getAsJsonArray("boutons").size());
+
+        JsonObject vueGuybrush = json(instantane.etatCompact(0));
+        assertEquals(2, vueGuybrush.getAsJsonObject("prompt").getAsJsonArray("boutons").size());
+        assertEquals(4, vueGuybrush.getAsJsonArray("joueurs").get(0).getAsJsonObject()
+                .getAsJsonArray("cartesWagon").size());
+
+        JsonObject vueSpectateur = json(instantane.etatComplet(SuiviEtat.SPECTATEUR));
+        for (int i = 0; i < 2; i++) {
+            assertEquals(0, vueSpectateur.getAsJsonArray("joueurs").get(i).getAsJsonObject()
+                    .getAsJsonArray("cartesWagon").size());
+        }
+        assertTrue(instantane.etatComplet(SuiviEtat.SPECTATEUR).length()
+                < instantane.etatComplet(SuiviEtat.OMNISCIENT).length());
+    }
+
+    @Test
+    void testDeltaParVue() {
+        suivi.enregistrer(jeu, log, "p", List.of(), false);
+        // une carte change dans la main de Guybrush : seul Guybrush voit sa main changer,
+        // mais tout le monde voit son nombre de cartes changer
+        jeu.getJoueurs().get(0).getCartesWagon().add(CouleurWagon.LOCOMOTIVE);
+        SuiviEtat.Instantane instantane = suivi.enregistrer(jeu, log, "p", List.of(), false);
+        assertEquals(1, json(instantane.delta(0)).getAsJsonArray("joueurs").size());
+        assertEquals(1, json(instantane.delta(SuiviEtat.SPECTATEUR)).getAsJsonArray("joueurs").size());
+
+        // une carte de Largo est remplacée, sans changer le nombre de cartes en main
+        List<CouleurWagon> main = jeu.getJoueurs().get(1).getCartesWagon();
+        main.set(0, main.get(0) == CouleurWagon.LOCOMOTIVE ? CouleurWagon.ROUGE : CouleurWagon.LOCOMOTIVE);
+        instantane = suivi.enregistrer(jeu, log, "p", List.of(), false);
+        assertEquals(1, json(instantane.delta(1)).getAsJsonArray("joueurs").size());
+        assertEquals(0, json(instantane.delta(0)).getAsJsonArray("joueurs").size());
+        assertEquals(0, json(instantane.delta(SuiviEtat.SPECTATEUR)).getAsJsonArray("joueurs").size());
+    }
+}
@@ -0,0 +1,38 @@
+package fr.umontpellier.iut.rails;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableDestinationsTest {
+
+    @Test
+    void testEcritureLecture() throws IOException {
+        TableDestinations table = TableDestinations.calculer(4, 42);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.ecrire(out);
+        TableDestinations relue = TableDestinations.lire(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(4, relue.getNbSimulations());
+        assertEquals(46, relue.getDestinations().size());
+        Destination d1 = new Destination("Athina", "Angora", 5);
+        Destination d2 = new Destination("Lisboa", "Danzig", 20);
+        assertEquals(table.getTauxRealisation(d1), relue.getTauxRealisation(d1));
+        assertEquals(table.getCoutMoyen(d2), relue.getCoutMoyen(d2));
+        assertEquals(table.getSynergie(d1, d2), relue.getSynergie(d2, d1));
+        assertEquals(-1, relue.getTauxRealisation(new Destination("Paris", "Paris", 1)));
+    }
+
+    @Test
+    void testVersionInconnueRefusee() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TableDestinations.calculer(1, 0).ecrire(out);
+        byte[] octets = out.toByteArray();
+        octets[7] = 99; // numéro de version
+        assertThrows(IOException.class, () -> TableDestinations.lire(new ByteArrayInputStream(octets)));
+    }
+}